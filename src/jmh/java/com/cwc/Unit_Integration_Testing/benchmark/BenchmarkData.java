@@ -0,0 +1,130 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductCache;
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductIndexInitializer;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
+import com.cwc.Unit_Integration_Testing.repository.ProductRepositoryCustomImpl;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import com.cwc.Unit_Integration_Testing.service.ProductWriteBehindBuffer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Products and service wiring shared by the benchmarks. Data comes from a fixed seed so runs are comparable.
+ */
+public final class BenchmarkData {
+    private static final String[] NAMES = {"Laptop", "Mouse", "Keyboard", "Monitor", "Headset", "Webcam", "Dock"};
+    private static final MappingMongoConverter MONGO_CONVERTER = mongoConverter();
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+    private BenchmarkData() {
+    }
+
+    public static List<Product> products(int count) {
+        Random random = new Random(42);
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = NAMES[random.nextInt(NAMES.length)];
+            products.add(Product.builder()
+                    .id(String.format("%024x", i + 1))
+                    .name(name + " " + i)
+                    .description("This is a " + name.toLowerCase() + ", model " + random.nextInt(10_000)
+                            + ". It comes with a two year warranty and free shipping.")
+                    .price(Math.round(random.nextDouble() * 200_000) / 100.0)
+                    .build());
+        }
+        return products;
+    }
+
+    /** Same Jackson setup as the application (Spring Boot builds its mapper with this builder). */
+    public static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    /** Mapper of the application/cbor converter. */
+    public static ObjectMapper cborMapper() {
+        return Jackson2ObjectMapperBuilder.cbor().build();
+    }
+
+    /** Converter set up like Spring Data's default one, without a database behind it. */
+    public static MappingMongoConverter mongoConverter() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    /** The product as Mongo stores it and sends it back, including the {@code _class} hint. */
+    public static RawBsonDocument document(Product product) {
+        Document document = new Document();
+        MONGO_CONVERTER.write(product, document);
+        return new RawBsonDocument(document, DOCUMENT_CODEC);
+    }
+
+    /**
+     * A repository over the {@code product-benchmark} database of the Mongo at {@code BENCHMARK_MONGO_URI}
+     * (default {@code mongodb://localhost:27017}), filled with {@code count} products and with the product
+     * indexes in place. Drop the database with {@code mongoTemplate.getDb().drop()} when done.
+     */
+    public static ProductRepository mongoRepository(MongoTemplate mongoTemplate, int count) {
+        mongoTemplate.dropCollection(Product.class);
+        new ProductIndexInitializer(mongoTemplate).createIndexes();
+        ProductRepository repository = new MongoRepositoryFactory(mongoTemplate)
+                .getRepository(ProductRepository.class, new ProductRepositoryCustomImpl(mongoTemplate));
+        repository.bulkUpsert(products(count));
+        return repository;
+    }
+
+    public static MongoTemplate mongoTemplate(MongoClient mongoClient) {
+        return new MongoTemplate(mongoClient, "product-benchmark");
+    }
+
+    public static MongoClient mongoClient() {
+        return MongoClients.create(System.getenv().getOrDefault("BENCHMARK_MONGO_URI", "mongodb://localhost:27017"));
+    }
+
+    public static InMemoryProductRepository repository(int count) {
+        InMemoryProductRepository repository = new InMemoryProductRepository();
+        repository.saveAll(products(count));
+        return repository;
+    }
+
+    public static ProductService productService(ProductRepository repository, boolean cacheEnabled) {
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getCache().setEnabled(cacheEnabled);
+        return productService(repository, productProperties, new ProductPriceIndex(productProperties));
+    }
+
+    public static ProductService productService(ProductRepository repository, ProductProperties productProperties,
+                                                ProductPriceIndex productPriceIndex) {
+        ProductCache productCache = new ProductCache(productProperties);
+        ProductWriteBehindBuffer writeBehindBuffer = new ProductWriteBehindBuffer(productProperties, repository,
+                productCache, productPriceIndex, objectMapper());
+        writeBehindBuffer.start();
+        return new ProductService(repository, productProperties, productCache, productPriceIndex, writeBehindBuffer,
+                new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,352 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductPriceStats;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.query.FluentQuery;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Stand-in for the Mongo backed repository, so service benchmarks measure our code and not the database.
+ * Every read returns copies, like documents mapped from Mongo would be.
+ * Query by example is not used by the service and is not supported.
+ */
+public class InMemoryProductRepository implements ProductRepository {
+    private final ConcurrentNavigableMap<String, Product> products = new ConcurrentSkipListMap<>();
+
+    private static Product copy(Product product) {
+        return Product.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .description(product.getDescription())
+                .price(product.getPrice())
+                .version(product.getVersion())
+                .lastModified(product.getLastModified())
+                .build();
+    }
+
+    @Override
+    public Optional<Product> findByName(String name) {
+        return products.values().stream().filter(p -> p.getName().equals(name)).findFirst().map(InMemoryProductRepository::copy);
+    }
+
+    @Override
+    public List<Product> findAllByOrderByIdAsc(Limit limit) {
+        return products.values().stream().limit(limit.max()).map(InMemoryProductRepository::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public Stream<RawBsonDocument> streamAllDocuments() {
+        return products.values().stream().map(BenchmarkData::document);
+    }
+
+    @Override
+    public Optional<Product> findAndUpdateById(Product product, Long expectedVersion) {
+        Product[] written = new Product[1];
+        products.computeIfPresent(product.getId(), (id, previous) -> {
+            if (expectedVersion != null && !expectedVersion.equals(previous.getVersion())) {
+                return previous;
+            }
+            Product updated = copy(product);
+            updated.setVersion(previous.getVersion() == null ? 1 : previous.getVersion() + 1);
+            updated.setLastModified(Instant.now());
+            written[0] = updated;
+            return updated;
+        });
+        return Optional.ofNullable(written[0]).map(InMemoryProductRepository::copy);
+    }
+
+    @Override
+    public Optional<Product> findAndDeleteById(String id) {
+        return Optional.ofNullable(products.remove(id));
+    }
+
+    @Override
+    public BulkWriteResult bulkUpsert(List<Product> batch) {
+        batch.forEach(this::save);
+        return BulkWriteResult.unacknowledged();
+    }
+
+    @Override
+    public BulkWriteResult bulkInsertAndUpdate(List<Product> inserts, List<Product> updates) {
+        for (Product product : inserts) {
+            Product inserted = copy(product);
+            inserted.setVersion(0L);
+            inserted.setLastModified(Instant.now());
+            products.putIfAbsent(inserted.getId(), inserted);
+        }
+        updates.forEach(product -> findAndUpdateById(product, null));
+        return BulkWriteResult.unacknowledged();
+    }
+
+    @Override
+    public List<String> findIds(String afterId, int limit) {
+        return (afterId == null ? products : products.tailMap(afterId, false)).keySet().stream()
+                .limit(limit).collect(Collectors.toList());
+    }
+
+    @Override
+    public long deleteByIds(Collection<String> ids) {
+        return ids.stream().filter(id -> products.remove(id) != null).count();
+    }
+
+    /** Case-insensitive word match with the name weighted like the text index, there is no stemming. */
+    @Override
+    public List<Product> searchText(String text, int skip, int limit) {
+        String[] words = text.toLowerCase().split("\\s+");
+        return products.values().stream()
+                .map(product -> Map.entry(product, score(product, words)))
+                .filter(scored -> scored.getValue() > 0)
+                .sorted(Map.Entry.<Product, Integer>comparingByValue().reversed())
+                .skip(skip)
+                .limit(limit)
+                .map(scored -> copy(scored.getKey()))
+                .collect(Collectors.toList());
+    }
+
+    private static int score(Product product, String[] words) {
+        String name = product.getName().toLowerCase();
+        String description = product.getDescription() == null ? "" : product.getDescription().toLowerCase();
+        int score = 0;
+        for (String word : words) {
+            score += (name.contains(word) ? 3 : 0) + (description.contains(word) ? 1 : 0);
+        }
+        return score;
+    }
+
+    @Override
+    public List<Product> findByNamePrefix(String prefix, int limit) {
+        return products.values().stream()
+                .filter(product -> product.getName().startsWith(prefix))
+                .sorted(Comparator.comparing(Product::getName))
+                .limit(limit)
+                .map(InMemoryProductRepository::copy)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Product> findByPriceRange(double min, double max, Double afterPrice, String afterId,
+                                          boolean descending, int limit) {
+        Comparator<Product> order = Comparator.comparingDouble(Product::getPrice).thenComparing(Product::getId);
+        return products.values().stream()
+                .filter(product -> product.getPrice() >= min && product.getPrice() <= max)
+                .filter(product -> afterPrice == null || (descending ? -1 : 1) * order.compare(product,
+                        Product.builder().price(afterPrice).id(afterId).build()) > 0)
+                .sorted(descending ? order.reversed() : order)
+                .limit(limit)
+                .map(InMemoryProductRepository::copy)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public ProductPriceStats aggregatePrices(double[] histogramBounds) {
+        // a scan like the aggregation
+        long[] histogram = new long[histogramBounds.length + 1];
+        DoubleSummaryStatistics statistics = new DoubleSummaryStatistics();
+        for (Product product : products.values()) {
+            statistics.accept(product.getPrice());
+            histogram[ProductPriceStats.bucketOf(histogramBounds, product.getPrice())]++;
+        }
+        boolean empty = statistics.getCount() == 0;
+        return new ProductPriceStats(statistics.getCount(), empty ? null : statistics.getMin(),
+                empty ? null : statistics.getMax(), statistics.getSum(), Arrays.stream(histogram).boxed().toList());
+    }
+
+    @Override
+    public List<Product> findAll(ProductFields fields) {
+        return project(findAll(), fields);
+    }
+
+    @Override
+    public List<Product> findPage(String afterId, int limit, ProductFields fields) {
+        return project(afterId == null
+                ? findAllByOrderByIdAsc(Limit.of(limit))
+                : products.tailMap(afterId, false).values().stream().limit(limit)
+                        .map(InMemoryProductRepository::copy).collect(Collectors.toList()), fields);
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<String> ids, ProductFields fields) {
+        return project(findAllById(ids), fields);
+    }
+
+    @Override
+    public List<Product> searchText(String text, int skip, int limit, ProductFields fields) {
+        return project(searchText(text, skip, limit), fields);
+    }
+
+    @Override
+    public List<Product> findByNamePrefix(String prefix, int limit, ProductFields fields) {
+        return project(findByNamePrefix(prefix, limit), fields);
+    }
+
+    @Override
+    public List<Product> findByPriceRange(double min, double max, Double afterPrice, String afterId,
+                                          boolean descending, int limit, ProductFields fields) {
+        return project(findByPriceRange(min, max, afterPrice, afterId, descending, limit), fields);
+    }
+
+    /** Drops the fields Mongo would not have sent, the copies are made anyway. */
+    private static List<Product> project(List<Product> products, ProductFields fields) {
+        for (Product product : products) {
+            if (!fields.includes("name")) {
+                product.setName(null);
+            }
+            if (!fields.includes("description")) {
+                product.setDescription(null);
+            }
+        }
+        return products;
+    }
+
+    @Override
+    public <S extends Product> S save(S product) {
+        if (product.getId() == null) {
+            product.setId(new ObjectId().toHexString());
+        }
+        product.setVersion(product.getVersion() == null ? 0 : product.getVersion() + 1);
+        product.setLastModified(Instant.now());
+        products.put(product.getId(), copy(product));
+        return product;
+    }
+
+    @Override
+    public <S extends Product> List<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        entities.forEach(product -> saved.add(save(product)));
+        return saved;
+    }
+
+    @Override
+    public <S extends Product> S insert(S product) {
+        return save(product);
+    }
+
+    @Override
+    public <S extends Product> List<S> insert(Iterable<S> entities) {
+        return saveAll(entities);
+    }
+
+    @Override
+    public Optional<Product> findById(String id) {
+        return Optional.ofNullable(products.get(id)).map(InMemoryProductRepository::copy);
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return products.containsKey(id);
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return products.values().stream().map(InMemoryProductRepository::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Product> findAllById(Iterable<String> ids) {
+        return StreamSupport.stream(ids.spliterator(), false)
+                .map(products::get)
+                .filter(p -> p != null)
+                .map(InMemoryProductRepository::copy)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long count() {
+        return products.size();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        products.remove(id);
+    }
+
+    @Override
+    public void delete(Product product) {
+        products.remove(product.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        ids.forEach(products::remove);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Product> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        products.clear();
+    }
+
+    @Override
+    public List<Product> findAll(Sort sort) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Page<Product> findAll(Pageable pageable) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends Product> Optional<S> findOne(Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends Product> List<S> findAll(Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends Product> List<S> findAll(Example<S> example, Sort sort) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends Product> Page<S> findAll(Example<S> example, Pageable pageable) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends Product> long count(Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends Product> boolean exists(Example<S> example) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <S extends Product, R> R findBy(Example<S> example, Function<FluentQuery.FetchableFluentQuery<S>, R> queryFunction) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,63 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductAggregates;
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Catalog totals for a dashboard, the way dashboards computed them until now (every product fetched and
+ * summed up by the client) against the aggregates endpoint, once computed by a scan like the Mongo
+ * aggregation without the price index and once read from the totals the price index keeps.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductAggregatesBenchmark {
+    @Param({"10000", "100000"})
+    private int size;
+
+    private ProductService scanningService;
+    private ProductService indexedService;
+
+    @Setup
+    public void setUp() {
+        InMemoryProductRepository repository = new InMemoryProductRepository();
+        List<Product> products = BenchmarkData.products(size);
+        repository.saveAll(products);
+        scanningService = BenchmarkData.productService(repository, false);
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getPriceIndex().setEnabled(true);
+        ProductPriceIndex priceIndex = new ProductPriceIndex(productProperties);
+        priceIndex.load(products.stream()
+                .map(product -> new ProductPriceIndex.PriceEntry(product.getPrice(), product.getId()))
+                .iterator());
+        indexedService = BenchmarkData.productService(repository, productProperties, priceIndex);
+    }
+
+    @Benchmark
+    public DoubleSummaryStatistics findAllAndSumUp() throws ProductNotFoundException {
+        return scanningService.findAllProducts().stream().mapToDouble(ProductResponse::getPrice).summaryStatistics();
+    }
+
+    @Benchmark
+    public ProductAggregates aggregatesByScan() {
+        return scanningService.findProductAggregates();
+    }
+
+    @Benchmark
+    public ProductAggregates aggregatesFromPriceIndex() {
+        return indexedService.findProductAggregates();
+    }
+}
@@ -0,0 +1,93 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.util.AppUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+CPU cost of gzipping a product list against the bytes it saves. Level 6 is what Tomcat uses for
+server.compression, 1 and 9 show what the other ends would give. The size of each payload before and after
+gzip is reported as the payloadBytes and gzippedBytes counters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductCompressionBenchmark {
+    @Param({"100", "10000"})
+    private int size;
+
+    @Param({"json", "cbor"})
+    private String format;
+
+    @Param({"1", "6", "9"})
+    private int level;
+
+    private byte[] payload;
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = format.equals("cbor") ? BenchmarkData.cborMapper() : BenchmarkData.objectMapper();
+        List<ProductResponse> productResponses = BenchmarkData.products(size).stream()
+                .map(AppUtil::convertToProductResponse)
+                .collect(Collectors.toList());
+        payload = objectMapper.writeValueAsBytes(productResponses);
+        compressed = compress();
+    }
+
+    /** JMH zeroes counters after the setup, so the benchmarks set them on every call. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadSize {
+        public long payloadBytes;
+        public long gzippedBytes;
+    }
+
+    @Benchmark
+    public byte[] gzip(PayloadSize payloadSize) throws IOException {
+        setSize(payloadSize);
+        return compress();
+    }
+
+    @Benchmark
+    public byte[] gunzip(PayloadSize payloadSize) throws IOException {
+        setSize(payloadSize);
+        try (GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return gunzip.readAllBytes();
+        }
+    }
+
+    private byte[] compress() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length / 4);
+        try (GZIPOutputStream gzip = new LeveledGzipOutputStream(bytes, level)) {
+            gzip.write(payload);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void setSize(PayloadSize payloadSize) {
+        payloadSize.payloadBytes = payload.length;
+        payloadSize.gzippedBytes = compressed.length;
+    }
+
+    /** {@link GZIPOutputStream} only exposes the level through its protected deflater. */
+    private static class LeveledGzipOutputStream extends GZIPOutputStream {
+        LeveledGzipOutputStream(ByteArrayOutputStream out, int level) throws IOException {
+            super(out);
+            def.setLevel(level);
+        }
+    }
+}
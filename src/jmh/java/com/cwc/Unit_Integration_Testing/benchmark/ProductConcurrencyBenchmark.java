@@ -0,0 +1,209 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.repository.ReactiveProductRepository;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import com.cwc.Unit_Integration_Testing.service.ReactiveProductService;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load comparison of the servlet stack on platform and on virtual threads and the reactive stack: a burst of
+ * {@code clients} requests for a product arrives at once and the score is the time until all of them are answered.
+ * Every lookup needs one of {@code connections} Mongo connections for {@code queryMicros}, the cache is off.
+ * <p>
+ * blocking: the servlet stack, each request runs on one of Tomcat's 200 request threads and holds it while it
+ * waits for a connection and for the query.
+ * virtual: the servlet stack with the virtual-threads profile, each request runs on its own virtual thread, which
+ * leaves its carrier while it waits.
+ * reactive: the WebFlux stack, a request only waits for a connection and its query completes on a driver thread,
+ * no thread is held in between.
+ * <p>
+ * 100 connections is the default pool, fewer than Tomcat's threads, so the pool bounds every mode. With 400 the
+ * blocking mode is bounded by its threads instead, the other two are not.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductConcurrencyBenchmark {
+    private static final int TOMCAT_THREADS = 200;
+
+    @Param({"10000"})
+    private int size;
+    @Param({"1000"})
+    private int clients;
+    @Param({"100", "400"})
+    private int connections;
+    @Param({"2000"})
+    private long queryMicros;
+    @Param({"blocking", "virtual", "reactive"})
+    private String mode;
+
+    private ExecutorService requestThreads;
+    private ScheduledExecutorService driver;
+    private ProductService productService;
+    private ReactiveProductService reactiveProductService;
+    private List<String> ids;
+
+    /** Blocking driver: the calling thread waits for a connection and for the query. */
+    static class PooledRepository extends InMemoryProductRepository {
+        private final Semaphore pool;
+        private final long queryNanos;
+
+        PooledRepository(int connections, long queryMicros) {
+            this.pool = new Semaphore(connections, true);
+            this.queryNanos = TimeUnit.MICROSECONDS.toNanos(queryMicros);
+        }
+
+        @Override
+        public Optional<Product> findById(String id) {
+            pool.acquireUninterruptibly();
+            try {
+                LockSupport.parkNanos(queryNanos);
+                return super.findById(id);
+            } finally {
+                pool.release();
+            }
+        }
+    }
+
+    /**
+     * Reactive driver: a query waits in a queue for a free connection and runs its callback on the driver thread
+     * after {@code queryMicros}. Whoever adds a query or frees a connection drains the queue.
+     */
+    static class AsyncPool {
+        private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger available;
+        private final ScheduledExecutorService driver;
+        private final long queryMicros;
+
+        AsyncPool(int connections, ScheduledExecutorService driver, long queryMicros) {
+            this.available = new AtomicInteger(connections);
+            this.driver = driver;
+            this.queryMicros = queryMicros;
+        }
+
+        void query(Runnable callback) {
+            waiting.add(callback);
+            drain();
+        }
+
+        private void release() {
+            available.incrementAndGet();
+            drain();
+        }
+
+        private void drain() {
+            while (true) {
+                int permits = available.get();
+                if (permits == 0 || waiting.isEmpty()) {
+                    return;
+                }
+                if (!available.compareAndSet(permits, permits - 1)) {
+                    continue;
+                }
+                Runnable callback = waiting.poll();
+                if (callback == null) {
+                    available.incrementAndGet();
+                    continue;
+                }
+                driver.schedule(() -> {
+                    release();
+                    callback.run();
+                }, queryMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getCache().setEnabled(false);
+        List<Product> products = BenchmarkData.products(size);
+        ids = products.stream().map(Product::getId).toList();
+        if (mode.equals("reactive")) {
+            InMemoryProductRepository repository = new InMemoryProductRepository();
+            repository.saveAll(products);
+            driver = Executors.newSingleThreadScheduledExecutor();
+            reactiveProductService = new ReactiveProductService(
+                    reactiveRepository(repository, new AsyncPool(connections, driver, queryMicros)), productProperties);
+        } else {
+            PooledRepository repository = new PooledRepository(connections, queryMicros);
+            repository.saveAll(products);
+            productService = BenchmarkData.productService(repository, false);
+            requestThreads = mode.equals("virtual")
+                    ? Executors.newVirtualThreadPerTaskExecutor()
+                    : Executors.newFixedThreadPool(TOMCAT_THREADS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (requestThreads != null) {
+            requestThreads.shutdownNow();
+        }
+        if (driver != null) {
+            driver.shutdownNow();
+        }
+    }
+
+    /** Only findById is used by the benchmark, the other methods are not supported. */
+    private static ReactiveProductRepository reactiveRepository(InMemoryProductRepository repository, AsyncPool pool) {
+        return (ReactiveProductRepository) Proxy.newProxyInstance(ReactiveProductRepository.class.getClassLoader(),
+                new Class<?>[]{ReactiveProductRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("findById") || !(args[0] instanceof String id)) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return Mono.<Product>create(sink ->
+                            pool.query(() -> sink.success(repository.findById(id).orElse(null))));
+                });
+    }
+
+    @Benchmark
+    public long burst() throws InterruptedException {
+        CountDownLatch answered = new CountDownLatch(clients);
+        AtomicLong failed = new AtomicLong();
+        for (int i = 0; i < clients; i++) {
+            String id = ids.get(i % ids.size());
+            if (mode.equals("reactive")) {
+                reactiveProductService.findProductById(id).subscribe(
+                        product -> answered.countDown(),
+                        e -> {
+                            failed.incrementAndGet();
+                            answered.countDown();
+                        });
+            } else {
+                requestThreads.execute(() -> {
+                    try {
+                        productService.findProductById(id);
+                    } catch (ProductNotFoundException e) {
+                        failed.incrementAndGet();
+                    }
+                    answered.countDown();
+                });
+            }
+        }
+        answered.await();
+        return failed.get();
+    }
+}
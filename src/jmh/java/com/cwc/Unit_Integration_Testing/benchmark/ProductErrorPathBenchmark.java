@@ -0,0 +1,51 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.exception.ErrorMessage;
+import com.cwc.Unit_Integration_Testing.exception.ProductGlobalExceptionHandler;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A lookup of a product that does not exist, from the service down to the serialized 404 body. The cache is off,
+ * so every lookup goes to the repository and throws, instead of being answered by the remembered miss.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductErrorPathBenchmark {
+    private ProductService productService;
+    private ProductGlobalExceptionHandler exceptionHandler;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        productService = BenchmarkData.productService(BenchmarkData.repository(1000), false);
+        exceptionHandler = new ProductGlobalExceptionHandler();
+        objectMapper = BenchmarkData.objectMapper();
+    }
+
+    @Benchmark
+    public ProductNotFoundException lookupMissingProduct() {
+        try {
+            productService.findProductById("missing");
+            throw new IllegalStateException("product should not exist");
+        } catch (ProductNotFoundException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public byte[] notFoundResponse() throws JsonProcessingException {
+        ResponseEntity<ErrorMessage> response = exceptionHandler.handleProductNotFoundException(lookupMissingProduct());
+        return objectMapper.writeValueAsBytes(response.getBody());
+    }
+}
@@ -0,0 +1,100 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.controller.ProductLoadSheddingInterceptor;
+import com.cwc.Unit_Integration_Testing.exception.ProductOverloadException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the concurrency limit: more clients than the service can take, each sending its next request as
+ * soon as the last one is answered. A request needs one of {@code connections} Mongo connections for
+ * {@code queryMicros}, so without shedding requests queue for connections and latency grows with the number of
+ * clients. A client that got a 503 pauses {@code retryMicros} before its next request, standing in for the
+ * round trip and a client backoff far shorter than Retry-After. The score includes the 503s, the counters give the
+ * requests served, those of them that took longer than {@code lateMicros} and the requests shed.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(128)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductLoadSheddingBenchmark {
+    @Param({"10"})
+    private int connections;
+    @Param({"2000"})
+    private long queryMicros;
+    @Param({"10000"})
+    private long retryMicros;
+    @Param({"10000"})
+    private long lateMicros;
+    @Param({"false", "true"})
+    private boolean shedding;
+
+    private ProductLoadSheddingInterceptor interceptor;
+    private HandlerMethod handler;
+    private Semaphore pool;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        ProductProperties productProperties = new ProductProperties();
+        ProductProperties.RateLimit rateLimit = productProperties.getRateLimit();
+        rateLimit.setEnabled(shedding);
+        // only the concurrency limit, rates would shed before it
+        rateLimit.getClient().setRate(0);
+        rateLimit.getGlobal().setRate(0);
+        rateLimit.getConcurrency().setLatencyThreshold(Duration.ofMillis(5));
+        interceptor = new ProductLoadSheddingInterceptor(productProperties);
+        handler = new HandlerMethod(this, ProductLoadSheddingBenchmark.class.getMethod("handle"));
+        pool = new Semaphore(connections, true);
+    }
+
+    /** Events rather than operations, JMH only reports those with sample time. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+        public long served;
+        public long servedLate;
+        public long shed;
+    }
+
+    /** The request's work: one query on a pooled connection. */
+    public void handle() {
+        pool.acquireUninterruptibly();
+        try {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(queryMicros));
+        } finally {
+            pool.release();
+        }
+    }
+
+    @Benchmark
+    public int request(Outcomes outcomes) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/product/page");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        long start = System.nanoTime();
+        try {
+            interceptor.preHandle(request, response, handler);
+        } catch (ProductOverloadException e) {
+            outcomes.shed++;
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(retryMicros));
+            return e.getStatus().value();
+        }
+        handle();
+        interceptor.afterCompletion(request, response, handler, null);
+        outcomes.served++;
+        if (System.nanoTime() - start > TimeUnit.MICROSECONDS.toNanos(lateMicros)) {
+            outcomes.servedLate++;
+        }
+        return 200;
+    }
+}
@@ -0,0 +1,40 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.util.AppUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductMappingBenchmark {
+    @Param({"1000"})
+    private int size;
+
+    private Product product;
+    private List<Product> products;
+
+    @Setup
+    public void setUp() {
+        products = BenchmarkData.products(size);
+        product = products.get(0);
+    }
+
+    @Benchmark
+    public ProductResponse convertToProductResponse() {
+        return AppUtil.convertToProductResponse(product);
+    }
+
+    @Benchmark
+    public List<ProductResponse> convertList() {
+        return products.stream().map(AppUtil::convertToProductResponse).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,58 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A crawler asking for {@code missingIds} ids that do not exist, over and over, with and without remembering
+ * misses. The repository takes {@code queryMicros} per query like a Mongo round trip, {@code mongoQueries}
+ * is the rate of the queries that still reach it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductMissingLookupBenchmark {
+    @Param({"10000"})
+    private int size;
+    @Param({"1000"})
+    private int missingIds;
+    @Param({"500"})
+    private long queryMicros;
+    @Param({"0s", "30s"})
+    private String negativeTimeToLive;
+
+    private ProductService productService;
+
+    @Setup
+    public void setUp() {
+        ProductSingleFlightBenchmark.SlowRepository repository = new ProductSingleFlightBenchmark.SlowRepository(queryMicros);
+        repository.saveAll(BenchmarkData.products(size));
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getCache().setNegativeTimeToLive(Duration.parse("PT" + negativeTimeToLive));
+        productService = BenchmarkData.productService(repository, productProperties,
+                new ProductPriceIndex(productProperties));
+    }
+
+    @Benchmark
+    public ProductNotFoundException lookupMissingProduct(ProductSingleFlightBenchmark.Queries queries) {
+        // past the ids of the stored products
+        String id = String.format("%024x", size + 1 + ThreadLocalRandom.current().nextInt(missingIds));
+        try {
+            productService.findProductById(id);
+            throw new IllegalStateException("product should not exist");
+        } catch (ProductNotFoundException e) {
+            return e;
+        }
+    }
+}
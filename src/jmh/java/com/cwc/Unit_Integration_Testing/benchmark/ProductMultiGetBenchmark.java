@@ -0,0 +1,71 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductLookupResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cart of {@code cartSize} products resolved one lookup per item, like a client calling
+ * {@code GET /{id}} per line, against one multi-get. The cache is off so every item needs Mongo, which takes
+ * {@code queryMicros} per query like a round trip. One item in ten does not exist.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductMultiGetBenchmark {
+    @Param({"10000"})
+    private int size;
+    @Param({"10", "50"})
+    private int cartSize;
+    @Param({"500"})
+    private long queryMicros;
+
+    private ProductService productService;
+    private List<String> cart;
+
+    @Setup
+    public void setUp() {
+        ProductSingleFlightBenchmark.SlowRepository repository = new ProductSingleFlightBenchmark.SlowRepository(queryMicros);
+        repository.saveAll(BenchmarkData.products(size));
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getCache().setEnabled(false);
+        productService = BenchmarkData.productService(repository, productProperties,
+                new ProductPriceIndex(productProperties));
+        cart = new ArrayList<>(cartSize);
+        for (int i = 0; i < cartSize; i++) {
+            // ids past the stored products do not exist
+            int item = i % 10 == 9 ? size + i : ThreadLocalRandom.current().nextInt(size) + 1;
+            cart.add(String.format("%024x", item));
+        }
+    }
+
+    @Benchmark
+    public List<ProductResponse> lookupPerItem() {
+        List<ProductResponse> products = new ArrayList<>(cart.size());
+        for (String id : cart) {
+            try {
+                products.add(productService.findProductById(id));
+            } catch (ProductNotFoundException e) {
+                products.add(null);
+            }
+        }
+        return products;
+    }
+
+    @Benchmark
+    public ProductLookupResponse multiGet() {
+        return productService.findProductsByIds(cart);
+    }
+}
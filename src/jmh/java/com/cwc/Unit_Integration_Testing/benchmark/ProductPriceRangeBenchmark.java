@@ -0,0 +1,70 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductPriceIndexLoader;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
+import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import com.mongodb.client.MongoClient;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Price range pages served from Mongo's (price, _id) index against the in-memory price index, which still
+ * loads the products of the page from Mongo by id. Needs a Mongo, see {@link BenchmarkData#mongoRepository}.
+ * {@code rangeScan} is the in-memory scan on its own, it only finds products with the index enabled.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductPriceRangeBenchmark {
+    @Param({"100000"})
+    private int size;
+    @Param({"false", "true"})
+    private boolean priceIndexEnabled;
+
+    private MongoClient mongoClient;
+    private MongoTemplate mongoTemplate;
+    private ProductPriceIndex productPriceIndex;
+    private ProductService productService;
+
+    @Setup
+    public void setUp() {
+        mongoClient = BenchmarkData.mongoClient();
+        mongoTemplate = BenchmarkData.mongoTemplate(mongoClient);
+        ProductRepository repository = BenchmarkData.mongoRepository(mongoTemplate, size);
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getCache().setEnabled(false);
+        productProperties.getPriceIndex().setEnabled(priceIndexEnabled);
+        productPriceIndex = new ProductPriceIndex(productProperties);
+        new ProductPriceIndexLoader(productPriceIndex, repository, productProperties).load();
+        productService = BenchmarkData.productService(repository, productProperties, productPriceIndex);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mongoTemplate.getDb().drop();
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public ProductPage findProductsByPrice() {
+        // prices are spread over 0 to 2000, a 20 wide window holds about 1% of the products
+        double min = ThreadLocalRandom.current().nextInt(1980);
+        return productService.findProductsByPrice(min, min + 20, false, null, 50);
+    }
+
+    @Benchmark
+    public int rangeScan() {
+        double min = ThreadLocalRandom.current().nextInt(1980);
+        return productPriceIndex.findRange(min, min + 20, null, false, 50).size();
+    }
+}
@@ -0,0 +1,97 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.config.ProductFieldsJacksonModule;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.util.AppUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.mongodb.MongoClientSettings;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+A page of products from the BSON Mongo sends to the JSON body, with every field or with fields=id,name,price.
+The projected documents are what Mongo sends for that projection: the same documents without the description.
+Bytes off the wire and in the body are reported as the mongoBytes and jsonBytes counters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductProjectionBenchmark {
+    @Param({"500"})
+    private int size;
+    @Param({"100", "2000"})
+    private int descriptionLength;
+    @Param({"", "id,name,price"})
+    private String fields;
+
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+
+    private MappingMongoConverter mongoConverter;
+    private ObjectWriter writer;
+    private List<RawBsonDocument> documents;
+    private long wireBytes;
+    private long bodyBytes;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        ProductFields productFields = ProductFields.parse(fields);
+        mongoConverter = BenchmarkData.mongoConverter();
+        ObjectMapper objectMapper = BenchmarkData.objectMapper().registerModule(new ProductFieldsJacksonModule());
+        writer = productFields.isAll()
+                ? objectMapper.writer()
+                : objectMapper.writer(new SimpleFilterProvider().addFilter(ProductFieldsJacksonModule.FILTER,
+                        SimpleBeanPropertyFilter.filterOutAllExcept(productFields.names())));
+        documents = new ArrayList<>(size);
+        wireBytes = 0;
+        for (Product product : BenchmarkData.products(size)) {
+            String description = product.getDescription().repeat(descriptionLength / product.getDescription().length() + 1);
+            product.setDescription(productFields.includes("description") ? description.substring(0, descriptionLength) : null);
+            RawBsonDocument document = BenchmarkData.document(product);
+            documents.add(document);
+            wireBytes += document.getByteBuffer().remaining();
+        }
+        bodyBytes = readAndWritePage().length;
+    }
+
+    /** JMH zeroes counters after the setup, so the benchmark sets them on every call. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PageSize {
+        public long mongoBytes;
+        public long jsonBytes;
+    }
+
+    @Benchmark
+    public byte[] readAndWrite(PageSize pageSize) throws JsonProcessingException {
+        pageSize.mongoBytes = wireBytes;
+        pageSize.jsonBytes = bodyBytes;
+        return readAndWritePage();
+    }
+
+    private byte[] readAndWritePage() throws JsonProcessingException {
+        List<ProductResponse> page = new ArrayList<>(documents.size());
+        for (RawBsonDocument document : documents) {
+            // decoded as the driver decodes a reply, then mapped as the repository maps it
+            Document decoded = DOCUMENT_CODEC.decode(document.asBsonReader(), DecoderContext.builder().build());
+            page.add(AppUtil.convertToProductResponse(mongoConverter.read(Product.class, decoded)));
+        }
+        return writer.writeValueAsBytes(page);
+    }
+}
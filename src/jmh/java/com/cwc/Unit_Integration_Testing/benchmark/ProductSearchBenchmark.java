@@ -0,0 +1,77 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductSearchPage;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import com.mongodb.client.MongoClient;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Search latency under concurrent load, against a real Mongo because the work happens in the text and name
+ * indexes. Start one and point {@code BENCHMARK_MONGO_URI} at it (default {@code mongodb://localhost:27017}),
+ * the benchmark uses its own {@code product-benchmark} database and drops it at the end.
+ * <p>
+ * {@code filterAllProducts} is what clients do today: fetch the whole list and filter it themselves.
+ * Sample mode reports p50, p99 and p99.9 per call.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductSearchBenchmark {
+    private static final String[] WORDS = {"laptop", "mouse", "keyboard", "monitor", "headset", "webcam", "dock"};
+    private static final String[] PREFIXES = {"La", "Mo", "Ke", "Mon", "Hea", "Web", "Do"};
+
+    @Param({"10000"})
+    private int size;
+
+    private MongoClient mongoClient;
+    private MongoTemplate mongoTemplate;
+    private ProductService productService;
+
+    @Setup
+    public void setUp() {
+        mongoClient = BenchmarkData.mongoClient();
+        mongoTemplate = BenchmarkData.mongoTemplate(mongoClient);
+        ProductRepository repository = BenchmarkData.mongoRepository(mongoTemplate, size);
+        // the cache would only measure itself, searches never go through it
+        productService = BenchmarkData.productService(repository, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mongoTemplate.getDb().drop();
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public ProductSearchPage searchProducts() {
+        return productService.searchProducts(WORDS[ThreadLocalRandom.current().nextInt(WORDS.length)], 0, 20);
+    }
+
+    @Benchmark
+    public List<ProductResponse> autocompleteProducts() {
+        return productService.autocompleteProducts(PREFIXES[ThreadLocalRandom.current().nextInt(PREFIXES.length)], 10);
+    }
+
+    @Benchmark
+    public List<ProductResponse> filterAllProducts() throws ProductNotFoundException {
+        String word = WORDS[ThreadLocalRandom.current().nextInt(WORDS.length)];
+        return productService.findAllProducts().stream()
+                .filter(product -> product.getName().toLowerCase().contains(word)
+                        || product.getDescription().toLowerCase().contains(word))
+                .limit(20)
+                .collect(Collectors.toList());
+    }
+}
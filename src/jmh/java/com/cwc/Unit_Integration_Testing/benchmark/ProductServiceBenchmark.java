@@ -0,0 +1,58 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service calls end to end against {@link InMemoryProductRepository}, with and without the product cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductServiceBenchmark {
+    @Param({"10000"})
+    private int size;
+    @Param({"false", "true"})
+    private boolean cacheEnabled;
+
+    private ProductService productService;
+    private String id;
+    private String name;
+
+    @Setup
+    public void setUp() {
+        InMemoryProductRepository repository = BenchmarkData.repository(size);
+        productService = BenchmarkData.productService(repository, cacheEnabled);
+        id = String.format("%024x", size / 2);
+        name = repository.findById(id).orElseThrow().getName();
+    }
+
+    @Benchmark
+    public ProductResponse findProductById() throws ProductNotFoundException {
+        return productService.findProductById(id);
+    }
+
+    @Benchmark
+    public ProductResponse findProductByName() throws ProductNotFoundException {
+        return productService.findProductByName(name);
+    }
+
+    @Benchmark
+    public ProductPage findProductPage() {
+        return productService.findProductPage(id, 50);
+    }
+
+    @Benchmark
+    public List<ProductResponse> findAllProducts() throws ProductNotFoundException {
+        return productService.findAllProducts();
+    }
+}
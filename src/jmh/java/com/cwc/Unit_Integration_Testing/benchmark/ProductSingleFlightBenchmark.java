@@ -0,0 +1,112 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Many threads reading the same product, as when one product is linked everywhere, with the cache off so
+ * every lookup needs Mongo. The repository takes {@code queryMicros} per query like a Mongo round trip does.
+ * {@code mongoQueries} is the rate of repository queries next to the rate of lookups, the difference is the
+ * load single-flight takes off Mongo.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductSingleFlightBenchmark {
+    private static final ThreadLocal<Queries> QUERIES = new ThreadLocal<>();
+
+    @Param({"10000"})
+    private int size;
+    @Param({"500"})
+    private long queryMicros;
+    @Param({"false", "true"})
+    private boolean singleFlight;
+
+    private ProductService productService;
+    private String id;
+    private String name;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Queries {
+        public long mongoQueries;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            mongoQueries = 0;
+            QUERIES.set(this);
+        }
+    }
+
+    /** Counts queries of the calling benchmark thread, lookups run their query in the thread that asked. */
+    static class SlowRepository extends InMemoryProductRepository {
+        private final long queryNanos;
+
+        SlowRepository(long queryMicros) {
+            this.queryNanos = TimeUnit.MICROSECONDS.toNanos(queryMicros);
+        }
+
+        @Override
+        public Optional<Product> findById(String id) {
+            query();
+            return super.findById(id);
+        }
+
+        @Override
+        public Optional<Product> findByName(String name) {
+            query();
+            return super.findByName(name);
+        }
+
+        @Override
+        public List<Product> findAllById(Iterable<String> ids) {
+            query();
+            return super.findAllById(ids);
+        }
+
+        private void query() {
+            Queries queries = QUERIES.get();
+            if (queries != null) {
+                queries.mongoQueries++;
+            }
+            LockSupport.parkNanos(queryNanos);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        SlowRepository repository = new SlowRepository(queryMicros);
+        repository.saveAll(BenchmarkData.products(size));
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getCache().setEnabled(false);
+        productProperties.getCache().setSingleFlight(singleFlight);
+        productService = BenchmarkData.productService(repository, productProperties,
+                new ProductPriceIndex(productProperties));
+        id = String.format("%024x", size / 2);
+        name = repository.findById(id).orElseThrow().getName();
+    }
+
+    @Benchmark
+    public ProductResponse findProductById(Queries queries) throws ProductNotFoundException {
+        return productService.findProductById(id);
+    }
+
+    @Benchmark
+    public ProductResponse findProductByName(Queries queries) throws ProductNotFoundException {
+        return productService.findProductByName(name);
+    }
+}
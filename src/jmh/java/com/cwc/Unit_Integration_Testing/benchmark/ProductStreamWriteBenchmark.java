@@ -0,0 +1,77 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.util.AppUtil;
+import com.cwc.Unit_Integration_Testing.util.ProductJsonWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Cost of turning the documents of a list read into the response body, from BSON to JSON bytes.
+ * Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm} to see the bytes allocated per list.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductStreamWriteBenchmark {
+    @Param({"1000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter productWriter;
+    private MappingMongoConverter mongoConverter;
+    private final DocumentCodec documentCodec = new DocumentCodec();
+    private List<RawBsonDocument> documents;
+
+    @Setup
+    public void setUp() {
+        objectMapper = BenchmarkData.objectMapper();
+        productWriter = objectMapper.writerFor(ProductResponse.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        mongoConverter = BenchmarkData.mongoConverter();
+        documents = BenchmarkData.products(size).stream()
+                .map(BenchmarkData::document)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void mapAndSerialize() throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(OutputStream.nullOutputStream())) {
+            generator.writeStartArray();
+            for (RawBsonDocument document : documents) {
+                // what the driver and MongoTemplate do for a repository read
+                Product product = mongoConverter.read(Product.class, document.decode(documentCodec));
+                productWriter.writeValue(generator, AppUtil.convertToProductResponse(product));
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    @Benchmark
+    public void writeDirect() throws IOException {
+        ProductJsonWriter productJsonWriter = new ProductJsonWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(OutputStream.nullOutputStream())) {
+            generator.writeStartArray();
+            for (RawBsonDocument document : documents) {
+                productJsonWriter.write(document, generator);
+            }
+            generator.writeEndArray();
+        }
+    }
+}
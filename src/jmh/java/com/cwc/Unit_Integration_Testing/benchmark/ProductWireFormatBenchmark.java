@@ -0,0 +1,68 @@
+package com.cwc.Unit_Integration_Testing.benchmark;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.util.AppUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.type.CollectionType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+JSON against CBOR for product lists, both directions. The payload size of each format is reported as the
+payloadBytes counter. Run with -prof gc to compare allocations as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductWireFormatBenchmark {
+    @Param({"100", "10000"})
+    private int size;
+
+    @Param({"json", "cbor"})
+    private String format;
+
+    private ObjectWriter listWriter;
+    private ObjectReader listReader;
+    private List<ProductResponse> productResponses;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = format.equals("cbor") ? BenchmarkData.cborMapper() : BenchmarkData.objectMapper();
+        CollectionType listType = objectMapper.getTypeFactory().constructCollectionType(List.class, ProductResponse.class);
+        listWriter = objectMapper.writerFor(listType);
+        listReader = objectMapper.readerFor(listType);
+        productResponses = BenchmarkData.products(size).stream()
+                .map(AppUtil::convertToProductResponse)
+                .collect(Collectors.toList());
+        payload = listWriter.writeValueAsBytes(productResponses);
+    }
+
+    /** JMH zeroes counters after the setup, so the benchmarks set it on every call. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadSize {
+        public long payloadBytes;
+    }
+
+    @Benchmark
+    public byte[] encodeList(PayloadSize payloadSize) throws IOException {
+        payloadSize.payloadBytes = payload.length;
+        return listWriter.writeValueAsBytes(productResponses);
+    }
+
+    @Benchmark
+    public List<ProductResponse> decodeList(PayloadSize payloadSize) throws IOException {
+        payloadSize.payloadBytes = payload.length;
+        return listReader.readValue(payload);
+    }
+}
@@ -2,8 +2,10 @@ package com.cwc.Unit_Integration_Testing;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class UnitIntegrationTestingApplication {
 
 	public static void main(String[] args) {
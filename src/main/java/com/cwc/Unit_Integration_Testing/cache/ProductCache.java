@@ -0,0 +1,389 @@
+package com.cwc.Unit_Integration_Testing.cache;
+
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Read-through cache in front of the product repository.
+ * <p>
+ * Products are cached by id only. Name lookups cache the id the name resolved to and then go
+ * through the id cache, and the product found there is checked to still have that name. That way a
+ * write only has to evict the product id to keep both lookups fresh.
+ * <p>
+ * Writers must evict after the database write. Evicting also drops a load that is still running for the
+ * same id, so an old product can not be put back after a write.
+ * <p>
+ * Loads run in the calling thread and outside of any lock held by the cache: only an empty future is put
+ * in the cache, and concurrent readers of the same id wait for it. Blocking on Mongo inside the cache's own
+ * compute would pin the carrier thread when requests run on virtual threads.
+ * <p>
+ * With {@code product.cache.single-flight}, concurrent lookups of the same id or the same name also share
+ * one Mongo query when the product is not cached: name lookups, and every lookup while the cache is off, go
+ * through a map of the queries in flight, and the readers that find one there wait for its result (or its
+ * exception) instead of querying themselves. Evicting drops the in-flight queries as well, so a reader that
+ * comes after a write never gets the result of a query that started before it.
+ * <p>
+ * Ids and names that were not found are remembered for {@code negative-time-to-live} in two smaller caches
+ * of their own, so repeated lookups of products that do not exist (crawlers, stale links) are answered without
+ * Mongo and can not push real products out of the product cache. Every write evicts there as well. A lookup
+ * only remembers a miss when no write was evicted while it queried, the query may have missed the product
+ * that write created. Products created by other instances are found once the change stream refreshes them,
+ * or after {@code negative-time-to-live} at the latest.
+ * <p>
+ * Hits, misses and evictions of the caches are published as cache.* metrics, lookups that waited for the
+ * query of another one as product.cache.shared.loads.
+ */
+@Component
+@Slf4j
+public class ProductCache implements MeterBinder {
+    private final boolean enabled;
+    private final AsyncCache<String, Product> productsById;
+    private final Cache<String, String> idsByName;
+    private final boolean negative;
+    private final Cache<String, Boolean> missingIds;
+    private final Cache<String, Boolean> missingNames;
+    // counts evictions, a miss is only remembered when none happened while it was looked up
+    private final AtomicLong evictions = new AtomicLong();
+    private final boolean singleFlight;
+    // queries in flight, only while they run
+    private final Map<String, CompletableFuture<Optional<Product>>> loadsById = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Optional<Product>>> loadsByName = new ConcurrentHashMap<>();
+    private final LongAdder sharedIdLoads = new LongAdder();
+    private final LongAdder sharedNameLoads = new LongAdder();
+
+    public ProductCache(ProductProperties productProperties) {
+        ProductProperties.Cache properties = productProperties.getCache();
+        this.enabled = properties.isEnabled();
+        this.negative = enabled && properties.getNegativeTimeToLive().isPositive();
+        this.missingIds = negativeCache(properties);
+        this.missingNames = negativeCache(properties);
+        this.singleFlight = properties.isSingleFlight();
+        this.productsById = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTimeToLive())
+                .recordStats()
+                .buildAsync();
+        this.idsByName = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTimeToLive())
+                .recordStats()
+                .build();
+        log.info("Product cache enabled: {}", enabled);
+    }
+
+    private static Cache<String, Boolean> negativeCache(ProductProperties.Cache properties) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(properties.getNegativeMaximumSize())
+                .recordStats();
+        if (properties.getNegativeTimeToLive().isPositive()) {
+            builder.expireAfterWrite(properties.getNegativeTimeToLive());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, productsById, "products-by-id");
+        CaffeineCacheMetrics.monitor(registry, idsByName, "product-ids-by-name");
+        CaffeineCacheMetrics.monitor(registry, missingIds, "missing-product-ids");
+        CaffeineCacheMetrics.monitor(registry, missingNames, "missing-product-names");
+        FunctionCounter.builder("product.cache.shared.loads", sharedIdLoads, LongAdder::sum)
+                .description("Product lookups that waited for the Mongo query of a concurrent lookup of the same key")
+                .tag("key", "id")
+                .register(registry);
+        FunctionCounter.builder("product.cache.shared.loads", sharedNameLoads, LongAdder::sum)
+                .description("Product lookups that waited for the Mongo query of a concurrent lookup of the same key")
+                .tag("key", "name")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<Product> findById(String id, Function<String, Optional<Product>> loader) {
+        if (!enabled) {
+            return loadOnce(loadsById, sharedIdLoads, id, loader);
+        }
+        if (isMissing(missingIds, id)) {
+            return Optional.empty();
+        }
+        // the cached future already makes concurrent readers of the id wait for one load
+        CompletableFuture<Product> loading = new CompletableFuture<>();
+        CompletableFuture<Product> product = productsById.get(id, (key, executor) -> loading);
+        if (product == loading) {
+            long evictionsBefore = evictions.get();
+            try {
+                // a future completed with null is removed, the miss is remembered in missingIds instead
+                Optional<Product> loaded = loader.apply(id);
+                if (loaded.isEmpty()) {
+                    rememberMissing(missingIds, id, evictionsBefore);
+                }
+                loading.complete(loaded.orElse(null));
+            } catch (RuntimeException e) {
+                loading.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return Optional.ofNullable(join(product));
+    }
+
+    /**
+     * The products with the given ids that exist, by id. Cached products and remembered misses are answered
+     * from the cache, all other ids are passed to the loader at once, so it can fetch them in one query.
+     * Products that are still loading for another lookup are loaded again rather than waited for.
+     */
+    public Map<String, Product> findAllById(Collection<String> ids,
+                                            Function<List<String>, List<Product>> loader) {
+        Map<String, Product> found = new HashMap<>();
+        List<String> toLoad = new ArrayList<>();
+        for (String id : ids) {
+            if (found.containsKey(id) || isMissing(missingIds, id)) {
+                continue;
+            }
+            CompletableFuture<Product> cached = enabled ? productsById.getIfPresent(id) : null;
+            Product product = cached != null && cached.isDone() && !cached.isCompletedExceptionally()
+                    ? cached.join() : null;
+            if (product != null) {
+                found.put(id, product);
+            } else {
+                toLoad.add(id);
+            }
+        }
+        if (toLoad.isEmpty()) {
+            return found;
+        }
+        long evictionsBefore = evictions.get();
+        for (Product product : loader.apply(toLoad)) {
+            found.put(product.getId(), product);
+            if (enabled) {
+                productsById.asMap().putIfAbsent(product.getId(), CompletableFuture.completedFuture(product));
+            }
+        }
+        for (String id : toLoad) {
+            if (!found.containsKey(id)) {
+                rememberMissing(missingIds, id, evictionsBefore);
+            } else if (enabled && evictions.get() != evictionsBefore) {
+                // the product may have been written after the query read it, do not keep what it read
+                productsById.synchronous().invalidate(id);
+            }
+        }
+        return found;
+    }
+
+    public Optional<Product> findByName(String name,
+                                        Function<String, Optional<Product>> nameLoader,
+                                        Function<String, Optional<Product>> idLoader) {
+        if (!enabled) {
+            return loadOnce(loadsByName, sharedNameLoads, name, nameLoader);
+        }
+        if (isMissing(missingNames, name)) {
+            return Optional.empty();
+        }
+        String id = idsByName.getIfPresent(name);
+        if (id != null) {
+            Optional<Product> product = findById(id, idLoader);
+            if (product.isPresent() && name.equals(product.get().getName())) {
+                return product;
+            }
+            idsByName.invalidate(name);
+        }
+        long evictionsBefore = evictions.get();
+        Optional<Product> product = loadOnce(loadsByName, sharedNameLoads, name, nameLoader);
+        if (product.isPresent()) {
+            idsByName.put(name, product.get().getId());
+        } else {
+            rememberMissing(missingNames, name, evictionsBefore);
+        }
+        return product;
+    }
+
+    public void evict(String id) {
+        if (id == null) {
+            return;
+        }
+        forgetLoads(id);
+        if (enabled) {
+            productsById.synchronous().invalidate(id);
+            missingIds.invalidate(id);
+        }
+    }
+
+    /**
+     * Puts a product written elsewhere (by another instance) in place of the cached one, if this instance
+     * has it cached and the written version is newer. A product that is still loading is evicted instead,
+     * the load may have read the old version.
+     */
+    public void refresh(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+        forgetLoads(product.getId());
+        if (!enabled) {
+            return;
+        }
+        missingIds.invalidate(product.getId());
+        if (product.getName() != null) {
+            missingNames.invalidate(product.getName());
+        }
+        CompletableFuture<Product> cached = productsById.getIfPresent(product.getId());
+        if (cached == null) {
+            return;
+        }
+        Product current = cached.isDone() && !cached.isCompletedExceptionally() ? cached.join() : null;
+        if (current == null) {
+            evict(product.getId());
+            return;
+        }
+        if (isNewer(product, current)) {
+            // only replaces the future we looked at, a local write evicting in the meantime wins
+            productsById.asMap().replace(product.getId(), cached, CompletableFuture.completedFuture(product));
+        }
+    }
+
+    /**
+     * Runs the loader, unless a query for the same key is in flight already, then waits for that one.
+     * The query is only shared while it runs, its result is not kept.
+     */
+    private Optional<Product> loadOnce(Map<String, CompletableFuture<Optional<Product>>> loads, LongAdder shared,
+                                       String key, Function<String, Optional<Product>> loader) {
+        if (!singleFlight) {
+            return loader.apply(key);
+        }
+        CompletableFuture<Optional<Product>> loading = new CompletableFuture<>();
+        CompletableFuture<Optional<Product>> inFlight = loads.putIfAbsent(key, loading);
+        if (inFlight != null) {
+            shared.increment();
+            // parks, a virtual thread gives its carrier back while it waits
+            return join(inFlight);
+        }
+        Optional<Product> product;
+        try {
+            product = loader.apply(key);
+        } catch (RuntimeException e) {
+            loads.remove(key, loading);
+            loading.completeExceptionally(e);
+            throw e;
+        }
+        // removed before it is completed, lookups that come later query again instead of reusing the result
+        loads.remove(key, loading);
+        loading.complete(product);
+        return product;
+    }
+
+    /**
+     * A written product can have been read by any name query in flight, under its old name, so those are all
+     * dropped. Only queries that are running right now are affected.
+     */
+    private void forgetLoads(String id) {
+        evictions.incrementAndGet();
+        loadsById.remove(id);
+        loadsByName.clear();
+    }
+
+    private boolean isMissing(Cache<String, Boolean> missing, String key) {
+        return negative && missing.getIfPresent(key) != null;
+    }
+
+    private void rememberMissing(Cache<String, Boolean> missing, String key, long evictionsBefore) {
+        if (!negative) {
+            return;
+        }
+        missing.put(key, Boolean.TRUE);
+        // a write that raced with the lookup may have created the product, it evicts this entry or we do
+        if (evictions.get() != evictionsBefore) {
+            missing.invalidate(key);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isNewer(Product product, Product current) {
+        return product.getVersion() == null || current.getVersion() == null
+                || product.getVersion() > current.getVersion();
+    }
+
+    public void evictName(String name) {
+        if (name == null) {
+            return;
+        }
+        evictions.incrementAndGet();
+        loadsByName.remove(name);
+        if (enabled) {
+            idsByName.invalidate(name);
+            missingNames.invalidate(name);
+        }
+    }
+
+    public void clear() {
+        evictions.incrementAndGet();
+        loadsById.clear();
+        loadsByName.clear();
+        if (enabled) {
+            missingIds.invalidateAll();
+            missingNames.invalidateAll();
+            productsById.synchronous().invalidateAll();
+            idsByName.invalidateAll();
+        }
+    }
+
+    /** Runs pending evictions now instead of on the next cache access. */
+    public void cleanUp() {
+        productsById.synchronous().cleanUp();
+        idsByName.cleanUp();
+        missingIds.cleanUp();
+        missingNames.cleanUp();
+    }
+
+    public long size() {
+        return productsById.synchronous().estimatedSize();
+    }
+
+    public CacheStats productStats() {
+        return productsById.synchronous().stats();
+    }
+
+    public CacheStats nameStats() {
+        return idsByName.stats();
+    }
+
+    public CacheStats missingIdStats() {
+        return missingIds.stats();
+    }
+
+    public CacheStats missingNameStats() {
+        return missingNames.stats();
+    }
+}
@@ -0,0 +1,328 @@
+package com.cwc.Unit_Integration_Testing.cache;
+
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductPriceStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Product ids sorted by price, so price range scans do not have to go to Mongo.
+ * <p>
+ * Entries are ordered by price and then id, the same order as the (price, _id) index in Mongo, so cursors
+ * can be used with either. Reads never block, writers are serialized so the price kept per id and the
+ * sorted entries agree with each other.
+ * <p>
+ * The index only sees writes made through this application instance, unless the
+ * {@link com.cwc.Unit_Integration_Testing.config.ProductChangeStreamListener} feeds it the writes of the others.
+ * Writers must update it after the database write, with the version the write gave the product: concurrent writes
+ * of a product can reach the index in another order than Mongo applied them, and only the newest version is kept.
+ * Readers must check the products they load against the range, because a product can have been changed or
+ * deleted since it was indexed. When disabled, every call is a no-op and {@link #isReady()} stays false.
+ * <p>
+ * Writers also keep the count, sum, min, max and histogram of all prices and publish them as one
+ * {@link ProductPriceStats}, so {@link #priceStats()} is a volatile read. The sum is kept exact, so it does not
+ * drift however often prices are added and taken away. While the index is disabled or not loaded,
+ * {@link #priceStats(Supplier)} reuses the totals computed by Mongo for {@code stats-time-to-live} instead, so
+ * they can be up to that much behind the writes.
+ */
+@Component
+@Slf4j
+public class ProductPriceIndex implements MeterBinder {
+    // loaded prices and products stored without a version count as older than any write
+    private static final long UNKNOWN_VERSION = -1;
+    private static final Comparator<PriceEntry> ORDER = Comparator.comparingDouble(PriceEntry::price)
+            .thenComparing(PriceEntry::id, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    /** A null id sorts after every other id with the same price, it is only used as a bound. */
+    public record PriceEntry(double price, String id) {
+    }
+
+    private final boolean enabled;
+    private final ConcurrentSkipListSet<PriceEntry> entries = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<String, IndexedPrice> pricesById = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final double[] histogramBounds;
+    // guarded by writeLock
+    private final long[] histogram;
+    private BigDecimal sum = BigDecimal.ZERO;
+    // products deleted before the index is ready, the load may still read them from Mongo
+    private final Set<String> removedWhileLoading = new HashSet<>();
+    private boolean loading;
+    private volatile ProductPriceStats priceStats;
+    private volatile boolean ready;
+    private final long statsTimeToLiveNanos;
+    // totals computed by Mongo, while the index can not provide them
+    private final ReentrantLock aggregationLock = new ReentrantLock();
+    private volatile AggregatedStats aggregated;
+
+    private record IndexedPrice(double price, long version) {
+    }
+
+    private record AggregatedStats(ProductPriceStats stats, long computedAt) {
+    }
+
+    public ProductPriceIndex(ProductProperties productProperties) {
+        this.enabled = productProperties.getPriceIndex().isEnabled();
+        this.histogramBounds = histogramBounds(productProperties.getPriceIndex().getHistogramBounds());
+        this.histogram = new long[histogramBounds.length + 1];
+        this.statsTimeToLiveNanos = productProperties.getPriceIndex().getStatsTimeToLive().toNanos();
+        this.priceStats = stats();
+        log.info("Product price index enabled: {}", enabled);
+    }
+
+    /** The bounds as an array, checked to be ascending. */
+    public static double[] histogramBounds(List<Double> bounds) {
+        if (bounds.isEmpty()) {
+            throw new IllegalArgumentException("product.price-index.histogram-bounds must not be empty");
+        }
+        double[] sorted = bounds.stream().mapToDouble(Double::doubleValue).toArray();
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] <= sorted[i - 1]) {
+                throw new IllegalArgumentException("product.price-index.histogram-bounds must be ascending, got " + bounds);
+            }
+        }
+        return sorted;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("product.price.index.size", entries, NavigableSet::size)
+                .description("Products in the in-memory price index")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** True once the initial load finished, until then range queries have to go to Mongo. */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Adds the products read from Mongo and marks the index ready. Prices written while the load runs win
+     * over the ones loaded, they are newer, and products removed before the index is ready are not added.
+     * A load while another one runs or once the index is ready is ignored: its reads can be older than the
+     * removals the index has already forgotten about, so it could bring deleted products back.
+     */
+    public void load(Iterator<PriceEntry> products) {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (ready || loading) {
+                log.warn("Product price index is already {}, ignoring another load", ready ? "loaded" : "loading");
+                return;
+            }
+            loading = true;
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            fill(products);
+        } finally {
+            writeLock.lock();
+            try {
+                loading = false;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        log.info("Product price index loaded with {} products", entries.size());
+    }
+
+    private void fill(Iterator<PriceEntry> products) {
+        while (products.hasNext()) {
+            PriceEntry entry = products.next();
+            writeLock.lock();
+            try {
+                if (!removedWhileLoading.contains(entry.id())
+                        && pricesById.putIfAbsent(entry.id(), new IndexedPrice(entry.price(), UNKNOWN_VERSION)) == null) {
+                    entries.add(entry);
+                    count(entry.price(), 1);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        writeLock.lock();
+        try {
+            priceStats = stats();
+            removedWhileLoading.clear();
+            ready = true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Indexes the price the product has at {@code version}, unless a newer version of it is indexed already.
+     * A null version, of a product stored before versions were kept, counts as older than any other.
+     */
+    public void put(String id, double price, Long version) {
+        if (!enabled || id == null) {
+            return;
+        }
+        long indexedVersion = version == null ? UNKNOWN_VERSION : version;
+        writeLock.lock();
+        try {
+            IndexedPrice previous = pricesById.get(id);
+            if (previous != null && previous.version() > indexedVersion) {
+                return;
+            }
+            pricesById.put(id, new IndexedPrice(price, indexedVersion));
+            if (previous != null) {
+                entries.remove(new PriceEntry(previous.price(), id));
+                count(previous.price(), -1);
+            }
+            entries.add(new PriceEntry(price, id));
+            count(price, 1);
+            priceStats = stats();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void remove(String id) {
+        if (!enabled || id == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            if (!ready) {
+                removedWhileLoading.add(id);
+            }
+            IndexedPrice previous = pricesById.remove(id);
+            if (previous != null) {
+                entries.remove(new PriceEntry(previous.price(), id));
+                count(previous.price(), -1);
+                priceStats = stats();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void clear() {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            pricesById.clear();
+            entries.clear();
+            Arrays.fill(histogram, 0);
+            sum = BigDecimal.ZERO;
+            priceStats = stats();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Empties the index and sends range queries to Mongo until it is {@link #load loaded} again. */
+    public void reset() {
+        ready = false;
+        clear();
+    }
+
+    /**
+     * Up to {@code limit} entries with {@code min <= price <= max}, in price order, starting after
+     * {@code after} when it is not null.
+     */
+    public List<PriceEntry> findRange(double min, double max, PriceEntry after, boolean descending, int limit) {
+        NavigableSet<PriceEntry> range = entries.subSet(new PriceEntry(min, ""), true, new PriceEntry(max, null), true);
+        if (descending) {
+            range = range.descendingSet();
+        }
+        if (after != null) {
+            range = range.tailSet(after, false);
+        }
+        List<PriceEntry> page = new ArrayList<>(Math.min(limit, 1024));
+        for (PriceEntry entry : range) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(entry);
+        }
+        return page;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** Totals of the indexed prices as of the last write, only complete once the index {@link #isReady()}. */
+    public ProductPriceStats priceStats() {
+        return priceStats;
+    }
+
+    /**
+     * Totals of all prices, the ones kept by the index once it is ready. Otherwise the ones computed by
+     * {@code aggregation}, which are reused for {@code stats-time-to-live}; concurrent readers of expired totals
+     * wait for one aggregation instead of each running their own.
+     */
+    public ProductPriceStats priceStats(Supplier<ProductPriceStats> aggregation) {
+        if (ready) {
+            return priceStats;
+        }
+        if (statsTimeToLiveNanos <= 0) {
+            return aggregation.get();
+        }
+        AggregatedStats cached = aggregated;
+        if (isFresh(cached)) {
+            return cached.stats();
+        }
+        aggregationLock.lock();
+        try {
+            cached = aggregated;
+            if (isFresh(cached)) {
+                return cached.stats();
+            }
+            long computedAt = System.nanoTime();
+            ProductPriceStats stats = aggregation.get();
+            aggregated = new AggregatedStats(stats, computedAt);
+            return stats;
+        } finally {
+            aggregationLock.unlock();
+        }
+    }
+
+    private boolean isFresh(AggregatedStats cached) {
+        return cached != null && System.nanoTime() - cached.computedAt() < statsTimeToLiveNanos;
+    }
+
+    private void count(double price, int delta) {
+        histogram[ProductPriceStats.bucketOf(histogramBounds, price)] += delta;
+        BigDecimal exact = BigDecimal.valueOf(price);
+        sum = delta > 0 ? sum.add(exact) : sum.subtract(exact);
+    }
+
+    private ProductPriceStats stats() {
+        boolean empty = entries.isEmpty();
+        return new ProductPriceStats(pricesById.size(),
+                empty ? null : entries.first().price(),
+                empty ? null : entries.last().price(),
+                sum.doubleValue(),
+                Arrays.stream(histogram).boxed().toList());
+    }
+}
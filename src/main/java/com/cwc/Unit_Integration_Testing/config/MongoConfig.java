@@ -0,0 +1,30 @@
+package com.cwc.Unit_Integration_Testing.config;
+
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.config.EnableReactiveMongoAuditing;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@EnableMongoAuditing
+@EnableReactiveMongoAuditing
+public class MongoConfig {
+
+    /*
+    Applied to the blocking and the reactive client, and wins over pool options in the connection string.
+    With virtual threads the number of concurrent requests is no longer capped by the Tomcat pool,
+    so the Mongo pool becomes the limit and has to be sized for it.
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer connectionPoolCustomizer(ProductProperties productProperties) {
+        ProductProperties.Mongo.Pool pool = productProperties.getMongo().getPool();
+        return builder -> builder.applyToConnectionPoolSettings(settings -> settings
+                .maxSize(pool.getMaxSize())
+                .minSize(pool.getMinSize())
+                .maxWaitTime(pool.getMaxWaitTime().toMillis(), TimeUnit.MILLISECONDS)
+                .maxConnecting(pool.getMaxConnecting()));
+    }
+}
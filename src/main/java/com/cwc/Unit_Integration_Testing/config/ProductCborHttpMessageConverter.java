@@ -0,0 +1,19 @@
+package com.cwc.Unit_Integration_Testing.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+/*
+Serves application/cbor on every endpoint that returns or reads a body, for callers that send that
+Accept or Content-Type. CBOR writes price as an 8 byte double and field names without quotes, so it is
+smaller than JSON and cheaper to encode and parse. Replaces the default CBOR converter, which would not use
+the Jackson settings of the application.
+ */
+@Component
+public class ProductCborHttpMessageConverter extends MappingJackson2CborHttpMessageConverter {
+    public ProductCborHttpMessageConverter(Jackson2ObjectMapperBuilder jackson2ObjectMapperBuilder) {
+        super(jackson2ObjectMapperBuilder.factory(new CBORFactory()).build());
+    }
+}
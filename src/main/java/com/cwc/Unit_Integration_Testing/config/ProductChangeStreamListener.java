@@ -0,0 +1,180 @@
+package com.cwc.Unit_Integration_Testing.config;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductCache;
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Applies the product writes of every instance, this one included, to the local {@link ProductCache} and
+ * {@link ProductPriceIndex}, so several instances behind a load balancer do not serve each other's old products.
+ * <p>
+ * Runs in a background thread like {@link ProductPriceIndexLoader}. The resume token of the last change is
+ * kept, and after the stream fails it is watched again from that token after {@code product.change-stream.retry-delay},
+ * so no change is missed. When the token is too old for the oplog the changes in between are lost: the cache is
+ * cleared and the price index is loaded again.
+ */
+@Component
+@Slf4j
+public class ProductChangeStreamListener {
+    // ChangeStreamHistoryLost and ChangeStreamFatalError, the resume token can not be used any more
+    private static final Set<Integer> HISTORY_LOST = Set.of(286, 280);
+
+    private final MongoTemplate mongoTemplate;
+    private final ProductCache productCache;
+    private final ProductPriceIndex productPriceIndex;
+    private final ProductPriceIndexLoader productPriceIndexLoader;
+    private final boolean enabled;
+    private final Duration retryDelay;
+
+    private volatile boolean running;
+    private volatile boolean watching;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+    private BsonDocument resumeToken;
+
+    public ProductChangeStreamListener(MongoTemplate mongoTemplate, ProductCache productCache,
+                                       ProductPriceIndex productPriceIndex,
+                                       ProductPriceIndexLoader productPriceIndexLoader,
+                                       ProductProperties productProperties) {
+        this.mongoTemplate = mongoTemplate;
+        this.productCache = productCache;
+        this.productPriceIndex = productPriceIndex;
+        this.productPriceIndexLoader = productPriceIndexLoader;
+        this.enabled = productProperties.getChangeStream().isEnabled();
+        this.retryDelay = productProperties.getChangeStream().getRetryDelay();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            running = true;
+            Thread.ofPlatform().daemon().name("product-change-stream").start(this::run);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> current = cursor;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /** True while a change stream is open, changes made from now on will be applied. */
+    public boolean isWatching() {
+        return watching;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                watch();
+            } catch (MongoCommandException e) {
+                if (!HISTORY_LOST.contains(e.getErrorCode())) {
+                    retryLater(e);
+                } else if (running) {
+                    log.warn("Product changes since resume token {} are lost, clearing the product cache", resumeToken, e);
+                    resumeToken = null;
+                    productCache.clear();
+                    productPriceIndex.reset();
+                }
+            } catch (DataAccessException | MongoException | IllegalStateException e) {
+                retryLater(e);
+            } finally {
+                watching = false;
+                cursor = null;
+            }
+        }
+    }
+
+    private void watch() {
+        ChangeStreamIterable<Document> changes = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Product.class))
+                .watch()
+                .fullDocument(FullDocument.UPDATE_LOOKUP);
+        if (resumeToken != null) {
+            changes = changes.resumeAfter(resumeToken);
+        }
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> opened = changes.cursor()) {
+            cursor = opened;
+            watching = true;
+            if (productPriceIndex.isEnabled() && !productPriceIndex.isReady() && resumeToken == null) {
+                // at startup and after lost history, loaded once the stream is open so no change falls in between
+                productPriceIndexLoader.load();
+            }
+            while (running) {
+                ChangeStreamDocument<Document> change = opened.next();
+                boolean invalidated = apply(change);
+                resumeToken = opened.getResumeToken();
+                if (invalidated) {
+                    // the stream ends after an invalidate and can not be resumed from it
+                    resumeToken = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Applies one change, returns true when the stream was invalidated. */
+    private boolean apply(ChangeStreamDocument<Document> change) {
+        switch (change.getOperationType()) {
+            case INSERT, UPDATE, REPLACE -> {
+                Document document = change.getFullDocument();
+                if (document == null) {
+                    // deleted before the update could be looked up, the delete follows
+                    productCache.evict(ProductPriceIndexLoader.idOf(change.getDocumentKey().get("_id")));
+                } else {
+                    Product product = mongoTemplate.getConverter().read(Product.class, document);
+                    productCache.refresh(product);
+                    productPriceIndex.put(product.getId(), product.getPrice(), product.getVersion());
+                }
+            }
+            case DELETE -> {
+                String id = ProductPriceIndexLoader.idOf(change.getDocumentKey().get("_id"));
+                productCache.evict(id);
+                productPriceIndex.remove(id);
+            }
+            case DROP, RENAME, DROP_DATABASE -> {
+                productCache.clear();
+                productPriceIndex.clear();
+            }
+            case INVALIDATE -> {
+                productCache.clear();
+                productPriceIndex.clear();
+                return true;
+            }
+            default -> log.debug("Ignoring product change {}", change.getOperationType());
+        }
+        return false;
+    }
+
+    private void retryLater(RuntimeException e) {
+        if (!running) {
+            return;
+        }
+        log.warn("Product change stream failed, watching again in {}", retryDelay, e);
+        try {
+            Thread.sleep(retryDelay);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.cwc.Unit_Integration_Testing.config;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.stereotype.Component;
+
+/*
+Puts ProductResponse behind the property filter "productFields", so a response can be limited to the fields a
+client asked for (see ProductFieldsResponseBodyAdvice). Spring Boot registers Module beans with the ObjectMapper
+of the application and with the one of ProductCborHttpMessageConverter. Mappers without a filter for the id
+serialize every field, other mappers never see the filter.
+ */
+@Component
+public class ProductFieldsJacksonModule extends SimpleModule {
+    public static final String FILTER = "productFields";
+
+    @JsonFilter(FILTER)
+    private interface FilteredProductResponse {
+    }
+
+    public ProductFieldsJacksonModule() {
+        super("ProductFieldsJacksonModule");
+        setMixInAnnotation(ProductResponse.class, FilteredProductResponse.class);
+    }
+
+    @Override
+    public void setupModule(SetupContext context) {
+        super.setupModule(context);
+        if (context.getOwner() instanceof ObjectMapper objectMapper && objectMapper.getSerializationConfig().getFilterProvider() == null) {
+            objectMapper.setFilterProvider(new SimpleFilterProvider().setFailOnUnknownId(false));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.cwc.Unit_Integration_Testing.config;
+
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the indexes declared on {@link Product} (for example {@code @Indexed}) once the application is up.
+ * <p>
+ * This runs in the background instead of through {@code spring.data.mongodb.auto-index-creation}:
+ * building an index on a big collection can take minutes, and the application should still start
+ * when Mongo is not reachable yet. Creating an index that already exists does nothing.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductIndexInitializer {
+    private final MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread.ofPlatform().daemon().name("product-index-initializer").start(this::createIndexes);
+    }
+
+    public void createIndexes() {
+        IndexOperations indexOperations = mongoTemplate.indexOps(Product.class);
+        MongoPersistentEntityIndexResolver resolver =
+                new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        try {
+            for (IndexDefinition index : resolver.resolveIndexFor(Product.class)) {
+                String name = indexOperations.ensureIndex(index);
+                log.info("Product index {} is in place", name);
+            }
+        } catch (DataAccessException e) {
+            log.error("Could not create the product indexes, lookups will scan the collection", e);
+        }
+    }
+}
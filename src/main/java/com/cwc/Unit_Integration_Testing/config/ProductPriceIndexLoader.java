@@ -0,0 +1,57 @@
+package com.cwc.Unit_Integration_Testing.config;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
+import com.mongodb.MongoException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.util.stream.Stream;
+
+/**
+ * Fills the {@link ProductPriceIndex} from Mongo once the application is up, in the background like
+ * {@link ProductIndexInitializer}. Price range queries go to Mongo until the load is done, and keep
+ * doing so when it fails. With {@code product.change-stream.enabled} the {@link ProductChangeStreamListener}
+ * loads it instead, once its stream is open, so no change falls between the load and the stream.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductPriceIndexLoader {
+    private final ProductPriceIndex productPriceIndex;
+    private final ProductRepository productRepository;
+    private final ProductProperties productProperties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (productPriceIndex.isEnabled() && !productProperties.getChangeStream().isEnabled()) {
+            Thread.ofPlatform().daemon().name("product-price-index-loader").start(this::load);
+        }
+    }
+
+    public void load() {
+        try (Stream<RawBsonDocument> documents = productRepository.streamAllDocuments()) {
+            productPriceIndex.load(documents.map(ProductPriceIndexLoader::toEntry).iterator());
+        } catch (DataAccessException | MongoException e) {
+            log.error("Could not load the product price index, price ranges are read from Mongo", e);
+        }
+    }
+
+    private static ProductPriceIndex.PriceEntry toEntry(RawBsonDocument document) {
+        BsonValue price = document.get("price");
+        return new ProductPriceIndex.PriceEntry(
+                price != null && price.isNumber() ? price.asNumber().doubleValue() : 0.0,
+                idOf(document.get("_id")));
+    }
+
+    /** The _id of a product document as the string Product.id maps it to. */
+    static String idOf(BsonValue id) {
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+}
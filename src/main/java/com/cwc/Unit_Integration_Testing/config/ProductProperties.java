@@ -0,0 +1,203 @@
+package com.cwc.Unit_Integration_Testing.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "product")
+public class ProductProperties {
+    private Pagination pagination = new Pagination();
+    private Cache cache = new Cache();
+    private Batch batch = new Batch();
+    private Search search = new Search();
+    private PriceIndex priceIndex = new PriceIndex();
+    private ChangeStream changeStream = new ChangeStream();
+    private WriteBehind writeBehind = new WriteBehind();
+    private Mongo mongo = new Mongo();
+    private RateLimit rateLimit = new RateLimit();
+
+    @Data
+    public static class Pagination {
+        /** Page size used when the client does not ask for one. */
+        private int defaultPageSize = 50;
+        /** Upper bound for the page size a client can ask for. */
+        private int maxPageSize = 500;
+
+        public int resolvePageSize(Integer size) {
+            if (size == null || size <= 0) {
+                return defaultPageSize;
+            }
+            return Math.min(size, maxPageSize);
+        }
+    }
+
+    @Data
+    public static class Cache {
+        /** Turns the in-process product cache on or off for this deployment. */
+        private boolean enabled = true;
+        /** Maximum number of products kept, least recently used ones are evicted first. */
+        private long maximumSize = 10_000;
+        /** How long a product stays cached after it was loaded. */
+        private Duration timeToLive = Duration.ofMinutes(10);
+        /**
+         * How long an id or name that was not found is answered as missing without asking Mongo. Bounds how long
+         * a product created by another instance can look missing here when the change stream is off. 0 turns
+         * remembering misses off.
+         */
+        private Duration negativeTimeToLive = Duration.ofSeconds(30);
+        /** Maximum number of missing ids, and of missing names, remembered. An entry takes about 150 bytes. */
+        private long negativeMaximumSize = 100_000;
+        /**
+         * Concurrent lookups of a product that is not cached share one Mongo query, also when the cache is off.
+         * Also applies to lookups of a product that does not exist.
+         */
+        private boolean singleFlight = true;
+    }
+
+    @Data
+    public static class Batch {
+        /** Number of products sent to Mongo in one bulk write or deleted in one batched delete. */
+        private int chunkSize = 1000;
+        /** Maximum number of ids a client can look up in one multi-get. */
+        private int maxLookupIds = 500;
+    }
+
+    @Data
+    public static class Search {
+        /** Number of suggestions returned by autocomplete when the client does not ask for a number. */
+        private int defaultSuggestions = 10;
+    }
+
+    @Data
+    public static class PriceIndex {
+        /**
+         * Keeps product prices in memory and serves price ranges from there. Only writes made through this
+         * instance update it, so leave it off when several instances write to the same database, unless the
+         * change stream is on.
+         */
+        private boolean enabled = false;
+        /**
+         * Boundaries of the price histogram of the aggregates, ascending. The index keeps the histogram
+         * current, without the index it is computed by Mongo on every read.
+         */
+        private List<Double> histogramBounds = List.of(10.0, 25.0, 50.0, 100.0, 250.0, 500.0, 1000.0, 2500.0, 5000.0);
+        /**
+         * How long the aggregates computed by Mongo are reused while the index is off or not loaded yet, they can
+         * be that much behind the writes. 0 runs the aggregation, a scan of the collection, on every read.
+         */
+        private Duration statsTimeToLive = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class ChangeStream {
+        /**
+         * Watches the products collection and applies writes of other instances to the product cache and
+         * the price index. Needs Mongo to run as a replica set.
+         */
+        private boolean enabled = false;
+        /** How long to wait before watching again after the change stream failed. */
+        private Duration retryDelay = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class WriteBehind {
+        /**
+         * Acknowledges saves and updates before they are in Mongo and writes them in batches, see
+         * ProductWriteBehindBuffer. Writes not flushed yet are lost when the instance crashes, unless the journal is set.
+         */
+        private boolean enabled = false;
+        /** Maximum number of products waiting to be written. */
+        private int capacity = 10_000;
+        /** How often pending writes are flushed, a full batch is flushed right away. */
+        private Duration flushInterval = Duration.ofMillis(100);
+        /** How long a write waits for room in a full buffer before it writes to Mongo itself. */
+        private Duration offerTimeout = Duration.ofSeconds(1);
+        /** File every write is appended to before it is acknowledged, and replayed from on startup. Off when empty. */
+        private Path journal;
+    }
+
+    @Data
+    public static class Mongo {
+        private Pool pool = new Pool();
+
+        /** Connection pool of the Mongo driver, the defaults are the driver defaults. */
+        @Data
+        public static class Pool {
+            private int maxSize = 100;
+            private int minSize = 0;
+            /** How long a request waits for a free connection before it fails. */
+            private Duration maxWaitTime = Duration.ofMinutes(2);
+            /** Connections that may be opened at the same time. */
+            private int maxConnecting = 2;
+        }
+    }
+
+    @Data
+    public static class RateLimit {
+        /**
+         * Turns away requests to the product endpoints beyond the limits below early, with 429 when a rate is
+         * exceeded and 503 when too many requests are in progress, both with Retry-After.
+         */
+        private boolean enabled = false;
+        /** Header that identifies a client, such as an API key. The remote address when not set or not sent. */
+        private String clientHeader;
+        /** Clients whose rate is tracked, the ones idle longest are forgotten first. */
+        private long maximumClients = 100_000;
+        /** Requests one client can make to all endpoints together. */
+        private Bucket client = new Bucket(100, 200);
+        /** Requests all clients together can make to all endpoints. */
+        private Bucket global = new Bucket(2000, 4000);
+        /**
+         * Additional limits of single endpoints, keyed by the ProductController method, e.g. findAllProducts or
+         * deleteAllProducts. A request has to fit both these and the limits of all endpoints.
+         */
+        private Map<String, Endpoint> endpoints = new HashMap<>();
+        private Concurrency concurrency = new Concurrency();
+
+        @Data
+        public static class Endpoint {
+            private Bucket client = new Bucket(0, 0);
+            private Bucket global = new Bucket(0, 0);
+        }
+
+        /** Token bucket, refilled with {@code rate} tokens per second up to {@code burst}. */
+        @Data
+        public static class Bucket {
+            /** Requests per second on average, 0 for no limit. */
+            private double rate;
+            /** Requests that can be made at once after being idle, at least 1. */
+            private int burst;
+
+            public Bucket() {
+            }
+
+            public Bucket(double rate, int burst) {
+                this.rate = rate;
+                this.burst = burst;
+            }
+        }
+
+        /**
+         * Limit on requests in progress over all endpoints, adapted to the latency: it grows by one while
+         * requests finish within {@code latency-threshold} and the limit is in use, and shrinks by
+         * {@code backoff-ratio} at most once per threshold while they take longer.
+         */
+        @Data
+        public static class Concurrency {
+            private boolean enabled = true;
+            private int initialLimit = 100;
+            private int minLimit = 10;
+            private int maxLimit = 500;
+            private Duration latencyThreshold = Duration.ofMillis(250);
+            private double backoffRatio = 0.9;
+            /** Retry-After sent with a 503. */
+            private Duration retryAfter = Duration.ofSeconds(1);
+        }
+    }
+}
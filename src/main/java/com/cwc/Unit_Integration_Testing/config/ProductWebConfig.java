@@ -0,0 +1,20 @@
+package com.cwc.Unit_Integration_Testing.config;
+
+import com.cwc.Unit_Integration_Testing.controller.ProductLoadSheddingInterceptor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ProductWebConfig implements WebMvcConfigurer {
+    private final ProductLoadSheddingInterceptor productLoadSheddingInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(productLoadSheddingInterceptor).addPathPatterns("/api/v1/product/**");
+    }
+}
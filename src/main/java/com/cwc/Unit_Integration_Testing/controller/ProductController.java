@@ -1,35 +1,193 @@
 package com.cwc.Unit_Integration_Testing.controller;
 
+import com.cwc.Unit_Integration_Testing.config.ProductCborHttpMessageConverter;
+import com.cwc.Unit_Integration_Testing.dto.ProductAggregates;
+import com.cwc.Unit_Integration_Testing.dto.ProductBatchResult;
+import com.cwc.Unit_Integration_Testing.dto.ProductBatchSummary;
+import com.cwc.Unit_Integration_Testing.dto.ProductDeleteSummary;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductLookupResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
 import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
 import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductSearchPage;
+import com.cwc.Unit_Integration_Testing.exception.ProductBadRequestException;
 import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.exception.ProductVersionConflictException;
+import com.cwc.Unit_Integration_Testing.service.ProductBatchService;
 import com.cwc.Unit_Integration_Testing.service.ProductService;
+import com.cwc.Unit_Integration_Testing.util.ProductETags;
+import com.cwc.Unit_Integration_Testing.util.ProductJsonWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.bson.RawBsonDocument;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/v1/product")
 @RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ProductController {
     private final ProductService productService;
+    private final ProductBatchService productBatchService;
+    private final ObjectMapper objectMapper;
+    private final ProductCborHttpMessageConverter productCborHttpMessageConverter;
 
+    /*
+    GETs of products send an ETag and Last-Modified. When the client's If-None-Match or
+    If-Modified-Since still matches, checkNotModified turns the response into a 304 and nothing is serialized.
+    Products come as JSON or CBOR depending on Accept, so these responses are sent with Vary: Accept.
+
+    The GETs that return products take fields=id,name,price to get only those fields of each product.
+    List reads only read them from Mongo, ProductFieldsResponseBodyAdvice leaves the others out of the body.
+     */
     @GetMapping
-    public ResponseEntity<List<ProductResponse>> findAllProducts() throws ProductNotFoundException {
-        return ResponseEntity.ok(productService.findAllProducts());
+    public ResponseEntity<List<ProductResponse>> findAllProducts(@RequestParam(required = false) String fields,
+                                                                 ServletWebRequest webRequest) throws ProductNotFoundException {
+        List<ProductResponse> products = productService.findAllProducts(ProductFields.parse(fields));
+        if (checkNotModified(webRequest, ProductETags.etag(products), ProductETags.lastModified(products))) {
+            return null;
+        }
+        return ResponseEntity.ok(products);
+    }
+
+    @GetMapping("/page")
+    public ResponseEntity<ProductPage> findProductPage(@RequestParam(required = false) String cursor,
+                                                       @RequestParam(required = false) Integer size,
+                                                       @RequestParam(required = false) String fields,
+                                                       ServletWebRequest webRequest) {
+        ProductPage page = productService.findProductPage(cursor, size, ProductFields.parse(fields));
+        if (checkNotModified(webRequest, ProductETags.etag(page), ProductETags.lastModified(page.getItems()))) {
+            return null;
+        }
+        return ResponseEntity.ok(page);
+    }
+
+    /*
+    sort is asc (cheapest first) or desc, pass nextCursor back as cursor to get the next page.
+     */
+    @GetMapping("/price")
+    public ResponseEntity<ProductPage> findProductsByPrice(@RequestParam(required = false) Double min,
+                                                           @RequestParam(required = false) Double max,
+                                                           @RequestParam(defaultValue = "asc") String sort,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(required = false) Integer size,
+                                                           @RequestParam(required = false) String fields) {
+        boolean descending = Sort.Direction.fromOptionalString(sort)
+                .orElseThrow(() -> new ProductBadRequestException("sort must be asc or desc, got " + sort))
+                .isDescending();
+        return ResponseEntity.ok(productService.findProductsByPrice(min, max, descending, cursor, size,
+                ProductFields.parse(fields)));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<ProductSearchPage> searchProducts(@RequestParam String q,
+                                                            @RequestParam(required = false) Integer page,
+                                                            @RequestParam(required = false) Integer size,
+                                                            @RequestParam(required = false) String fields) {
+        return ResponseEntity.ok(productService.searchProducts(q, page, size, ProductFields.parse(fields)));
+    }
+
+    @GetMapping("/autocomplete")
+    public ResponseEntity<List<ProductResponse>> autocompleteProducts(@RequestParam String prefix,
+                                                                      @RequestParam(required = false) Integer size,
+                                                                      @RequestParam(required = false) String fields) {
+        return ResponseEntity.ok(productService.autocompleteProducts(prefix, size, ProductFields.parse(fields)));
+    }
+
+    /*
+    Writes the JSON array while the Mongo cursor is being read, so the whole collection
+    never has to be held in memory. Documents go straight from BSON to JSON, without a Product
+    and a ProductResponse per document. An empty collection gives an empty array instead of a 404
+    because the status is already committed when the first product is written.
+    Written as a CBOR array instead when the client accepts application/cbor.
+     */
+    @GetMapping(value = "/stream", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<StreamingResponseBody> streamAllProducts(
+            @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.APPLICATION_JSON_VALUE) List<MediaType> accept) {
+        MediaType mediaType = negotiate(accept);
+        StreamingResponseBody body = outputStream -> {
+            ProductJsonWriter productJsonWriter = new ProductJsonWriter();
+            try (Stream<RawBsonDocument> products = productService.streamAllProductDocuments();
+                 JsonGenerator generator = mapperFor(mediaType).getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                for (Iterator<RawBsonDocument> iterator = products.iterator(); iterator.hasNext(); ) {
+                    productJsonWriter.write(iterator.next(), generator);
+                }
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(mediaType).body(body);
+    }
+
+    /*
+    Multi-get for clients that need many products at once (carts, orders): GET /ids?ids=a,b,c.
+    Always 200, ids that do not exist come back with status NOT_FOUND in their place.
+     */
+    @GetMapping("/ids")
+    public ResponseEntity<ProductLookupResponse> findProductsByIds(@RequestParam List<String> ids,
+                                                                   @RequestParam(required = false) String fields) {
+        // only validated, products come whole from the cache and fields only trims the body
+        ProductFields.parse(fields);
+        return ResponseEntity.ok(productService.findProductsByIds(ids));
+    }
+
+    /*
+    Count, min/max/mean price, price percentiles and a price histogram of the whole catalog, for dashboards
+    that would otherwise pull every product to compute them.
+     */
+    @GetMapping("/aggregates")
+    public ResponseEntity<ProductAggregates> findProductAggregates() {
+        return ResponseEntity.ok(productService.findProductAggregates());
     }
 
+    /*
+    A product in the ProductCache is checked against If-None-Match without reading Mongo.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<ProductResponse> findProductById(@ PathVariable String id) throws ProductNotFoundException {
+    public ResponseEntity<ProductResponse> findProductById(@ PathVariable String id,
+                                                           @RequestParam(required = false) String fields,
+                                                           @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.APPLICATION_JSON_VALUE) List<MediaType> accept,
+                                                           ServletWebRequest webRequest) throws ProductNotFoundException {
+        // only validated, like in findProductsByIds
+        ProductFields productFields = ProductFields.parse(fields);
         ProductResponse product = productService.findProductById(id);
+        if (checkNotModified(webRequest, ProductETags.etag(product, negotiate(accept), productFields),
+                ProductETags.lastModified(product))) {
+            return null;
+        }
         return ResponseEntity.status(HttpStatus.FOUND).body(product);
     }
     @GetMapping("/name/{name}")
-    public ResponseEntity<ProductResponse> findProductByName(@PathVariable String name) throws ProductNotFoundException {
+    public ResponseEntity<ProductResponse> findProductByName(@PathVariable String name,
+                                                             @RequestParam(required = false) String fields,
+                                                             @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.APPLICATION_JSON_VALUE) List<MediaType> accept,
+                                                             ServletWebRequest webRequest) throws ProductNotFoundException {
+        // only validated, like in findProductsByIds
+        ProductFields productFields = ProductFields.parse(fields);
         ProductResponse productByName = productService.findProductByName(name);
+        if (checkNotModified(webRequest, ProductETags.etag(productByName, negotiate(accept), productFields),
+                ProductETags.lastModified(productByName))) {
+            return null;
+        }
         return ResponseEntity.status(HttpStatus.FOUND).body(productByName);
     }
 
@@ -38,11 +196,55 @@ public class ProductController {
     {
         return ResponseEntity.status(HttpStatus.CREATED).body(productService.saveProduct(productRequest));
     }
+    /*
+    Accepts a JSON array or NDJSON (one product per line), and a CBOR array or sequence. All are read
+    item by item while the products are written in bulk, and the results of each chunk are written as soon as
+    it is stored: {"results":[...],"created":n,"updated":n,"failed":n}. The counts come last because they are
+    only known at the end. Neither the body nor the results are ever fully held in memory.
+     */
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+            MediaType.APPLICATION_CBOR_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<StreamingResponseBody> saveProducts(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.APPLICATION_JSON_VALUE) List<MediaType> accept,
+            InputStream body) {
+        MediaType mediaType = negotiate(accept);
+        StreamingResponseBody responseBody = outputStream -> {
+            try (MappingIterator<ProductRequest> productRequests =
+                         mapperFor(contentType).readerFor(ProductRequest.class).readValues(body);
+                 JsonGenerator generator = mapperFor(mediaType).getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("results");
+                ProductBatchSummary summary = productBatchService.saveProducts(productRequests, results -> {
+                    try {
+                        for (ProductBatchResult result : results) {
+                            generator.writeObject(result);
+                        }
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+                generator.writeNumberField("created", summary.getCreated());
+                generator.writeNumberField("updated", summary.getUpdated());
+                generator.writeNumberField("failed", summary.getFailed());
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(mediaType).body(responseBody);
+    }
+    /*
+    With If-Match the product is only updated if its ETag still matches, otherwise 412.
+    The response carries the new ETag.
+     */
     @PutMapping("/update/{id}")
     public ResponseEntity<ProductResponse> updateProduct(@PathVariable String id,
-                                                         @RequestBody ProductRequest productRequest)
-            throws ProductNotFoundException {
-        return ResponseEntity.status(HttpStatus.CREATED).body(productService.updateProduct(id,productRequest));
+                                                         @RequestBody ProductRequest productRequest,
+                                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws ProductNotFoundException, ProductVersionConflictException {
+        ProductResponse product = productService.updateProduct(id, productRequest, ProductETags.expectedVersion(ifMatch));
+        return ResponseEntity.status(HttpStatus.CREATED).eTag(ProductETags.etag(product)).body(product);
     }
     @DeleteMapping("/{id}")
     public ResponseEntity<ProductResponse> deleteProductById(@PathVariable String id) throws ProductNotFoundException {
@@ -52,4 +254,77 @@ public class ProductController {
     public ResponseEntity<List<ProductResponse>> deleteAllProducts() throws ProductNotFoundException {
         return ResponseEntity.status(HttpStatus.NO_CONTENT).body(productService.deleteAllProducts());
     }
+    /*
+    Deletes in batches and only returns the counts, for collections too big to return as a list.
+     */
+    @DeleteMapping("/all/batched")
+    public ResponseEntity<ProductDeleteSummary> deleteAllProductsInBatches() {
+        return ResponseEntity.ok(productService.deleteAllProductsInBatches(ids -> { }));
+    }
+    /*
+    Same as /all/batched, but the ids are written while each batch is deleted:
+    {"ids":[...],"deleted":n,"batches":n}. The counts come last because they are only known at the end.
+    A client that goes away stops the delete after the batch that could not be written.
+     */
+    @DeleteMapping(value = "/all/batched/ids", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<StreamingResponseBody> deleteAllProductsInBatchesWithIds(
+            @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = MediaType.APPLICATION_JSON_VALUE) List<MediaType> accept) {
+        MediaType mediaType = negotiate(accept);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = mapperFor(mediaType).getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("ids");
+                ProductDeleteSummary summary = productService.deleteAllProductsInBatches(ids -> {
+                    try {
+                        for (String id : ids) {
+                            generator.writeString(id);
+                        }
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+                generator.writeNumberField("deleted", summary.getDeleted());
+                generator.writeNumberField("batches", summary.getBatches());
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(mediaType).body(body);
+    }
+
+    private static boolean checkNotModified(ServletWebRequest webRequest, String etag, long lastModified) {
+        // on the 304 too, a cache must not answer a CBOR request with the JSON it holds
+        webRequest.getResponse().addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        return webRequest.checkNotModified(etag, lastModified);
+    }
+
+    /*
+    The streaming endpoints write with a generator of their own, so they pick the format themselves:
+    the accepted type with the highest quality that is CBOR or JSON wins (the first one on a tie), anything else
+    gets JSON. The single product GETs pick the same way to tag the representation they send.
+     */
+    private static MediaType negotiate(List<MediaType> accept) {
+        List<MediaType> preferred = accept.stream()
+                .sorted(Comparator.comparingDouble(MediaType::getQualityValue).reversed())
+                .toList();
+        for (MediaType mediaType : preferred) {
+            if (mediaType.getQualityValue() == 0) {
+                break;
+            }
+            if (MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(mediaType)) {
+                return MediaType.APPLICATION_CBOR;
+            }
+            if (mediaType.includes(MediaType.APPLICATION_JSON)) {
+                return MediaType.APPLICATION_JSON;
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    private ObjectMapper mapperFor(MediaType mediaType) {
+        return MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(mediaType)
+                ? productCborHttpMessageConverter.getObjectMapper()
+                : objectMapper;
+    }
 }
\ No newline at end of file
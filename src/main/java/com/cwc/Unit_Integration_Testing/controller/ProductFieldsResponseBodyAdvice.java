@@ -0,0 +1,37 @@
+package com.cwc.Unit_Integration_Testing.controller;
+
+import com.cwc.Unit_Integration_Testing.config.ProductFieldsJacksonModule;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.AbstractMappingJacksonResponseBodyAdvice;
+
+/*
+Serializes only the product fields of the fields= parameter, in JSON and CBOR responses of ProductController.
+The controller already parsed the parameter when it read the products, an invalid one never gets here.
+ */
+@RestControllerAdvice(assignableTypes = ProductController.class)
+public class ProductFieldsResponseBodyAdvice extends AbstractMappingJacksonResponseBodyAdvice {
+    static final String FIELDS_PARAMETER = "fields";
+
+    @Override
+    protected void beforeBodyWriteInternal(MappingJacksonValue bodyContainer, MediaType contentType,
+                                           MethodParameter returnType, ServerHttpRequest request,
+                                           ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest)) {
+            return;
+        }
+        ProductFields fields = ProductFields.parse(servletRequest.getServletRequest().getParameter(FIELDS_PARAMETER));
+        if (!fields.isAll()) {
+            bodyContainer.setFilters(new SimpleFilterProvider()
+                    .addFilter(ProductFieldsJacksonModule.FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(fields.names())));
+        }
+    }
+}
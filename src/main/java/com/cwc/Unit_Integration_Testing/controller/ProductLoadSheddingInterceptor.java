@@ -0,0 +1,205 @@
+package com.cwc.Unit_Integration_Testing.controller;
+
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.exception.ProductOverloadException;
+import com.cwc.Unit_Integration_Testing.util.AdaptiveConcurrencyLimit;
+import com.cwc.Unit_Integration_Testing.util.TokenBucket;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns requests to the product endpoints away before they take a Tomcat thread's worth of work and a Mongo
+ * connection, see {@link ProductProperties.RateLimit}. Checks the rate of the client, then the rate of all
+ * clients, each for all endpoints and for the endpoint of the request, and last takes a slot of the adaptive
+ * concurrency limit. A rejected request throws {@link ProductOverloadException}, before any of the later checks
+ * could take a token or a slot for it, and gets the tokens of the checks it passed back, so a request that was
+ * turned away does not count against a limit it was not over.
+ * <p>
+ * Streaming endpoints finish on an async dispatch, they hold their slot until then but their latency is not
+ * used to adapt the limit, it grows with the size of the body.
+ */
+@Component
+@Slf4j
+public class ProductLoadSheddingInterceptor implements AsyncHandlerInterceptor, MeterBinder {
+    private static final String STARTED_AT = ProductLoadSheddingInterceptor.class.getName() + ".startedAt";
+
+    private final boolean enabled;
+    private final String clientHeader;
+    private final Limits all;
+    private final Map<String, Limits> endpoints = new HashMap<>();
+    // null when off
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+    private final Duration retryAfter;
+    private final LongAdder shedByClientRate = new LongAdder();
+    private final LongAdder shedByGlobalRate = new LongAdder();
+    private final LongAdder shedByConcurrency = new LongAdder();
+
+    /** The buckets of one set of limits, null when that limit is off. */
+    private static final class Limits {
+        private final TokenBucket global;
+        private final Cache<String, TokenBucket> clients;
+        private final ProductProperties.RateLimit.Bucket client;
+
+        private Limits(ProductProperties.RateLimit.Bucket client, ProductProperties.RateLimit.Bucket global,
+                       long maximumClients) {
+            long now = System.nanoTime();
+            this.global = global.getRate() > 0 ? new TokenBucket(global.getRate(), global.getBurst(), now) : null;
+            this.client = client;
+            // an idle client's bucket is full again after nanosToFill, forgetting it then changes nothing
+            this.clients = client.getRate() > 0
+                    ? Caffeine.newBuilder()
+                            .maximumSize(maximumClients)
+                            .expireAfterAccess(Duration.ofNanos(
+                                    new TokenBucket(client.getRate(), client.getBurst(), now).nanosToFill()))
+                            .build()
+                    : null;
+        }
+    }
+
+    public ProductLoadSheddingInterceptor(ProductProperties productProperties) {
+        ProductProperties.RateLimit properties = productProperties.getRateLimit();
+        this.enabled = properties.isEnabled();
+        this.clientHeader = properties.getClientHeader();
+        this.all = new Limits(properties.getClient(), properties.getGlobal(), properties.getMaximumClients());
+        properties.getEndpoints().forEach((endpoint, limits) -> endpoints.put(endpoint,
+                new Limits(limits.getClient(), limits.getGlobal(), properties.getMaximumClients())));
+        ProductProperties.RateLimit.Concurrency concurrency = properties.getConcurrency();
+        this.concurrencyLimit = enabled && concurrency.isEnabled()
+                ? new AdaptiveConcurrencyLimit(concurrency.getInitialLimit(), concurrency.getMinLimit(),
+                        concurrency.getMaxLimit(), concurrency.getLatencyThreshold().toNanos(),
+                        concurrency.getBackoffRatio())
+                : null;
+        this.retryAfter = concurrency.getRetryAfter();
+        log.info("Product rate limiting enabled: {}", enabled);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("product.requests.shed", shedByClientRate, LongAdder::sum)
+                .description("Requests turned away before they were handled")
+                .tag("reason", "client-rate")
+                .register(registry);
+        FunctionCounter.builder("product.requests.shed", shedByGlobalRate, LongAdder::sum)
+                .description("Requests turned away before they were handled")
+                .tag("reason", "global-rate")
+                .register(registry);
+        FunctionCounter.builder("product.requests.shed", shedByConcurrency, LongAdder::sum)
+                .description("Requests turned away before they were handled")
+                .tag("reason", "concurrency")
+                .register(registry);
+        if (concurrencyLimit != null) {
+            Gauge.builder("product.requests.concurrency.limit", concurrencyLimit, AdaptiveConcurrencyLimit::getLimit)
+                    .description("Requests allowed in progress at the same time")
+                    .register(registry);
+            Gauge.builder("product.requests.in.flight", concurrencyLimit, AdaptiveConcurrencyLimit::getInFlight)
+                    .description("Requests in progress")
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws ProductOverloadException {
+        // an async dispatch continues a request that was let in already
+        if (!enabled || !(handler instanceof HandlerMethod handlerMethod)
+                || request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        long now = System.nanoTime();
+        String client = clientOf(request);
+        Limits endpoint = endpoints.get(handlerMethod.getMethod().getName());
+        TokenBucket[] taken = new TokenBucket[4];
+        try {
+            taken[0] = acquireClient(all, client, now);
+            if (endpoint != null) {
+                taken[1] = acquireClient(endpoint, client, now);
+            }
+            taken[2] = acquireGlobal(all, now);
+            if (endpoint != null) {
+                taken[3] = acquireGlobal(endpoint, now);
+            }
+            if (concurrencyLimit != null && !concurrencyLimit.tryAcquire()) {
+                shedByConcurrency.increment();
+                throw new ProductOverloadException(HttpStatus.SERVICE_UNAVAILABLE, retryAfter,
+                        "Too many requests in progress, retry later");
+            }
+        } catch (ProductOverloadException e) {
+            for (TokenBucket bucket : taken) {
+                if (bucket != null) {
+                    bucket.refund();
+                }
+            }
+            throw e;
+        }
+        if (concurrencyLimit != null) {
+            request.setAttribute(STARTED_AT, now);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        if (!(request.getAttribute(STARTED_AT) instanceof Long startedAt)) {
+            return;
+        }
+        request.removeAttribute(STARTED_AT);
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            concurrencyLimit.release();
+        } else {
+            long now = System.nanoTime();
+            concurrencyLimit.release(now - startedAt, now);
+        }
+    }
+
+    private String clientOf(HttpServletRequest request) {
+        String client = clientHeader == null ? null : request.getHeader(clientHeader);
+        return client == null || client.isEmpty() ? request.getRemoteAddr() : client;
+    }
+
+    /** The bucket a token was taken from, null when there is no limit. */
+    private TokenBucket acquireClient(Limits limits, String client, long now) throws ProductOverloadException {
+        if (limits.clients == null) {
+            return null;
+        }
+        TokenBucket bucket = limits.clients.get(client,
+                key -> new TokenBucket(limits.client.getRate(), limits.client.getBurst(), now));
+        long waitNanos = bucket.tryAcquire(now);
+        if (waitNanos > 0) {
+            shedByClientRate.increment();
+            throw new ProductOverloadException(HttpStatus.TOO_MANY_REQUESTS, Duration.ofNanos(waitNanos),
+                    "Rate limit exceeded, retry later");
+        }
+        return bucket;
+    }
+
+    private TokenBucket acquireGlobal(Limits limits, long now) throws ProductOverloadException {
+        if (limits.global == null) {
+            return null;
+        }
+        long waitNanos = limits.global.tryAcquire(now);
+        if (waitNanos > 0) {
+            shedByGlobalRate.increment();
+            throw new ProductOverloadException(HttpStatus.TOO_MANY_REQUESTS, Duration.ofNanos(waitNanos),
+                    "Rate limit exceeded, retry later");
+        }
+        return limits.global;
+    }
+}
@@ -0,0 +1,80 @@
+package com.cwc.Unit_Integration_Testing.controller;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
+import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.service.ReactiveProductService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/*
+Same contract as ProductController, served by the reactive stack (run with the reactive profile).
+ */
+@RestController
+@RequestMapping("/api/v1/product")
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductController {
+    private final ReactiveProductService reactiveProductService;
+
+    @GetMapping
+    public Flux<ProductResponse> findAllProducts() {
+        return reactiveProductService.findAllProducts();
+    }
+
+    @GetMapping("/page")
+    public Mono<ProductPage> findProductPage(@RequestParam(required = false) String cursor,
+                                             @RequestParam(required = false) Integer size) {
+        return reactiveProductService.findProductPage(cursor, size);
+    }
+
+    @GetMapping(value = "/stream", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<ProductResponse> streamAllProducts() {
+        return reactiveProductService.streamAllProducts();
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<ProductResponse>> findProductById(@PathVariable String id) {
+        return reactiveProductService.findProductById(id)
+                .map(product -> ResponseEntity.status(HttpStatus.FOUND).body(product));
+    }
+
+    @GetMapping("/name/{name}")
+    public Mono<ResponseEntity<ProductResponse>> findProductByName(@PathVariable String name) {
+        return reactiveProductService.findProductByName(name)
+                .map(product -> ResponseEntity.status(HttpStatus.FOUND).body(product));
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<ProductResponse>> saveProduct(@RequestBody ProductRequest productRequest) {
+        return reactiveProductService.saveProduct(productRequest)
+                .map(product -> ResponseEntity.status(HttpStatus.CREATED).body(product));
+    }
+
+    @PutMapping("/update/{id}")
+    public Mono<ResponseEntity<ProductResponse>> updateProduct(@PathVariable String id,
+                                                               @RequestBody ProductRequest productRequest) {
+        return reactiveProductService.updateProduct(id, productRequest)
+                .map(product -> ResponseEntity.status(HttpStatus.CREATED).body(product));
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<ProductResponse>> deleteProductById(@PathVariable String id) {
+        return reactiveProductService.deleteProductById(id)
+                .map(product -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(product));
+    }
+
+    @DeleteMapping("/all")
+    public Mono<ResponseEntity<List<ProductResponse>>> deleteAllProducts() {
+        return reactiveProductService.deleteAllProducts()
+                .map(products -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(products));
+    }
+}
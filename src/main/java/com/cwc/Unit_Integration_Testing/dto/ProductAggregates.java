@@ -0,0 +1,29 @@
+package com.cwc.Unit_Integration_Testing.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+public class ProductAggregates {
+    private long count;
+    private Double minPrice;
+    private Double maxPrice;
+    private Double meanPrice;
+    /** p50, p90, p95 and p99 of the price, estimated from the histogram. */
+    private Map<String, Double> pricePercentiles;
+    private List<PriceBucket> priceHistogram;
+
+    @Data
+    @Builder
+    public static class PriceBucket {
+        /** Null for the first bucket, which also counts prices below its upper bound. */
+        private Double from;
+        /** Null for the last bucket. */
+        private Double to;
+        private long count;
+    }
+}
@@ -0,0 +1,18 @@
+package com.cwc.Unit_Integration_Testing.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ProductBatchResult {
+    /** Position of the product in the request. */
+    private int index;
+    private String id;
+    private Status status;
+    private String error;
+
+    public enum Status {
+        CREATED, UPDATED, FAILED
+    }
+}
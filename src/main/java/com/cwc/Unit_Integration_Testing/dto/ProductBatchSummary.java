@@ -0,0 +1,12 @@
+package com.cwc.Unit_Integration_Testing.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ProductBatchSummary {
+    private int created;
+    private int updated;
+    private int failed;
+}
@@ -0,0 +1,11 @@
+package com.cwc.Unit_Integration_Testing.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ProductDeleteSummary {
+    private long deleted;
+    private int batches;
+}
@@ -0,0 +1,47 @@
+package com.cwc.Unit_Integration_Testing.dto;
+
+import com.cwc.Unit_Integration_Testing.exception.ProductBadRequestException;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The product fields a client asked for with {@code fields=id,name,price}. Reads push them down to Mongo as a
+ * projection, and responses only serialize them.
+ */
+public record ProductFields(Set<String> names) {
+    private static final List<String> FIELDS = List.of("id", "name", "description", "price");
+
+    public static final ProductFields ALL = new ProductFields(Collections.unmodifiableSet(new LinkedHashSet<>(FIELDS)));
+    /** Only the id, and what repositories always read along with it: price, version and lastModified. */
+    public static final ProductFields ID = new ProductFields(Set.of("id"));
+
+    /** All fields when {@code fields} is null or blank, fails on a field products do not have. */
+    public static ProductFields parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!FIELDS.contains(name)) {
+                throw new ProductBadRequestException("Unknown product field " + name + ", fields can be " + String.join(", ", FIELDS));
+            }
+            names.add(name);
+        }
+        return names.isEmpty() || names.size() == FIELDS.size() ? ALL : new ProductFields(Collections.unmodifiableSet(names));
+    }
+
+    public boolean isAll() {
+        return names.size() == FIELDS.size();
+    }
+
+    public boolean includes(String field) {
+        return names.contains(field);
+    }
+}
@@ -0,0 +1,15 @@
+package com.cwc.Unit_Integration_Testing.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class ProductLookupResponse {
+    private int found;
+    private int notFound;
+    /** One result per requested id, in the order of the request. */
+    private List<ProductLookupResult> results;
+}
@@ -0,0 +1,17 @@
+package com.cwc.Unit_Integration_Testing.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class ProductLookupResult {
+    private String id;
+    private Status status;
+    /** Null when the product was not found. */
+    private ProductResponse product;
+
+    public enum Status {
+        FOUND, NOT_FOUND
+    }
+}
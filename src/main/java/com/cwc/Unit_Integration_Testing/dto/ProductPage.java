@@ -0,0 +1,14 @@
+package com.cwc.Unit_Integration_Testing.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class ProductPage {
+    private List<ProductResponse> items;
+    /** Id of the last item in this page, pass it back as the cursor to get the next page. Null on the last page. */
+    private String nextCursor;
+}
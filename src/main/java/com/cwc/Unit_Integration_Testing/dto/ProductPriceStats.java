@@ -0,0 +1,20 @@
+package com.cwc.Unit_Integration_Testing.dto;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Price totals of all products, as kept by the price index or computed by Mongo. {@code histogram} has one
+ * count per bucket between the {@code product.price-index.histogram-bounds}, one more than there are bounds:
+ * bucket {@code i} holds prices below bound {@code i} that are not below bound {@code i - 1}, the last one holds
+ * the prices from the last bound up.
+ * Min and max are null when there are no products.
+ */
+public record ProductPriceStats(long count, Double min, Double max, double sum, List<Long> histogram) {
+    /** Index of the histogram bucket of the price. */
+    public static int bucketOf(double[] histogramBounds, double price) {
+        int position = Arrays.binarySearch(histogramBounds, price);
+        // a price equal to a bound starts the bucket above it
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+}
@@ -1,6 +1,7 @@
 package com.cwc.Unit_Integration_Testing.dto;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Positive;
 import lombok.Builder;
 import lombok.Data;
@@ -9,6 +10,11 @@ import org.springframework.data.annotation.Id;
 @Data
 @Builder
 public class ProductRequest {
+    // only read by the batch endpoint, the product with this id is replaced or created with it. An ObjectId like
+    // the generated ones: Mongo compares _id values of different BSON types by type only, so a string id among
+    // ObjectIds would break every keyset scan over _id
+    @Pattern(regexp = "[0-9a-fA-F]{24}", message = "Id must be an ObjectId of 24 hex digits")
+    private String id;
     @NotBlank(message = "Name is mandatory")
     private String name;
     private String description;
@@ -1,8 +1,11 @@
 package com.cwc.Unit_Integration_Testing.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Builder;
 import lombok.Data;
 
+import java.time.Instant;
+
 @Data
 @Builder
 public class ProductResponse {
@@ -10,4 +13,9 @@ public class ProductResponse {
     private String name;
     private String description;
     private double price;
+    // sent as the ETag and Last-Modified headers, not in the body
+    @JsonIgnore
+    private Long version;
+    @JsonIgnore
+    private Instant lastModified;
 }
@@ -0,0 +1,16 @@
+package com.cwc.Unit_Integration_Testing.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class ProductSearchPage {
+    /** Best matches first. */
+    private List<ProductResponse> items;
+    private int page;
+    /** Page to ask for next, null on the last page. */
+    private Integer nextPage;
+}
@@ -5,17 +5,34 @@ import jakarta.validation.constraints.Positive;
 import lombok.Builder;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
+
 @Data
 @Builder
 @Document(collection = "products")
+// price range queries, the id makes the order stable for keyset paging
+@CompoundIndex(name = "price_id", def = "{'price': 1, '_id': 1}")
 public class Product {
     @Id
     private String id;
     @NotBlank(message = "Name is mandatory")
+    @Indexed
+    @TextIndexed(weight = 3)
     private String name;
+    @TextIndexed
     private String description;
     @Positive(message = "Price must be positive")
     private double price;
+    // bumped by every write, used as the ETag of the product
+    @Version
+    private Long version;
+    @LastModifiedDate
+    private Instant lastModified;
 }
@@ -0,0 +1,11 @@
+package com.cwc.Unit_Integration_Testing.exception;
+
+/**
+ * A client sent a parameter that can not be used, such as an unknown field, a price range with min above max or a
+ * cursor it did not get from us. Answered with 400, other IllegalArgumentExceptions are bugs and stay 500s.
+ */
+public class ProductBadRequestException extends IllegalArgumentException {
+    public ProductBadRequestException(String message) {
+        super(message);
+    }
+}
@@ -1,29 +1,97 @@
 package com.cwc.Unit_Integration_Testing.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
+/*
+404s are hot on crawler and stale-link traffic, so nothing is computed per error that can be computed once:
+the status strings are constants and the time stamp, which has no seconds, is formatted once a minute.
+ */
 @RestControllerAdvice
 public class ProductGlobalExceptionHandler {
+    private static final String NOT_FOUND = HttpStatus.NOT_FOUND.toString();
+    private static final String BAD_REQUEST = HttpStatus.BAD_REQUEST.toString();
+    private static final String PRECONDITION_FAILED = HttpStatus.PRECONDITION_FAILED.toString();
+
+    /** The formatted time stamp of one minute since the epoch. */
+    private record TimeStamp(long minute, String formatted) {
+    }
+
     private DateTimeFormatter dateTimeFormatter;
+    private volatile TimeStamp timeStamp = new TimeStamp(Long.MIN_VALUE, null);
     public ProductGlobalExceptionHandler()
     {
         dateTimeFormatter = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm a");
     }
+
+    private String timeStamp()
+    {
+        long now = System.currentTimeMillis();
+        long minute = Math.floorDiv(now, 60_000L);
+        TimeStamp current = timeStamp;
+        if(current.minute() != minute)
+        {
+            // racing threads format the same minute
+            current = new TimeStamp(minute, LocalDateTime.ofInstant(Instant.ofEpochMilli(now), ZoneId.systemDefault())
+                    .format(dateTimeFormatter));
+            timeStamp = current;
+        }
+        return current.formatted();
+    }
     @ExceptionHandler(ProductNotFoundException.class)
     public ResponseEntity<ErrorMessage> handleProductNotFoundException(ProductNotFoundException e)
     {
         ErrorMessage errorMessage = ErrorMessage.builder()
-                .timeStamp(LocalDateTime.now().format(dateTimeFormatter).toString())
+                .timeStamp(timeStamp())
                 .error("Product Not Found")
                 .message(e.getMessage())
-                .status(HttpStatus.NOT_FOUND.toString())
+                .status(NOT_FOUND)
                 .build();
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorMessage);
     }
+    @ExceptionHandler(ProductBadRequestException.class)
+    public ResponseEntity<ErrorMessage> handleProductBadRequestException(ProductBadRequestException e)
+    {
+        ErrorMessage errorMessage = ErrorMessage.builder()
+                .timeStamp(timeStamp())
+                .error("Bad Request")
+                .message(e.getMessage())
+                .status(BAD_REQUEST)
+                .build();
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorMessage);
+    }
+    @ExceptionHandler(ProductVersionConflictException.class)
+    public ResponseEntity<ErrorMessage> handleProductVersionConflictException(ProductVersionConflictException e)
+    {
+        ErrorMessage errorMessage = ErrorMessage.builder()
+                .timeStamp(timeStamp())
+                .error("Product Version Conflict")
+                .message(e.getMessage())
+                .status(PRECONDITION_FAILED)
+                .build();
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(errorMessage);
+    }
+    @ExceptionHandler(ProductOverloadException.class)
+    public ResponseEntity<ErrorMessage> handleProductOverloadException(ProductOverloadException e)
+    {
+        ErrorMessage errorMessage = ErrorMessage.builder()
+                .timeStamp(timeStamp())
+                .error(e.getStatus().getReasonPhrase())
+                .message(e.getMessage())
+                .status(e.getStatus().toString())
+                .build();
+        // whole seconds, rounded up so clients do not come back too early
+        long retryAfterSeconds = (e.getRetryAfter().toMillis() + 999) / 1000;
+        return ResponseEntity.status(e.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(retryAfterSeconds, 1)))
+                .body(errorMessage);
+    }
 }
@@ -1,7 +1,40 @@
 package com.cwc.Unit_Integration_Testing.exception;
 
+/**
+ * Thrown for every lookup of a product that does not exist, which is hot on crawler and stale-link traffic.
+ * It is a plain outcome rather than a bug, so it carries no stack trace, and the message of {@link #forId} and
+ * {@link #forName} is only built when someone asks for it.
+ */
 public class ProductNotFoundException extends Exception{
+    private final String field;
+    private final String value;
+    private String message;
+
     public ProductNotFoundException(String message) {
-        super(message);
+        this(null, null);
+        this.message = message;
+    }
+
+    private ProductNotFoundException(String field, String value) {
+        super(null, null, false, false);
+        this.field = field;
+        this.value = value;
+    }
+
+    public static ProductNotFoundException forId(String id) {
+        return new ProductNotFoundException("id", id);
+    }
+
+    public static ProductNotFoundException forName(String name) {
+        return new ProductNotFoundException("name", name);
+    }
+
+    @Override
+    public String getMessage() {
+        if (message == null) {
+            // racing threads build the same string
+            message = "Product with " + field + " " + value + " not found";
+        }
+        return message;
     }
 }
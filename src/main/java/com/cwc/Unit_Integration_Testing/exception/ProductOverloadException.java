@@ -0,0 +1,22 @@
+package com.cwc.Unit_Integration_Testing.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+
+/**
+ * A request was turned away before it was handled, with 429 when a rate limit was exceeded and 503 when too many
+ * requests were in progress. Thrown for every shed request under overload, so it has no stack trace.
+ */
+@Getter
+public class ProductOverloadException extends Exception {
+    private final HttpStatus status;
+    private final Duration retryAfter;
+
+    public ProductOverloadException(HttpStatus status, Duration retryAfter, String message) {
+        super(message, null, false, false);
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,10 @@
+package com.cwc.Unit_Integration_Testing.exception;
+
+/**
+ * The product was changed since the client read it, the version it sent with If-Match is not the current one.
+ */
+public class ProductVersionConflictException extends Exception{
+    public ProductVersionConflictException(String message) {
+        super(message);
+    }
+}
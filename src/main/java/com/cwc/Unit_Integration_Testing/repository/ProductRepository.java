@@ -1,10 +1,15 @@
 package com.cwc.Unit_Integration_Testing.repository;
 
 import com.cwc.Unit_Integration_Testing.entity.Product;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.util.List;
 import java.util.Optional;
 
-public interface ProductRepository extends MongoRepository<Product, String> {
+public interface ProductRepository extends MongoRepository<Product, String>, ProductRepositoryCustom {
     Optional<Product> findByName(String name);
+
+    // keyset pagination, the pages after the first one are read with findPage, which keeps the id order across types
+    List<Product> findAllByOrderByIdAsc(Limit limit);
 }
@@ -0,0 +1,113 @@
+package com.cwc.Unit_Integration_Testing.repository;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductPriceStats;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.RawBsonDocument;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface ProductRepositoryCustom {
+    /**
+     * Overwrites name, description and price of the stored product that has the id of {@code product} in one
+     * round trip, and bumps its version. When {@code expectedVersion} is not null the product is only written
+     * if it still has that version. Returns the product as written, or empty when there is no such product or
+     * it has another version (nothing is written then).
+     * <p>
+     * This is a findAndModify with an update, not a findAndReplace: {@code $set} of the three fields,
+     * {@code $inc} of the version and {@code $currentDate} of lastModified, without upsert. Fields the request
+     * does not carry are left as stored.
+     */
+    Optional<Product> findAndUpdateById(Product product, Long expectedVersion);
+
+    /**
+     * Deletes the product in one round trip and returns it, or empty when there is no such product.
+     */
+    Optional<Product> findAndDeleteById(String id);
+
+    /**
+     * Writes all products in one unordered bulk write. Products without an id are inserted and get an
+     * id assigned before the write, products with an id are upserted with the same update as
+     * {@link #findAndUpdateById}. Failed writes do not stop the others, they are reported through a
+     * {@link org.springframework.data.mongodb.BulkOperationException} indexed like {@code products}.
+     */
+    BulkWriteResult bulkUpsert(List<Product> products);
+
+    /**
+     * Inserts {@code inserts}, which already have ids, and updates name, description and price of the stored
+     * {@code updates} like {@link #findAndUpdateById}, in one unordered bulk write. An update of a product that
+     * does not exist writes nothing, so a product deleted in the meantime is not brought back. Failed writes
+     * are reported through a {@link org.springframework.data.mongodb.BulkOperationException} indexed like
+     * {@code inserts} followed by {@code updates}.
+     */
+    BulkWriteResult bulkInsertAndUpdate(List<Product> inserts, List<Product> updates);
+
+    /**
+     * All product documents as read off the wire, without mapping them to {@link Product}.
+     * Backed by a Mongo cursor, the caller has to close the stream.
+     */
+    Stream<RawBsonDocument> streamAllDocuments();
+
+    /**
+     * Up to {@code limit} product ids in ascending order, starting after {@code afterId} or from the first
+     * product when it is null. Only the id is read from Mongo. A string id is followed by the remaining string ids
+     * and then by the ObjectIds, as in a scan of the whole collection.
+     */
+    List<String> findIds(String afterId, int limit);
+
+    /**
+     * Deletes the products with the given ids in one round trip and returns how many were deleted.
+     */
+    long deleteByIds(Collection<String> ids);
+
+    /**
+     * Full-text search over name and description through the text index, best matches first.
+     * Words are stemmed, a phrase in double quotes must match as a whole and a word prefixed with
+     * a minus excludes products that contain it.
+     */
+    List<Product> searchText(String text, int skip, int limit);
+
+    /**
+     * Products whose name starts with {@code prefix} (case-sensitive), in name order.
+     * The prefix is matched literally and bounds the scan of the name index.
+     */
+    List<Product> findByNamePrefix(String prefix, int limit);
+
+    /**
+     * Up to {@code limit} products with {@code min <= price <= max}, ordered by price and then id, starting
+     * after the product with {@code afterPrice} and {@code afterId} when they are not null.
+     */
+    List<Product> findByPriceRange(double min, double max, Double afterPrice, String afterId,
+                                   boolean descending, int limit);
+
+    /**
+     * Count, min, max, sum and histogram of the prices of all products, computed by Mongo in one
+     * aggregation. Scans the whole collection.
+     */
+    ProductPriceStats aggregatePrices(double[] histogramBounds);
+
+    /*
+    The reads below only read the requested fields off the wire, the others stay null. Id, price, version and
+    lastModified are always read, the service needs them for cursors, range checks and ETags.
+     */
+
+    /** All products, like {@code findAll()}. */
+    List<Product> findAll(ProductFields fields);
+
+    /** Up to {@code limit} products in id order after {@code afterId}, from the first one when it is null. */
+    List<Product> findPage(String afterId, int limit, ProductFields fields);
+
+    /** The products with the given ids that exist, in one {@code $in} query. */
+    List<Product> findAllById(Collection<String> ids, ProductFields fields);
+
+    List<Product> searchText(String text, int skip, int limit, ProductFields fields);
+
+    List<Product> findByNamePrefix(String prefix, int limit, ProductFields fields);
+
+    List<Product> findByPriceRange(double min, double max, Double afterPrice, String afterId,
+                                   boolean descending, int limit, ProductFields fields);
+}
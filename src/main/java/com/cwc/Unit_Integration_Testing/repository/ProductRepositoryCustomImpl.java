@@ -0,0 +1,268 @@
+package com.cwc.Unit_Integration_Testing.repository;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductPriceStats;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCursor;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+@RequiredArgsConstructor
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+    private static final Pattern REGEX_SPECIAL_CHARACTERS = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+    private static final ObjectId MIN_OBJECT_ID = new ObjectId(new byte[12]);
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public Optional<Product> findAndUpdateById(Product product, Long expectedVersion) {
+        Query query = byId(product.getId());
+        if (expectedVersion != null) {
+            query.addCriteria(Criteria.where("version").is(expectedVersion));
+        }
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, updateOf(product),
+                FindAndModifyOptions.options().returnNew(true), Product.class));
+    }
+
+    @Override
+    public Optional<Product> findAndDeleteById(String id) {
+        return Optional.ofNullable(mongoTemplate.findAndRemove(byId(id), Product.class));
+    }
+
+    @Override
+    public BulkWriteResult bulkUpsert(List<Product> products) {
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (Product product : products) {
+            if (product.getId() == null) {
+                product.setId(new ObjectId().toHexString());
+                product.setVersion(0L);
+                product.setLastModified(Instant.now());
+                bulkOperations.insert(product);
+            } else {
+                bulkOperations.upsert(byId(product.getId()), updateOf(product));
+            }
+        }
+        return bulkOperations.execute();
+    }
+
+    @Override
+    public BulkWriteResult bulkInsertAndUpdate(List<Product> inserts, List<Product> updates) {
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (Product product : inserts) {
+            // a copy, the caller may still hand out the product it buffered
+            bulkOperations.insert(Product.builder()
+                    .id(product.getId())
+                    .name(product.getName())
+                    .description(product.getDescription())
+                    .price(product.getPrice())
+                    .version(0L)
+                    .lastModified(Instant.now())
+                    .build());
+        }
+        for (Product product : updates) {
+            bulkOperations.updateOne(byId(product.getId()), updateOf(product));
+        }
+        return bulkOperations.execute();
+    }
+
+    @Override
+    public Stream<RawBsonDocument> streamAllDocuments() {
+        MongoCursor<RawBsonDocument> cursor = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Product.class))
+                .withDocumentClass(RawBsonDocument.class)
+                .find()
+                .cursor();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                .onClose(cursor::close);
+    }
+
+    @Override
+    public List<String> findIds(String afterId, int limit) {
+        Query query = afterId(afterId)
+                .with(Sort.by("id"))
+                .limit(limit);
+        query.fields().include("id");
+        return mongoTemplate.find(query, Product.class).stream()
+                .map(Product::getId)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long deleteByIds(Collection<String> ids) {
+        return mongoTemplate.remove(Query.query(Criteria.where("id").in(ids)), Product.class).getDeletedCount();
+    }
+
+    @Override
+    public List<Product> searchText(String text, int skip, int limit) {
+        return searchText(text, skip, limit, ProductFields.ALL);
+    }
+
+    @Override
+    public List<Product> searchText(String text, int skip, int limit, ProductFields fields) {
+        Query query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(text))
+                .sortByScore()
+                .skip(skip)
+                .limit(limit);
+        return mongoTemplate.find(project(query, fields), Product.class);
+    }
+
+    @Override
+    public List<Product> findByNamePrefix(String prefix, int limit) {
+        return findByNamePrefix(prefix, limit, ProductFields.ALL);
+    }
+
+    @Override
+    public List<Product> findByNamePrefix(String prefix, int limit, ProductFields fields) {
+        // an anchored regex without quoting (\Q...\E) is what lets Mongo turn it into index bounds
+        String escapedPrefix = REGEX_SPECIAL_CHARACTERS.matcher(prefix).replaceAll("\\\\$0");
+        Query query = Query.query(Criteria.where("name").regex("^" + escapedPrefix))
+                .with(Sort.by("name"))
+                .limit(limit);
+        return mongoTemplate.find(project(query, fields), Product.class);
+    }
+
+    @Override
+    public List<Product> findByPriceRange(double min, double max, Double afterPrice, String afterId,
+                                          boolean descending, int limit) {
+        return findByPriceRange(min, max, afterPrice, afterId, descending, limit, ProductFields.ALL);
+    }
+
+    @Override
+    public List<Product> findByPriceRange(double min, double max, Double afterPrice, String afterId,
+                                          boolean descending, int limit, ProductFields fields) {
+        Criteria criteria = Criteria.where("price").gte(min).lte(max);
+        if (afterPrice != null) {
+            Criteria afterCursor = descending
+                    ? new Criteria().orOperator(Criteria.where("price").lt(afterPrice),
+                            Criteria.where("price").is(afterPrice).and("id").lt(afterId))
+                    : new Criteria().orOperator(Criteria.where("price").gt(afterPrice),
+                            Criteria.where("price").is(afterPrice).and("id").gt(afterId));
+            criteria = new Criteria().andOperator(criteria, afterCursor);
+        }
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Query query = Query.query(criteria)
+                .with(Sort.by(direction, "price", "id"))
+                .limit(limit);
+        return mongoTemplate.find(project(query, fields), Product.class);
+    }
+
+    @Override
+    public List<Product> findAll(ProductFields fields) {
+        return mongoTemplate.find(project(new Query(), fields), Product.class);
+    }
+
+    @Override
+    public List<Product> findPage(String afterId, int limit, ProductFields fields) {
+        Query query = afterId(afterId)
+                .with(Sort.by("id"))
+                .limit(limit);
+        return mongoTemplate.find(project(query, fields), Product.class);
+    }
+
+    @Override
+    public List<Product> findAllById(Collection<String> ids, ProductFields fields) {
+        return mongoTemplate.find(project(Query.query(Criteria.where("id").in(ids)), fields), Product.class);
+    }
+
+    @Override
+    public ProductPriceStats aggregatePrices(double[] histogramBounds) {
+        // -Infinity opens the first bucket below the first bound, prices from the last bound up land in the default
+        Object[] boundaries = new Object[histogramBounds.length + 1];
+        boundaries[0] = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < histogramBounds.length; i++) {
+            boundaries[i + 1] = histogramBounds[i];
+        }
+        Aggregation aggregation = Aggregation.newAggregation(Aggregation.facet(
+                        Aggregation.group().count().as("count").min("price").as("min").max("price").as("max")
+                                .sum("price").as("sum"))
+                .as("totals")
+                .and(Aggregation.bucket("price").withBoundaries(boundaries)
+                        .withDefaultBucket("above").andOutputCount().as("count"))
+                .as("histogram"));
+        Document result = mongoTemplate.aggregate(aggregation, Product.class, Document.class).getUniqueMappedResult();
+        List<Document> totals = result.getList("totals", Document.class);
+        long[] histogram = new long[histogramBounds.length + 1];
+        for (Document bucket : result.getList("histogram", Document.class)) {
+            // keyed by the lower boundary, or by the name of the default bucket
+            int index = bucket.get("_id") instanceof Number lower
+                    ? ProductPriceStats.bucketOf(histogramBounds, lower.doubleValue())
+                    : histogramBounds.length;
+            histogram[index] = ((Number) bucket.get("count")).longValue();
+        }
+        if (totals.isEmpty()) {
+            return new ProductPriceStats(0, null, null, 0, Arrays.stream(histogram).boxed().toList());
+        }
+        Document total = totals.get(0);
+        return new ProductPriceStats(((Number) total.get("count")).longValue(),
+                ((Number) total.get("min")).doubleValue(),
+                ((Number) total.get("max")).doubleValue(),
+                ((Number) total.get("sum")).doubleValue(),
+                Arrays.stream(histogram).boxed().toList());
+    }
+
+    /** Adds the projection of {@code fields}, none when all fields are asked for. */
+    private static Query project(Query query, ProductFields fields) {
+        if (!fields.isAll()) {
+            query.fields().include(fields.names().toArray(String[]::new)).include("price", "version", "lastModified");
+        }
+        return query;
+    }
+
+    /**
+     * Writes the fields a client can change and bumps the version, a replace would drop the version.
+     * Also used by {@link ReactiveProductRepositoryCustomImpl}.
+     */
+    static Update updateOf(Product product) {
+        return new Update()
+                .set("name", product.getName())
+                .set("description", product.getDescription())
+                .set("price", product.getPrice())
+                .inc("version", 1)
+                .currentDate("lastModified");
+    }
+
+    /**
+     * The products after {@code afterId} in id order, all when it is null. Mongo's $gt only matches values of the
+     * same BSON type and sorts strings before ObjectIds, so after a string id (stored before batch ids had to be
+     * ObjectIds) the ObjectIds are asked for as well, from the smallest one so the _id index bounds the scan.
+     * An ObjectId is the last type an id can have. Also used by {@link ReactiveProductRepositoryCustomImpl}.
+     */
+    static Query afterId(String afterId) {
+        if (afterId == null) {
+            return new Query();
+        }
+        if (ObjectId.isValid(afterId)) {
+            return Query.query(Criteria.where("id").gt(afterId));
+        }
+        return Query.query(new Criteria().orOperator(Criteria.where("id").gt(afterId),
+                Criteria.where("id").gte(MIN_OBJECT_ID)));
+    }
+
+    private static Query byId(String id) {
+        return Query.query(Criteria.where("id").is(id));
+    }
+}
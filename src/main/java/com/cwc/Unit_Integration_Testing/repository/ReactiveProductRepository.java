@@ -0,0 +1,14 @@
+package com.cwc.Unit_Integration_Testing.repository;
+
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveProductRepository extends ReactiveMongoRepository<Product, String>, ReactiveProductRepositoryCustom {
+    Mono<Product> findByName(String name);
+
+    // keyset pagination, the pages after the first one are read with findPage, which keeps the id order across types
+    Flux<Product> findAllByOrderByIdAsc(Limit limit);
+}
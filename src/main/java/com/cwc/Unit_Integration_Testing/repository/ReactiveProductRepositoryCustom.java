@@ -0,0 +1,23 @@
+package com.cwc.Unit_Integration_Testing.repository;
+
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveProductRepositoryCustom {
+    /**
+     * Same as {@link ProductRepositoryCustom#findAndUpdateById(Product, Long)} without an expected version,
+     * completes empty when there is no such product.
+     */
+    Mono<Product> findAndUpdateById(Product product);
+
+    /**
+     * Same as {@link ProductRepositoryCustom#findAndDeleteById(String)}, completes empty when there is no such product.
+     */
+    Mono<Product> findAndDeleteById(String id);
+
+    /**
+     * Same as {@link ProductRepositoryCustom#findPage} with all fields.
+     */
+    Flux<Product> findPage(String afterId, int limit);
+}
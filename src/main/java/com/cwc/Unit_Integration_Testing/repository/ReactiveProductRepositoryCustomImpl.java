@@ -0,0 +1,37 @@
+package com.cwc.Unit_Integration_Testing.repository;
+
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RequiredArgsConstructor
+public class ReactiveProductRepositoryCustomImpl implements ReactiveProductRepositoryCustom {
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Override
+    public Mono<Product> findAndUpdateById(Product product) {
+        return reactiveMongoTemplate.findAndModify(byId(product.getId()), ProductRepositoryCustomImpl.updateOf(product),
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+    }
+
+    @Override
+    public Mono<Product> findAndDeleteById(String id) {
+        return reactiveMongoTemplate.findAndRemove(byId(id), Product.class);
+    }
+
+    @Override
+    public Flux<Product> findPage(String afterId, int limit) {
+        return reactiveMongoTemplate.find(ProductRepositoryCustomImpl.afterId(afterId).with(Sort.by("id")).limit(limit),
+                Product.class);
+    }
+
+    private static Query byId(String id) {
+        return Query.query(Criteria.where("id").is(id));
+    }
+}
@@ -0,0 +1,191 @@
+package com.cwc.Unit_Integration_Testing.service;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductCache;
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductBatchResult;
+import com.cwc.Unit_Integration_Testing.dto.ProductBatchSummary;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
+import com.cwc.Unit_Integration_Testing.util.AppUtil;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductBatchService {
+    private final ProductRepository productRepository;
+    private final ProductProperties productProperties;
+    private final ProductCache productCache;
+    private final ProductPriceIndex productPriceIndex;
+    private final ProductWriteBehindBuffer productWriteBehindBuffer;
+    private final Validator validator;
+
+    /**
+     * Creates or replaces products in chunks of {@code product.batch.chunk-size}. The requests are
+     * consumed as they are read, and the results are passed to {@code results} in request order as soon as
+     * their chunk is written, so neither a streamed body nor its results are ever held in memory as a whole.
+     * Requests without an id are created, requests with an id replace that product (or create it), a write of
+     * it still pending in the write-behind buffer is dropped first. Ids that are not ObjectIds fail validation.
+     */
+    public ProductBatchSummary saveProducts(Iterator<ProductRequest> productRequests,
+                                            Consumer<List<ProductBatchResult>> results) {
+        int chunkSize = productProperties.getBatch().getChunkSize();
+        Map<ProductBatchResult.Status, Integer> counts = new EnumMap<>(ProductBatchResult.Status.class);
+        List<ProductBatchResult> failures = new ArrayList<>();
+        List<Product> chunk = new ArrayList<>(chunkSize);
+        List<Integer> chunkIndexes = new ArrayList<>(chunkSize);
+        int index = 0;
+        while (true) {
+            ProductRequest productRequest;
+            try {
+                if (!productRequests.hasNext()) {
+                    break;
+                }
+                productRequest = productRequests.next();
+            } catch (RuntimeException e) {
+                // the rest of the body can not be read reliably after a parse error
+                log.warn("Stopped reading product batch at item {}: {}", index, e.getMessage());
+                failures.add(failed(index, null, "Could not read product: " + e.getMessage()));
+                break;
+            }
+            Set<ConstraintViolation<ProductRequest>> violations = validator.validate(productRequest);
+            if (!violations.isEmpty()) {
+                failures.add(failed(index, productRequest.getId(), violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining(", "))));
+            } else {
+                Product product = AppUtil.convertToProduct(productRequest);
+                // as Mongo stores it, lower case
+                product.setId(productRequest.getId() == null ? null : new ObjectId(productRequest.getId()).toHexString());
+                chunk.add(product);
+                chunkIndexes.add(index);
+            }
+            index++;
+            // failures count towards the chunk, so the results held back stay bounded as well
+            if (chunk.size() + failures.size() == chunkSize) {
+                emit(writeChunk(chunk, chunkIndexes, failures), results, counts);
+                chunk = new ArrayList<>(chunkSize);
+                chunkIndexes = new ArrayList<>(chunkSize);
+                failures = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty() || !failures.isEmpty()) {
+            emit(writeChunk(chunk, chunkIndexes, failures), results, counts);
+        }
+        return ProductBatchSummary.builder()
+                .created(counts.getOrDefault(ProductBatchResult.Status.CREATED, 0))
+                .updated(counts.getOrDefault(ProductBatchResult.Status.UPDATED, 0))
+                .failed(counts.getOrDefault(ProductBatchResult.Status.FAILED, 0))
+                .build();
+    }
+
+    private static void emit(List<ProductBatchResult> chunkResults, Consumer<List<ProductBatchResult>> results,
+                             Map<ProductBatchResult.Status, Integer> counts) {
+        chunkResults.forEach(result -> counts.merge(result.getStatus(), 1, Integer::sum));
+        results.accept(chunkResults);
+    }
+
+    /** Writes the chunk and returns its results together with the failures, in request order. */
+    private List<ProductBatchResult> writeChunk(List<Product> chunk, List<Integer> chunkIndexes,
+                                                List<ProductBatchResult> failures) {
+        List<ProductBatchResult> results = new ArrayList<>(chunk.size() + failures.size());
+        results.addAll(failures);
+        if (chunk.isEmpty()) {
+            return results;
+        }
+        // ids that are not set yet are assigned by the repository, remember which ones were inserts
+        Set<Integer> inserts = new HashSet<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            String id = chunk.get(i).getId();
+            if (id == null) {
+                inserts.add(i);
+            } else if (productWriteBehindBuffer.isEnabled()) {
+                // the pending write is older, flushed after this one it would undo it
+                productWriteBehindBuffer.discard(id);
+            }
+        }
+        BulkWriteResult bulkWriteResult;
+        Map<Integer, String> errors = new HashMap<>();
+        try {
+            bulkWriteResult = productRepository.bulkUpsert(chunk);
+        } catch (BulkOperationException e) {
+            bulkWriteResult = e.getResult();
+            for (BulkWriteError error : e.getErrors()) {
+                errors.put(error.getIndex(), error.getMessage());
+            }
+        }
+        Set<Integer> upserts = bulkWriteResult.getUpserts().stream()
+                .map(BulkWriteUpsert::getIndex)
+                .collect(Collectors.toSet());
+        List<String> written = new ArrayList<>(chunk.size());
+
+        for (int i = 0; i < chunk.size(); i++) {
+            Product product = chunk.get(i);
+            int index = chunkIndexes.get(i);
+            if (errors.containsKey(i)) {
+                results.add(failed(index, product.getId(), errors.get(i)));
+                continue;
+            }
+            if (!inserts.contains(i)) {
+                productCache.evict(product.getId());
+            }
+            productCache.evictName(product.getName());
+            written.add(product.getId());
+            results.add(ProductBatchResult.builder()
+                    .index(index)
+                    .id(product.getId())
+                    .status(inserts.contains(i) || upserts.contains(i)
+                            ? ProductBatchResult.Status.CREATED
+                            : ProductBatchResult.Status.UPDATED)
+                    .build());
+        }
+        indexPrices(written);
+        results.sort(Comparator.comparingInt(ProductBatchResult::getIndex));
+        return results;
+    }
+
+    /**
+     * The bulk write does not return the versions it wrote, which the price index orders writes by, so the
+     * written products are read back, in one query of their ids and prices.
+     */
+    private void indexPrices(List<String> ids) {
+        if (productPriceIndex.isEnabled() && !ids.isEmpty()) {
+            productRepository.findAllById(ids, ProductFields.ID)
+                    .forEach(product -> productPriceIndex.put(product.getId(), product.getPrice(), product.getVersion()));
+        }
+    }
+
+    private static ProductBatchResult failed(int index, String id, String error) {
+        return ProductBatchResult.builder()
+                .index(index)
+                .id(id)
+                .status(ProductBatchResult.Status.FAILED)
+                .error(error)
+                .build();
+    }
+}
@@ -1,91 +1,468 @@
 package com.cwc.Unit_Integration_Testing.service;
 
+import com.cwc.Unit_Integration_Testing.cache.ProductCache;
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductAggregates;
+import com.cwc.Unit_Integration_Testing.dto.ProductDeleteSummary;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductLookupResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductLookupResult;
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
+import com.cwc.Unit_Integration_Testing.dto.ProductPriceStats;
 import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
 import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductSearchPage;
 import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.exception.ProductBadRequestException;
 import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.exception.ProductVersionConflictException;
 import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
 import com.cwc.Unit_Integration_Testing.util.AppUtil;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/*
+Every public method is timed as product.service, tagged with the method and with the exception it
+failed with (none, ProductNotFoundException, ...). Repository calls are timed by Spring Data as
+spring.data.repository.invocations and Mongo commands by the driver listeners, both set up by Actuator.
+List results also record their size in product.service.result.size.
+
+With product.write-behind.enabled saves and updates only reach Mongo when ProductWriteBehindBuffer flushes them.
+Lookups by id and name check the pending writes first, and every other read flushes them before it queries Mongo,
+so a client always reads its own writes from this instance.
+
+List reads take the ProductFields a client asked for. Whole documents are read as before unless it asked for fewer
+fields, then the repository projects in Mongo. Single products come from the cache, which holds whole products,
+so those are only trimmed when they are serialized.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
+@Timed(value = "product.service", description = "Product service calls")
 public class ProductService {
     private final ProductRepository productRepository;
+    private final ProductProperties productProperties;
+    private final ProductCache productCache;
+    private final ProductPriceIndex productPriceIndex;
+    private final ProductWriteBehindBuffer productWriteBehindBuffer;
+    private final MeterRegistry meterRegistry;
 
     public List<ProductResponse> findAllProducts() throws ProductNotFoundException {
-        List<Product> products = productRepository.findAll();
+        return findAllProducts(ProductFields.ALL);
+    }
+
+    public List<ProductResponse> findAllProducts(ProductFields fields) throws ProductNotFoundException {
+        productWriteBehindBuffer.flush();
+        List<Product> products = fields.isAll() ? productRepository.findAll() : productRepository.findAll(fields);
         if(products.isEmpty())
         {
             throw new ProductNotFoundException("There is no product in the database");
         }
+        recordResultSize("findAllProducts", products.size());
         return products.stream().map(AppUtil::convertToProductResponse)
                 .collect(Collectors.toList());
     }
 
+    public ProductPage findProductPage(String cursor, Integer size) {
+        return findProductPage(cursor, size, ProductFields.ALL);
+    }
+
+    public ProductPage findProductPage(String cursor, Integer size, ProductFields fields) {
+        productWriteBehindBuffer.flush();
+        int pageSize = productProperties.getPagination().resolvePageSize(size);
+        // one extra product tells us whether there is a next page without a count query
+        Limit limit = Limit.of(pageSize + 1);
+        boolean firstPage = cursor == null || cursor.isBlank();
+        List<Product> products;
+        if (firstPage && fields.isAll()) {
+            products = productRepository.findAllByOrderByIdAsc(limit);
+        } else {
+            // a plain $gt on the cursor would stop at the end of the ids of its BSON type
+            products = productRepository.findPage(firstPage ? null : cursor, limit.max(), fields);
+        }
+        boolean hasNext = products.size() > pageSize;
+        List<ProductResponse> items = products.stream()
+                .limit(pageSize)
+                .map(AppUtil::convertToProductResponse)
+                .collect(Collectors.toList());
+        recordResultSize("findProductPage", items.size());
+        return ProductPage.builder()
+                .items(items)
+                .nextCursor(hasNext ? items.get(items.size() - 1).getId() : null)
+                .build();
+    }
+
+    /**
+     * Products with {@code min <= price <= max}, cheapest or most expensive first. A missing bound leaves that
+     * side open. Pages are keyset based like {@link #findProductPage}, the cursor holds the price and the id of
+     * the last product. Served from the in-memory price index once it is loaded, from Mongo otherwise.
+     */
+    public ProductPage findProductsByPrice(Double min, Double max, boolean descending, String cursor, Integer size) {
+        return findProductsByPrice(min, max, descending, cursor, size, ProductFields.ALL);
+    }
+
+    public ProductPage findProductsByPrice(Double min, Double max, boolean descending, String cursor, Integer size,
+                                           ProductFields fields) {
+        double lower = min == null ? Double.NEGATIVE_INFINITY : min;
+        double upper = max == null ? Double.POSITIVE_INFINITY : max;
+        if (lower > upper) {
+            throw new ProductBadRequestException("Minimum price " + lower + " is greater than maximum price " + upper);
+        }
+        productWriteBehindBuffer.flush();
+        int pageSize = productProperties.getPagination().resolvePageSize(size);
+        ProductPriceIndex.PriceEntry after = parsePriceCursor(cursor);
+        List<Product> products;
+        ProductPriceIndex.PriceEntry last;
+        boolean hasNext;
+        if (productPriceIndex.isReady()) {
+            List<ProductPriceIndex.PriceEntry> entries =
+                    productPriceIndex.findRange(lower, upper, after, descending, pageSize + 1);
+            hasNext = entries.size() > pageSize;
+            List<ProductPriceIndex.PriceEntry> page = entries.subList(0, Math.min(pageSize, entries.size()));
+            List<String> ids = page.stream().map(ProductPriceIndex.PriceEntry::id).collect(Collectors.toList());
+            Map<String, Product> found = (fields.isAll()
+                            ? productRepository.findAllById(ids)
+                            : productRepository.findAllById(ids, fields))
+                    .stream()
+                    .collect(Collectors.toMap(Product::getId, Function.identity()));
+            // the index can be behind a write, leave out products that were deleted or moved out of the range
+            products = page.stream()
+                    .map(entry -> found.get(entry.id()))
+                    .filter(product -> product != null && product.getPrice() >= lower && product.getPrice() <= upper)
+                    .collect(Collectors.toList());
+            last = page.isEmpty() ? null : page.get(page.size() - 1);
+        } else {
+            Double afterPrice = after == null ? null : after.price();
+            String afterId = after == null ? null : after.id();
+            List<Product> found = fields.isAll()
+                    ? productRepository.findByPriceRange(lower, upper, afterPrice, afterId, descending, pageSize + 1)
+                    : productRepository.findByPriceRange(lower, upper, afterPrice, afterId, descending, pageSize + 1, fields);
+            hasNext = found.size() > pageSize;
+            products = found.subList(0, Math.min(pageSize, found.size()));
+            Product lastProduct = products.isEmpty() ? null : products.get(products.size() - 1);
+            last = lastProduct == null ? null : new ProductPriceIndex.PriceEntry(lastProduct.getPrice(), lastProduct.getId());
+        }
+        List<ProductResponse> items = products.stream()
+                .map(AppUtil::convertToProductResponse)
+                .collect(Collectors.toList());
+        recordResultSize("findProductsByPrice", items.size());
+        return ProductPage.builder()
+                .items(items)
+                .nextCursor(hasNext ? last.price() + "_" + last.id() : null)
+                .build();
+    }
+
+    private static ProductPriceIndex.PriceEntry parsePriceCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        // the price never contains an underscore, the id may
+        int separator = cursor.indexOf('_');
+        if (separator <= 0 || separator == cursor.length() - 1) {
+            throw new ProductBadRequestException("Invalid price cursor " + cursor);
+        }
+        try {
+            return new ProductPriceIndex.PriceEntry(Double.parseDouble(cursor.substring(0, separator)),
+                    cursor.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new ProductBadRequestException("Invalid price cursor " + cursor);
+        }
+    }
+
+    /**
+     * Full-text search over name and description, best matches first. Pages are numbered from 0 and sized like
+     * {@link #findProductPage}. A blank text matches nothing.
+     */
+    public ProductSearchPage searchProducts(String text, Integer page, Integer size) {
+        return searchProducts(text, page, size, ProductFields.ALL);
+    }
+
+    public ProductSearchPage searchProducts(String text, Integer page, Integer size, ProductFields fields) {
+        int pageSize = productProperties.getPagination().resolvePageSize(size);
+        int pageNumber = (page == null || page < 0) ? 0 : page;
+        if (text == null || text.isBlank()) {
+            return ProductSearchPage.builder().items(List.of()).page(pageNumber).build();
+        }
+        productWriteBehindBuffer.flush();
+        int skip = (int) Math.min((long) pageNumber * pageSize, Integer.MAX_VALUE);
+        List<Product> products = fields.isAll()
+                ? productRepository.searchText(text, skip, pageSize + 1)
+                : productRepository.searchText(text, skip, pageSize + 1, fields);
+        List<ProductResponse> items = products.stream()
+                .limit(pageSize)
+                .map(AppUtil::convertToProductResponse)
+                .collect(Collectors.toList());
+        recordResultSize("searchProducts", items.size());
+        return ProductSearchPage.builder()
+                .items(items)
+                .page(pageNumber)
+                .nextPage(products.size() > pageSize ? pageNumber + 1 : null)
+                .build();
+    }
+
+    /**
+     * Products whose name starts with {@code prefix}, in name order, for autocomplete.
+     */
+    public List<ProductResponse> autocompleteProducts(String prefix, Integer size) {
+        return autocompleteProducts(prefix, size, ProductFields.ALL);
+    }
+
+    public List<ProductResponse> autocompleteProducts(String prefix, Integer size, ProductFields fields) {
+        if (prefix == null || prefix.isEmpty()) {
+            return List.of();
+        }
+        int limit = (size == null || size <= 0)
+                ? productProperties.getSearch().getDefaultSuggestions()
+                : Math.min(size, productProperties.getPagination().getMaxPageSize());
+        productWriteBehindBuffer.flush();
+        List<Product> found = fields.isAll()
+                ? productRepository.findByNamePrefix(prefix, limit)
+                : productRepository.findByNamePrefix(prefix, limit, fields);
+        List<ProductResponse> products = found.stream()
+                .map(AppUtil::convertToProductResponse)
+                .collect(Collectors.toList());
+        recordResultSize("autocompleteProducts", products.size());
+        return products;
+    }
+
+    /**
+     * Product documents are read lazily from a Mongo cursor and are not mapped, write them with
+     * {@link com.cwc.Unit_Integration_Testing.util.ProductJsonWriter}. The caller must close the returned stream.
+     * The timer only covers opening the cursor, reading it shows up in the Mongo getMore command metrics.
+     */
+    public Stream<RawBsonDocument> streamAllProductDocuments() {
+        productWriteBehindBuffer.flush();
+        return productRepository.streamAllDocuments();
+    }
+
     public ProductResponse findProductById(String id) throws ProductNotFoundException {
-        Optional<Product> product = productRepository.findById(id);
+        Optional<Product> product = productWriteBehindBuffer.findPending(id)
+                .or(() -> productCache.findById(id, productRepository::findById));
         if(product.isEmpty())
         {
-            throw new ProductNotFoundException("Product with id " + id +" not found");
+            throw ProductNotFoundException.forId(id);
         }
         return AppUtil.convertToProductResponse(product.get());
     }
     public ProductResponse findProductByName(String name) throws ProductNotFoundException {
-        Optional<Product> product = productRepository.findByName(name);
+        Optional<Product> product = productWriteBehindBuffer.findPendingByName(name)
+                .or(() -> productCache.findByName(name, productRepository::findByName, productRepository::findById)
+                        // a pending write of the product found in Mongo may have renamed it
+                        .map(found -> productWriteBehindBuffer.findPending(found.getId()).orElse(found))
+                        .filter(found -> name.equals(found.getName())));
         if(product.isEmpty())
         {
-            throw new ProductNotFoundException("Product with name " + name +" not found");
+            throw ProductNotFoundException.forName(name);
         }
         return AppUtil.convertToProductResponse(product.get());
     }
 
+    /**
+     * Looks up many products at once: pending writes and cached products first, the rest with a single
+     * {@code $in} query. Every requested id gets a result in request order, ids that do not exist are marked
+     * NOT_FOUND instead of failing the lookup.
+     */
+    public ProductLookupResponse findProductsByIds(List<String> ids) {
+        int maxLookupIds = productProperties.getBatch().getMaxLookupIds();
+        if (ids.size() > maxLookupIds) {
+            throw new ProductBadRequestException("At most " + maxLookupIds + " ids can be looked up at once, got " + ids.size());
+        }
+        Map<String, Product> found = new HashMap<>();
+        Set<String> toLoad = new LinkedHashSet<>();
+        for (String id : ids) {
+            productWriteBehindBuffer.findPending(id).ifPresentOrElse(product -> found.put(id, product), () -> toLoad.add(id));
+        }
+        found.putAll(productCache.findAllById(toLoad, productRepository::findAllById));
+        List<ProductLookupResult> results = ids.stream()
+                .map(id -> found.containsKey(id)
+                        ? ProductLookupResult.builder().id(id).status(ProductLookupResult.Status.FOUND)
+                                .product(AppUtil.convertToProductResponse(found.get(id))).build()
+                        : ProductLookupResult.builder().id(id).status(ProductLookupResult.Status.NOT_FOUND).build())
+                .collect(Collectors.toList());
+        int foundCount = (int) results.stream().filter(result -> result.getStatus() == ProductLookupResult.Status.FOUND).count();
+        recordResultSize("findProductsByIds", foundCount);
+        return ProductLookupResponse.builder()
+                .found(foundCount)
+                .notFound(results.size() - foundCount)
+                .results(results)
+                .build();
+    }
+
+    /**
+     * Count, price statistics and price histogram of the whole catalog. Read from the totals the price index
+     * keeps current on every write once it is loaded, otherwise computed by a Mongo aggregation, which scans
+     * the collection, and reused for {@code product.price-index.stats-time-to-live}.
+     */
+    public ProductAggregates findProductAggregates() {
+        productWriteBehindBuffer.flush();
+        double[] histogramBounds = ProductPriceIndex.histogramBounds(productProperties.getPriceIndex().getHistogramBounds());
+        ProductPriceStats stats = productPriceIndex.priceStats(() -> productRepository.aggregatePrices(histogramBounds));
+        return AppUtil.convertToProductAggregates(stats, histogramBounds);
+    }
+
     public ProductResponse saveProduct(ProductRequest productRequest)
     {
         Product product = AppUtil.convertToProduct(productRequest);
+        if(productWriteBehindBuffer.isEnabled())
+        {
+            // the id is chosen here so it can be returned before the product is in Mongo
+            product.setId(new ObjectId().toHexString());
+            productWriteBehindBuffer.insert(product);
+            return AppUtil.convertToProductResponse(product);
+        }
         Product savedProduct = productRepository.save(product);
+        productCache.evictName(savedProduct.getName());
+        productPriceIndex.put(savedProduct.getId(), savedProduct.getPrice(), savedProduct.getVersion());
         return AppUtil.convertToProductResponse(savedProduct);
     }
     public ProductResponse updateProduct(String id, ProductRequest productRequest)
             throws ProductNotFoundException {
-        if(!productRepository.existsById(id))
+        // a single findAndModify ($set and $inc, no upsert), a product deleted in the meantime is not brought back
+        Optional<Product> updated = update(id, productRequest, null);
+        if(updated.isEmpty())
+        {
+            throw ProductNotFoundException.forId(id);
+        }
+        return AppUtil.convertToProductResponse(updated.get());
+    }
+
+    /**
+     * Optimistic update, the product is only written when its version is still {@code expectedVersion}
+     * (any version when it is null).
+     */
+    public ProductResponse updateProduct(String id, ProductRequest productRequest, Long expectedVersion)
+            throws ProductNotFoundException, ProductVersionConflictException {
+        Optional<Product> updated = update(id, productRequest, expectedVersion);
+        if(updated.isEmpty())
         {
-            throw new ProductNotFoundException("Product with id "+id+" not found");
+            // only the unhappy path pays for telling a missing product from a stale version
+            if(expectedVersion == null || !productRepository.existsById(id))
+            {
+                throw ProductNotFoundException.forId(id);
+            }
+            throw new ProductVersionConflictException("Product with id "+id+" is no longer at version "+expectedVersion);
         }
+        return AppUtil.convertToProductResponse(updated.get());
+    }
+
+    private Optional<Product> update(String id, ProductRequest productRequest, Long expectedVersion) {
         Product product = AppUtil.convertToProduct(productRequest);
         product.setId(id);
-        Product savedProduct = productRepository.save(product);
+        if(productWriteBehindBuffer.isEnabled())
+        {
+            if(expectedVersion == null)
+            {
+                return updateBehind(product);
+            }
+            // the version can only be checked against Mongo
+            productWriteBehindBuffer.flush();
+        }
+        Optional<Product> updated = productRepository.findAndUpdateById(product, expectedVersion);
+        if(updated.isPresent())
+        {
+            productCache.evict(id);
+            productCache.evictName(product.getName());
+            productPriceIndex.put(id, product.getPrice(), updated.get().getVersion());
+        }
+        return updated;
+    }
 
-        return AppUtil.convertToProductResponse(savedProduct);
+    /**
+     * Buffered update, the product only has to exist. The version it will get is not known yet, so the
+     * returned product has none. A product deleted after the check is not brought back, the flush only
+     * updates stored products.
+     */
+    private Optional<Product> updateBehind(Product product) {
+        String id = product.getId();
+        if(productWriteBehindBuffer.findPending(id).isEmpty()
+                && productCache.findById(id, productRepository::findById).isEmpty())
+        {
+            return Optional.empty();
+        }
+        productWriteBehindBuffer.update(product);
+        return Optional.of(product);
     }
     public ProductResponse deleteProductById(String id) throws ProductNotFoundException {
 
-        Optional<Product> product = productRepository.findById(id);
+        // a pending write must not bring the product back after the delete, one being flushed is waited for
+        Optional<Product> discarded = productWriteBehindBuffer.discard(id);
+        Optional<Product> product = productRepository.findAndDeleteById(id).or(() -> discarded);
         if(product.isEmpty())
         {
-            throw new ProductNotFoundException("Product with id "+id+" not found");
+            throw ProductNotFoundException.forId(id);
         }
-        productRepository.deleteById(id);
+        productCache.evict(id);
+        productPriceIndex.remove(id);
         return AppUtil.convertToProductResponse(product.get());
     }
 
     public List<ProductResponse> deleteAllProducts() throws ProductNotFoundException {
+        productWriteBehindBuffer.flush();
         List<Product> products = productRepository.findAll();
         if(products.isEmpty())
         {
             throw new ProductNotFoundException("There is no product in the database");
         }
         productRepository.deleteAll();
+        productCache.clear();
+        productPriceIndex.clear();
+        recordResultSize("deleteAllProducts", products.size());
         return products.stream().map(AppUtil::convertToProductResponse)
                 .collect(Collectors.toList());
     }
+    /**
+     * Deletes every product in batches of {@code product.batch.chunk-size}: a page of ids is read and then
+     * deleted, so memory use does not depend on the size of the collection. The ids of each deleted
+     * batch are passed to {@code deletedIds} before the next batch is read. Products saved while this
+     * runs are deleted as well when their id sorts after the current batch.
+     */
+    public ProductDeleteSummary deleteAllProductsInBatches(Consumer<List<String>> deletedIds) {
+        productWriteBehindBuffer.flush();
+        int batchSize = productProperties.getBatch().getChunkSize();
+        long deleted = 0;
+        int batches = 0;
+        String lastId = null;
+        List<String> ids;
+        while (!(ids = productRepository.findIds(lastId, batchSize)).isEmpty()) {
+            deleted += productRepository.deleteByIds(ids);
+            batches++;
+            ids.forEach(productCache::evict);
+            ids.forEach(productPriceIndex::remove);
+            deletedIds.accept(ids);
+            lastId = ids.get(ids.size() - 1);
+        }
+        // names are only cached by id and checked against the product, clearing them just frees memory
+        productCache.clear();
+        recordResultSize("deleteAllProductsInBatches", deleted);
+        log.info("Deleted {} products in {} batches", deleted, batches);
+        return ProductDeleteSummary.builder()
+                .deleted(deleted)
+                .batches(batches)
+                .build();
+    }
+
+    private void recordResultSize(String method, long size) {
+        meterRegistry.summary("product.service.result.size", "method", method).record(size);
+    }
+
 //    public List<ProductResponse> deleteAllProducts() {
 //        List<Product> products = productRepository.findAll();
 //        if (products.isEmpty()) {
@@ -0,0 +1,441 @@
+package com.cwc.Unit_Integration_Testing.service;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductCache;
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for product saves and updates, turned on with {@code product.write-behind.enabled}.
+ * <p>
+ * A write only puts the product in a map keyed by id and returns, so repeated writes of the same product
+ * before the next flush end up as one Mongo write. A background thread flushes the map every
+ * {@code flush-interval}, or as soon as a batch of {@code product.batch.chunk-size} products is pending, in one
+ * unordered bulk write. Products are only removed from the map after Mongo acknowledged them and the cache was
+ * evicted, so {@link #findPending} sees every write that is not readable from Mongo yet. A failed flush is
+ * retried on the next interval.
+ * <p>
+ * Only {@link #insert}s create products, {@link #update}s are flushed as updates of the stored product and
+ * write nothing when it was deleted in the meantime. {@link #discard} waits for a flush that is writing the
+ * product, so a delete that follows it finds the product in Mongo instead of being overtaken by the flush.
+ * <p>
+ * At most {@code capacity} products are pending. A write of another product then waits up to
+ * {@code offer-timeout} for a flush and otherwise writes to Mongo itself, so callers slow down to what Mongo
+ * can take instead of filling the heap.
+ * <p>
+ * Pending writes are flushed on shutdown. With {@code journal} set, every write is also appended to that file
+ * (and forced to disk) before it is acknowledged, and writes found there on startup are flushed again, so a
+ * crash does not lose them. The journal is truncated whenever nothing is pending.
+ */
+@Component
+@Slf4j
+public class ProductWriteBehindBuffer implements MeterBinder {
+    /** One journal line, a null product marks a pending write that was dropped by a delete. */
+    record JournalEntry(String id, Product product, boolean insert) {
+    }
+
+    /** A product to write, {@code insert} when it is not in Mongo yet. */
+    private record PendingWrite(Product product, boolean insert) {
+    }
+
+    private final ProductRepository productRepository;
+    private final ProductCache productCache;
+    private final ProductPriceIndex productPriceIndex;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration offerTimeout;
+    private final Path journalPath;
+
+    private final Map<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    // guards the capacity, the journal and flushing, never held while talking to Mongo
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition batchReady = lock.newCondition();
+    private final Condition batchFlushed = lock.newCondition();
+    // ids of the batch that is being written to Mongo
+    private final Set<String> flushing = new HashSet<>();
+    // one flush at a time, from the worker or from a reader that needs pending writes in Mongo
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private FileChannel journal;
+    private volatile boolean running;
+    private Thread worker;
+
+    public ProductWriteBehindBuffer(ProductProperties productProperties, ProductRepository productRepository,
+                                    ProductCache productCache, ProductPriceIndex productPriceIndex,
+                                    ObjectMapper objectMapper) {
+        ProductProperties.WriteBehind properties = productProperties.getWriteBehind();
+        this.productRepository = productRepository;
+        this.productCache = productCache;
+        this.productPriceIndex = productPriceIndex;
+        this.objectMapper = objectMapper;
+        this.enabled = properties.isEnabled();
+        this.capacity = properties.getCapacity();
+        this.batchSize = productProperties.getBatch().getChunkSize();
+        this.flushInterval = properties.getFlushInterval();
+        this.offerTimeout = properties.getOfferTimeout();
+        this.journalPath = properties.getJournal();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("product.write.behind.pending", pending, Map::size)
+                .description("Product writes waiting to be flushed to Mongo")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (journalPath != null) {
+            replayJournal();
+        }
+        running = true;
+        worker = Thread.ofPlatform().daemon().name("product-write-behind").start(this::run);
+        log.info("Product write-behind enabled, {} products pending", pending.size());
+    }
+
+    /** Stops the worker and flushes what is still pending. */
+    @PreDestroy
+    public void close() {
+        if (!enabled || !running) {
+            return;
+        }
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(flushInterval.toMillis() * 10 + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (!pending.isEmpty()) {
+            log.error("{} product writes could not be flushed on shutdown{}", pending.size(),
+                    journal == null ? " and are lost" : ", they are kept in the journal");
+        }
+        closeJournal();
+    }
+
+    /**
+     * Queues the save of a new product, which must already have its id. Returns once the write is pending, or
+     * once it was written to Mongo directly when the buffer stayed full for {@code offer-timeout}.
+     */
+    public void insert(Product product) {
+        write(product, true);
+    }
+
+    /**
+     * Queues an update of name, description and price of a stored or pending product, like {@link #insert}.
+     * Nothing is written when the product is gone by the time it is flushed.
+     */
+    public void update(Product product) {
+        write(product, false);
+    }
+
+    private void write(Product product, boolean insert) {
+        String id = product.getId();
+        long nanos = offerTimeout.toNanos();
+        lock.lock();
+        try {
+            // once the insert in flight is done the product is in Mongo and this is an update
+            while (flushing.contains(id) && pending.containsKey(id) && pending.get(id).insert()) {
+                batchFlushed.awaitUninterruptibly();
+            }
+            while (!pending.containsKey(id) && pending.size() >= capacity) {
+                if (nanos <= 0) {
+                    break;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            if (pending.containsKey(id) || pending.size() < capacity) {
+                PendingWrite previous = pending.get(id);
+                PendingWrite write = new PendingWrite(product, insert || previous != null && previous.insert());
+                appendToJournal(new JournalEntry(id, product, write.insert()));
+                pending.put(id, write);
+                if (pending.size() >= batchSize) {
+                    batchReady.signal();
+                }
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        // full or interrupted, the caller pays for its own write
+        productRepository.bulkInsertAndUpdate(insert ? List.of(product) : List.of(), insert ? List.of() : List.of(product));
+        written(product);
+        indexPrices(List.of(id));
+    }
+
+    /** The pending write of the product, empty when there is none. */
+    public Optional<Product> findPending(String id) {
+        return Optional.ofNullable(pending.get(id)).map(PendingWrite::product);
+    }
+
+    /** A pending product with that name, empty when there is none. Scans the pending writes. */
+    public Optional<Product> findPendingByName(String name) {
+        if (pending.isEmpty()) {
+            return Optional.empty();
+        }
+        return pending.values().stream().map(PendingWrite::product)
+                .filter(product -> name.equals(product.getName())).findFirst();
+    }
+
+    /**
+     * Drops the pending write of the product before it is deleted, and returns it. When the product is being
+     * flushed this waits for the flush, so the delete runs after the product was written.
+     */
+    public Optional<Product> discard(String id) {
+        lock.lock();
+        try {
+            while (flushing.contains(id)) {
+                batchFlushed.awaitUninterruptibly();
+            }
+            PendingWrite write = pending.remove(id);
+            if (write != null) {
+                appendToJournal(new JournalEntry(id, null, false));
+                notFull.signalAll();
+                truncateJournalIfIdle();
+            }
+            return Optional.ofNullable(write).map(PendingWrite::product);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes what is pending now to Mongo, for reads that can not be answered from the pending writes.
+     * Writes made while this runs may be left for the worker.
+     */
+    public void flush() {
+        if (!enabled || pending.isEmpty()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            for (int rounds = pending.size() / batchSize + 1; rounds > 0 && !pending.isEmpty(); rounds--) {
+                flushBatch();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    private void run() {
+        while (running) {
+            lock.lock();
+            try {
+                if (pending.size() < batchSize) {
+                    batchReady.await(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                // close() interrupts, the last flush happens there
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                flush();
+            } catch (DataAccessException | MongoException e) {
+                log.warn("Flushing {} pending product writes failed, retrying in {}", pending.size(), flushInterval, e);
+            }
+        }
+    }
+
+    private void flushBatch() {
+        // inserts first, the bulk write reports errors by that order
+        List<PendingWrite> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        List<Product> inserts = new ArrayList<>();
+        List<Product> updates = new ArrayList<>();
+        lock.lock();
+        try {
+            for (PendingWrite write : pending.values()) {
+                (write.insert() ? inserts : updates).add(write.product());
+                flushing.add(write.product().getId());
+                batch.add(write);
+                if (batch.size() == batchSize) {
+                    break;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        batch.sort((a, b) -> Boolean.compare(b.insert(), a.insert()));
+        try {
+            Set<Integer> failed = new HashSet<>();
+            try {
+                productRepository.bulkInsertAndUpdate(inserts, updates);
+            } catch (BulkOperationException e) {
+                // written apart from the products Mongo rejected, retrying those would fail again
+                for (BulkWriteError error : e.getErrors()) {
+                    failed.add(error.getIndex());
+                    log.error("Dropping pending write of product {}: {}", batch.get(error.getIndex()).product().getId(),
+                            error.getMessage());
+                }
+            }
+            List<String> written = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                PendingWrite write = batch.get(i);
+                if (!failed.contains(i)) {
+                    written(write.product());
+                    written.add(write.product().getId());
+                }
+                lock.lock();
+                try {
+                    // a newer write of the same product stays pending
+                    pending.remove(write.product().getId(), write);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            indexPrices(written);
+        } finally {
+            lock.lock();
+            try {
+                batch.forEach(write -> flushing.remove(write.product().getId()));
+                batchFlushed.signalAll();
+                notFull.signalAll();
+                truncateJournalIfIdle();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void written(Product product) {
+        productCache.evict(product.getId());
+        productCache.evictName(product.getName());
+    }
+
+    /** Like the batch endpoint, the bulk write does not return the versions the price index needs. */
+    private void indexPrices(List<String> ids) {
+        if (productPriceIndex.isEnabled() && !ids.isEmpty()) {
+            productRepository.findAllById(ids, ProductFields.ID)
+                    .forEach(product -> productPriceIndex.put(product.getId(), product.getPrice(), product.getVersion()));
+        }
+    }
+
+    private void replayJournal() {
+        try {
+            if (Files.exists(journalPath)) {
+                try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank()) {
+                            continue;
+                        }
+                        JournalEntry entry;
+                        try {
+                            entry = objectMapper.readValue(line, JournalEntry.class);
+                        } catch (IOException e) {
+                            // the last line can be cut off by the crash, that write was never acknowledged
+                            log.warn("Skipping unreadable product journal line: {}", e.getMessage());
+                            continue;
+                        }
+                        if (entry.product() == null) {
+                            pending.remove(entry.id());
+                        } else {
+                            pending.put(entry.id(), new PendingWrite(entry.product(), entry.insert()));
+                        }
+                    }
+                }
+            }
+            journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            if (!pending.isEmpty()) {
+                log.info("Replaying {} product writes from {}", pending.size(), journalPath);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the product write journal " + journalPath, e);
+        }
+    }
+
+    private void appendToJournal(JournalEntry entry) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+            journal.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to the product write journal " + journalPath, e);
+        }
+    }
+
+    private void truncateJournalIfIdle() {
+        if (journal == null || !pending.isEmpty()) {
+            return;
+        }
+        try {
+            journal.truncate(0);
+        } catch (IOException e) {
+            log.warn("Could not truncate the product write journal {}", journalPath, e);
+        }
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Could not close the product write journal {}", journalPath, e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.cwc.Unit_Integration_Testing.service;
+
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
+import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.repository.ReactiveProductRepository;
+import com.cwc.Unit_Integration_Testing.util.AppUtil;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of {@link ProductService}, used when the application runs with the reactive profile.
+ * List methods hand the Mongo cursor to the caller, so the cursor is only read as fast as the client consumes.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductService {
+    private final ReactiveProductRepository reactiveProductRepository;
+    private final ProductProperties productProperties;
+
+    public Flux<ProductResponse> findAllProducts() {
+        return reactiveProductRepository.findAll()
+                .map(AppUtil::convertToProductResponse)
+                .switchIfEmpty(Flux.error(() -> new ProductNotFoundException("There is no product in the database")));
+    }
+
+    public Mono<ProductPage> findProductPage(String cursor, Integer size) {
+        int pageSize = productProperties.getPagination().resolvePageSize(size);
+        Limit limit = Limit.of(pageSize + 1);
+        Flux<Product> products = (cursor == null || cursor.isBlank())
+                ? reactiveProductRepository.findAllByOrderByIdAsc(limit)
+                : reactiveProductRepository.findPage(cursor, limit.max());
+        return products.map(AppUtil::convertToProductResponse)
+                .collectList()
+                .map(items -> {
+                    boolean hasNext = items.size() > pageSize;
+                    List<ProductResponse> page = hasNext ? items.subList(0, pageSize) : items;
+                    return ProductPage.builder()
+                            .items(page)
+                            .nextCursor(hasNext ? page.get(page.size() - 1).getId() : null)
+                            .build();
+                });
+    }
+
+    public Flux<ProductResponse> streamAllProducts() {
+        return reactiveProductRepository.findAll().map(AppUtil::convertToProductResponse);
+    }
+
+    public Mono<ProductResponse> findProductById(String id) {
+        return reactiveProductRepository.findById(id)
+                .map(AppUtil::convertToProductResponse)
+                .switchIfEmpty(Mono.error(() -> ProductNotFoundException.forId(id)));
+    }
+
+    public Mono<ProductResponse> findProductByName(String name) {
+        return reactiveProductRepository.findByName(name)
+                .map(AppUtil::convertToProductResponse)
+                .switchIfEmpty(Mono.error(() -> ProductNotFoundException.forName(name)));
+    }
+
+    public Mono<ProductResponse> saveProduct(ProductRequest productRequest) {
+        return reactiveProductRepository.save(AppUtil.convertToProduct(productRequest))
+                .map(AppUtil::convertToProductResponse);
+    }
+
+    public Mono<ProductResponse> updateProduct(String id, ProductRequest productRequest) {
+        Product product = AppUtil.convertToProduct(productRequest);
+        product.setId(id);
+        return reactiveProductRepository.findAndUpdateById(product)
+                .map(AppUtil::convertToProductResponse)
+                .switchIfEmpty(Mono.error(() -> ProductNotFoundException.forId(id)));
+    }
+
+    public Mono<ProductResponse> deleteProductById(String id) {
+        return reactiveProductRepository.findAndDeleteById(id)
+                .map(AppUtil::convertToProductResponse)
+                .switchIfEmpty(Mono.error(() -> ProductNotFoundException.forId(id)));
+    }
+
+    public Mono<List<ProductResponse>> deleteAllProducts() {
+        return reactiveProductRepository.findAll()
+                .map(AppUtil::convertToProductResponse)
+                .collectList()
+                .flatMap(products -> products.isEmpty()
+                        ? Mono.error(new ProductNotFoundException("There is no product in the database"))
+                        : reactiveProductRepository.deleteAll().thenReturn(products));
+    }
+}
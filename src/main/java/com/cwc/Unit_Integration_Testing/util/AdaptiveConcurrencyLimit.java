@@ -0,0 +1,74 @@
+package com.cwc.Unit_Integration_Testing.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limit on work in progress that follows the latency, additive increase and multiplicative decrease like TCP
+ * congestion control. While work finishes within the threshold and at least half the limit is in use, the limit
+ * grows by one per limit's worth of completions, about once per round trip. Work that takes longer lowers it by
+ * the backoff ratio, at most once per threshold so one slow burst does not count many times.
+ */
+public class AdaptiveConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    // guarded by this
+    private long lastDecrease;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long latencyThresholdNanos,
+                                    double backoffRatio) {
+        if (minLimit < 1 || minLimit > maxLimit || backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Concurrency limits need 1 <= min <= max and 0 < backoff ratio < 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+        this.lastDecrease = System.nanoTime() - latencyThresholdNanos;
+    }
+
+    /** Takes a slot when fewer than the limit are in use, the caller has to {@link #release} it. */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** Gives the slot back without adapting the limit, for work whose latency says nothing about the load. */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /** Gives the slot back and adapts the limit to how long the work took. */
+    public void release(long latencyNanos, long now) {
+        int inUse = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (latencyNanos > latencyThresholdNanos) {
+                if (now - lastDecrease >= latencyThresholdNanos) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = now;
+                }
+            } else if (inUse * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
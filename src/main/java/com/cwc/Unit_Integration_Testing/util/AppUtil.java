@@ -1,10 +1,19 @@
 package com.cwc.Unit_Integration_Testing.util;
 
+import com.cwc.Unit_Integration_Testing.dto.ProductAggregates;
+import com.cwc.Unit_Integration_Testing.dto.ProductPriceStats;
 import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
 import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
 import com.cwc.Unit_Integration_Testing.entity.Product;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class AppUtil {
+    private static final double[] PERCENTILES = {50, 90, 95, 99};
+
     public static Product convertToProduct(ProductRequest productRequest)
     {
         return Product.builder()
@@ -20,6 +29,54 @@ public class AppUtil {
                 .name(product.getName())
                 .description(product.getDescription())
                 .price(product.getPrice())
+                .version(product.getVersion())
+                .lastModified(product.getLastModified())
                 .build();
     }
+
+    /*
+    Percentiles are interpolated inside the bucket they fall in, with the bucket cut down to the min and max
+    price, so they are exact for evenly spread prices and never off by more than the width of their bucket.
+     */
+    public static ProductAggregates convertToProductAggregates(ProductPriceStats stats, double[] histogramBounds)
+    {
+        List<ProductAggregates.PriceBucket> buckets = new ArrayList<>(stats.histogram().size());
+        for (int i = 0; i < stats.histogram().size(); i++) {
+            buckets.add(ProductAggregates.PriceBucket.builder()
+                    .from(i == 0 ? null : histogramBounds[i - 1])
+                    .to(i == histogramBounds.length ? null : histogramBounds[i])
+                    .count(stats.histogram().get(i))
+                    .build());
+        }
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        if (stats.count() > 0) {
+            for (double percentile : PERCENTILES) {
+                percentiles.put("p" + (int) percentile, estimatePercentile(stats, histogramBounds, percentile));
+            }
+        }
+        return ProductAggregates.builder()
+                .count(stats.count())
+                .minPrice(stats.min())
+                .maxPrice(stats.max())
+                .meanPrice(stats.count() == 0 ? null : stats.sum() / stats.count())
+                .pricePercentiles(percentiles)
+                .priceHistogram(buckets)
+                .build();
+    }
+
+    private static double estimatePercentile(ProductPriceStats stats, double[] histogramBounds, double percentile)
+    {
+        double rank = percentile / 100 * stats.count();
+        long below = 0;
+        for (int i = 0; i < stats.histogram().size(); i++) {
+            long count = stats.histogram().get(i);
+            if (count > 0 && below + count >= rank) {
+                double from = i == 0 ? stats.min() : Math.max(histogramBounds[i - 1], stats.min());
+                double to = i == histogramBounds.length ? stats.max() : Math.min(histogramBounds[i], stats.max());
+                return from + (to - from) * (rank - below) / count;
+            }
+            below += count;
+        }
+        return stats.max();
+    }
 }
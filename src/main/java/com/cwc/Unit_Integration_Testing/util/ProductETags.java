@@ -0,0 +1,126 @@
+package com.cwc.Unit_Integration_Testing.util;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.exception.ProductVersionConflictException;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * ETags and Last-Modified values for product responses.
+ * A single product is tagged with its version, a list with a digest of the ids and versions of its items,
+ * so both change whenever one of the products is written.
+ * List tags are weak: Tomcat does not gzip a response with a strong ETag, because the compressed bytes
+ * would no longer match it. A single product keeps a strong tag for If-Match and is too small to compress.
+ * A strong tag promises the same bytes, so the JSON, the CBOR and every fields= projection of a product get a tag of
+ * their own, all of them starting with the version.
+ */
+public class ProductETags {
+    private ProductETags() {
+    }
+
+    /** The quoted version of the product, or null for a product that was stored before products had a version. */
+    public static String etag(ProductResponse product) {
+        return etag(product, MediaType.APPLICATION_JSON, ProductFields.ALL);
+    }
+
+    /**
+     * The tag of one representation of the product: {@code "3"} for all fields as JSON, the media subtype and the
+     * fields in name order appended otherwise, like {@code "3-cbor"} or {@code "3-cbor-id.name"}.
+     */
+    public static String etag(ProductResponse product, MediaType mediaType, ProductFields fields) {
+        if (product.getVersion() == null) {
+            return null;
+        }
+        StringBuilder tag = new StringBuilder("\"").append(product.getVersion());
+        if (!MediaType.APPLICATION_JSON.equalsTypeAndSubtype(mediaType)) {
+            tag.append('-').append(mediaType.getSubtype());
+        }
+        if (!fields.isAll()) {
+            tag.append('-').append(fields.names().stream().sorted().collect(Collectors.joining(".")));
+        }
+        return tag.append('"').toString();
+    }
+
+    public static String etag(List<ProductResponse> products) {
+        return "W/\"" + digest(products, null) + "\"";
+    }
+
+    public static String etag(ProductPage page) {
+        return "W/\"" + digest(page.getItems(), page.getNextCursor()) + "\"";
+    }
+
+    /** Epoch millis of the last write, or -1 (no Last-Modified) when it is not known. */
+    public static long lastModified(ProductResponse product) {
+        return product.getLastModified() == null ? -1 : product.getLastModified().toEpochMilli();
+    }
+
+    public static long lastModified(List<ProductResponse> products) {
+        long lastModified = -1;
+        for (ProductResponse product : products) {
+            Instant modified = product.getLastModified();
+            if (modified == null) {
+                // one product without a date makes the date of the list unknown
+                return -1;
+            }
+            lastModified = Math.max(lastModified, modified.toEpochMilli());
+        }
+        return lastModified;
+    }
+
+    /**
+     * The version an If-Match header asks for. Null when there is no header or it is {@code *}, then any version
+     * may be overwritten. The tag of any representation of the product names its version. A weak or unparsable
+     * tag can never match a product version.
+     */
+    public static Long expectedVersion(String ifMatch) throws ProductVersionConflictException {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            try {
+                String version = tag.substring(1, tag.length() - 1);
+                int representation = version.indexOf('-');
+                return Long.parseLong(representation > 0 ? version.substring(0, representation) : version);
+            } catch (NumberFormatException e) {
+                // not one of our tags, reported as a conflict below
+            }
+        }
+        throw new ProductVersionConflictException("If-Match " + tag + " does not match the product version");
+    }
+
+    private static String digest(List<ProductResponse> products, String nextCursor) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder item = new StringBuilder();
+        for (ProductResponse product : products) {
+            item.setLength(0);
+            item.append(product.getId()).append(':');
+            if (product.getVersion() != null) {
+                item.append(product.getVersion());
+            } else {
+                // no version to go by, tag the content instead
+                item.append(product.getName()).append(':').append(product.getDescription())
+                        .append(':').append(product.getPrice());
+            }
+            digest.update(item.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (nextCursor != null) {
+            digest.update(nextCursor.getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,170 @@
+package com.cwc.Unit_Integration_Testing.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.bson.BsonSerializationException;
+import org.bson.RawBsonDocument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a product document read from Mongo as the JSON of its {@code ProductResponse}, without mapping it
+ * to a {@code Product} and a {@code ProductResponse} first.
+ * <p>
+ * The BSON bytes are scanned in place: strings are copied to the generator as UTF-8 bytes and the
+ * {@code ObjectId} is hex encoded into a reused buffer, so no objects are created per document.
+ * The output matches Jackson's serialization of {@code ProductResponse} field for field, including
+ * {@code null} for a missing description. The generator has to write to an {@code OutputStream}.
+ * <p>
+ * An instance keeps a small buffer and must not be shared between threads.
+ */
+public class ProductJsonWriter {
+    private static final byte[] ID = "_id".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NAME = "name".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DESCRIPTION = "description".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PRICE = "price".getBytes(StandardCharsets.US_ASCII);
+
+    private static final SerializableString ID_FIELD = new SerializedString("id");
+    private static final SerializableString NAME_FIELD = new SerializedString("name");
+    private static final SerializableString DESCRIPTION_FIELD = new SerializedString("description");
+    private static final SerializableString PRICE_FIELD = new SerializedString("price");
+
+    private static final byte BSON_DOUBLE = 0x01;
+    private static final byte BSON_STRING = 0x02;
+    private static final byte BSON_OBJECT_ID = 0x07;
+    private static final byte BSON_INT32 = 0x10;
+    private static final byte BSON_INT64 = 0x12;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final char[] objectIdHex = new char[24];
+
+    public void write(RawBsonDocument document, JsonGenerator generator) throws IOException {
+        ByteBuffer buffer = document.getByteBuffer().asNIO();
+        byte[] bytes = buffer.array();
+        int start = buffer.arrayOffset() + buffer.position();
+        int end = start + readInt(bytes, start) - 1;
+
+        // remember where each field starts, documents may store them in any order
+        int idPosition = -1, namePosition = -1, descriptionPosition = -1, pricePosition = -1;
+        byte idType = 0, nameType = 0, descriptionType = 0, priceType = 0;
+        int position = start + 4;
+        while (position < end) {
+            byte type = bytes[position++];
+            int nameStart = position;
+            while (bytes[position] != 0) {
+                position++;
+            }
+            int nameLength = position - nameStart;
+            position++;
+            if (matches(bytes, nameStart, nameLength, ID)) {
+                idType = type;
+                idPosition = position;
+            } else if (matches(bytes, nameStart, nameLength, NAME)) {
+                nameType = type;
+                namePosition = position;
+            } else if (matches(bytes, nameStart, nameLength, DESCRIPTION)) {
+                descriptionType = type;
+                descriptionPosition = position;
+            } else if (matches(bytes, nameStart, nameLength, PRICE)) {
+                priceType = type;
+                pricePosition = position;
+            }
+            position += valueSize(type, bytes, position);
+        }
+
+        generator.writeStartObject();
+        generator.writeFieldName(ID_FIELD);
+        if (idType == BSON_OBJECT_ID) {
+            writeObjectId(bytes, idPosition, generator);
+        } else {
+            writeString(idType, bytes, idPosition, generator);
+        }
+        generator.writeFieldName(NAME_FIELD);
+        writeString(nameType, bytes, namePosition, generator);
+        generator.writeFieldName(DESCRIPTION_FIELD);
+        writeString(descriptionType, bytes, descriptionPosition, generator);
+        generator.writeFieldName(PRICE_FIELD);
+        generator.writeNumber(readPrice(priceType, bytes, pricePosition));
+        generator.writeEndObject();
+    }
+
+    private void writeObjectId(byte[] bytes, int position, JsonGenerator generator) throws IOException {
+        for (int i = 0; i < 12; i++) {
+            int b = bytes[position + i] & 0xFF;
+            objectIdHex[i * 2] = HEX[b >>> 4];
+            objectIdHex[i * 2 + 1] = HEX[b & 0x0F];
+        }
+        generator.writeString(objectIdHex, 0, objectIdHex.length);
+    }
+
+    private static void writeString(byte type, byte[] bytes, int position, JsonGenerator generator) throws IOException {
+        if (type != BSON_STRING) {
+            generator.writeNull();
+            return;
+        }
+        // the length includes the trailing zero byte
+        generator.writeUTF8String(bytes, position + 4, readInt(bytes, position) - 1);
+    }
+
+    private static double readPrice(byte type, byte[] bytes, int position) {
+        return switch (type) {
+            case BSON_DOUBLE -> Double.longBitsToDouble(readLong(bytes, position));
+            case BSON_INT32 -> readInt(bytes, position);
+            case BSON_INT64 -> readLong(bytes, position);
+            default -> 0.0;
+        };
+    }
+
+    private static int valueSize(byte type, byte[] bytes, int position) {
+        return switch (type) {
+            case 0x01, 0x09, 0x11, 0x12 -> 8;                 // double, date time, timestamp, int64
+            case 0x02, 0x0D, 0x0E -> 4 + readInt(bytes, position); // string, javascript, symbol
+            case 0x03, 0x04, 0x0F -> readInt(bytes, position);    // document, array, javascript with scope
+            case 0x05 -> 5 + readInt(bytes, position);             // binary
+            case 0x06, 0x0A, (byte) 0xFF, 0x7F -> 0;               // undefined, null, min key, max key
+            case 0x07 -> 12;                                       // object id
+            case 0x08 -> 1;                                        // boolean
+            case 0x0B -> cStringSize(bytes, position)             // regular expression: pattern and options
+                    + cStringSize(bytes, position + cStringSize(bytes, position));
+            case 0x0C -> 4 + readInt(bytes, position) + 12;        // db pointer
+            case 0x10 -> 4;                                        // int32
+            case 0x13 -> 16;                                       // decimal128
+            default -> throw new BsonSerializationException("Unexpected BSON type " + type);
+        };
+    }
+
+    private static int cStringSize(byte[] bytes, int position) {
+        int end = position;
+        while (bytes[end] != 0) {
+            end++;
+        }
+        return end - position + 1;
+    }
+
+    private static boolean matches(byte[] bytes, int start, int length, byte[] name) {
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return (bytes[position] & 0xFF)
+                | (bytes[position + 1] & 0xFF) << 8
+                | (bytes[position + 2] & 0xFF) << 16
+                | (bytes[position + 3] & 0xFF) << 24;
+    }
+
+    private static long readLong(byte[] bytes, int position) {
+        return (readInt(bytes, position) & 0xFFFFFFFFL) | ((long) readInt(bytes, position + 4)) << 32;
+    }
+}
@@ -0,0 +1,42 @@
+package com.cwc.Unit_Integration_Testing.util;
+
+/**
+ * Token bucket refilled at a fixed rate up to its burst. Time is passed in by the caller as
+ * {@link System#nanoTime()}, so one clock read serves all buckets a request goes through.
+ */
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double ratePerSecond, int burst, long now) {
+        this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+        this.burst = Math.max(burst, 1);
+        this.tokens = this.burst;
+        this.refilledAt = now;
+    }
+
+    /** Takes a token and returns 0, or returns the nanos until one is available and takes nothing. */
+    public synchronized long tryAcquire(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+        }
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /** Gives back a token taken by {@link #tryAcquire} for a request that was turned away after all. */
+    public synchronized void refund() {
+        tokens = Math.min(burst, tokens + 1);
+    }
+
+    /** Nanos an idle bucket takes to fill up completely, after that it is as good as a new one. */
+    public long nanosToFill() {
+        return (long) Math.ceil(burst / tokensPerNano);
+    }
+}
@@ -0,0 +1,322 @@
+package com.cwc.Unit_Integration_Testing.cache;
+
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductCacheTest {
+    private final Map<String, Product> database = new HashMap<>();
+    private final AtomicInteger idLoads = new AtomicInteger();
+    private final AtomicInteger nameLoads = new AtomicInteger();
+
+    private final Function<String, Optional<Product>> idLoader = id -> {
+        idLoads.incrementAndGet();
+        return Optional.ofNullable(database.get(id));
+    };
+    private final Function<String, Optional<Product>> nameLoader = name -> {
+        nameLoads.incrementAndGet();
+        return database.values().stream().filter(p -> p.getName().equals(name)).findFirst();
+    };
+
+    private ProductProperties productProperties;
+
+    @BeforeEach
+    void setUp() {
+        productProperties = new ProductProperties();
+        database.put("L-101", Product.builder().id("L-101").name("Laptop").price(255.99).build());
+    }
+
+    @Test
+    void findByIdShouldLoadOnlyOnce() {
+        ProductCache productCache = new ProductCache(productProperties);
+
+        assertEquals("Laptop", productCache.findById("L-101", idLoader).get().getName());
+        assertEquals("Laptop", productCache.findById("L-101", idLoader).get().getName());
+
+        assertEquals(1, idLoads.get());
+        assertEquals(1, productCache.productStats().hitCount());
+        assertEquals(1, productCache.productStats().missCount());
+    }
+
+    @Test
+    void refreshShouldReplaceOlderCachedProduct() {
+        ProductCache productCache = new ProductCache(productProperties);
+        database.get("L-101").setVersion(1L);
+        productCache.findById("L-101", idLoader);
+
+        productCache.refresh(Product.builder().id("L-101").name("Notebook").price(199.99).version(2L).build());
+        productCache.refresh(Product.builder().id("L-101").name("Laptop").price(255.99).version(1L).build());
+
+        assertEquals("Notebook", productCache.findById("L-101", idLoader).get().getName());
+        assertEquals(1, idLoads.get());
+    }
+
+    @Test
+    void refreshShouldNotCacheProductsThatWereNotCached() {
+        ProductCache productCache = new ProductCache(productProperties);
+
+        productCache.refresh(Product.builder().id("M-1001").name("Mouse").version(0L).build());
+
+        assertEquals(0, productCache.size());
+    }
+
+    @Test
+    void missingProductsShouldNotBeCached() {
+        productProperties.getCache().setNegativeTimeToLive(Duration.ZERO);
+        ProductCache productCache = new ProductCache(productProperties);
+
+        assertTrue(productCache.findById("M-1001", idLoader).isEmpty());
+        database.put("M-1001", Product.builder().id("M-1001").name("Mouse").build());
+
+        assertTrue(productCache.findById("M-1001", idLoader).isPresent());
+    }
+
+    @Test
+    void missingIdsAndNamesShouldBeAnsweredWithoutLoading() {
+        ProductCache productCache = new ProductCache(productProperties);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(productCache.findById("M-1001", idLoader).isEmpty());
+            assertTrue(productCache.findByName("Mouse", nameLoader, idLoader).isEmpty());
+        }
+
+        assertEquals(1, idLoads.get());
+        assertEquals(1, nameLoads.get());
+        assertEquals(2, productCache.missingIdStats().hitCount());
+        assertEquals(2, productCache.missingNameStats().hitCount());
+    }
+
+    @Test
+    void writeShouldForgetMissingIdAndName() {
+        ProductCache productCache = new ProductCache(productProperties);
+        productCache.findById("M-1001", idLoader);
+        productCache.findByName("Mouse", nameLoader, idLoader);
+
+        database.put("M-1001", Product.builder().id("M-1001").name("Mouse").build());
+        productCache.evict("M-1001");
+        productCache.evictName("Mouse");
+
+        assertTrue(productCache.findById("M-1001", idLoader).isPresent());
+        assertTrue(productCache.findByName("Mouse", nameLoader, idLoader).isPresent());
+    }
+
+    @Test
+    void refreshShouldForgetMissingIdAndName() {
+        ProductCache productCache = new ProductCache(productProperties);
+        productCache.findById("M-1001", idLoader);
+        productCache.findByName("Mouse", nameLoader, idLoader);
+
+        // created by another instance
+        Product mouse = Product.builder().id("M-1001").name("Mouse").version(0L).build();
+        database.put("M-1001", mouse);
+        productCache.refresh(mouse);
+
+        assertTrue(productCache.findById("M-1001", idLoader).isPresent());
+        assertTrue(productCache.findByName("Mouse", nameLoader, idLoader).isPresent());
+    }
+
+    @Test
+    void missShouldNotBeRememberedWhenAWriteRacedWithTheLookup() {
+        ProductCache productCache = new ProductCache(productProperties);
+        Function<String, Optional<Product>> racingLoader = id -> {
+            Optional<Product> product = idLoader.apply(id);
+            // the product is created after the query missed it, its evict runs before the miss is remembered
+            database.put(id, Product.builder().id(id).name("Mouse").build());
+            productCache.evict(id);
+            return product;
+        };
+
+        assertTrue(productCache.findById("M-1001", racingLoader).isEmpty());
+
+        assertTrue(productCache.findById("M-1001", idLoader).isPresent());
+    }
+
+    @Test
+    void evictShouldReloadProduct() {
+        ProductCache productCache = new ProductCache(productProperties);
+        productCache.findById("L-101", idLoader);
+
+        database.put("L-101", Product.builder().id("L-101").name("Keyboard").price(30).build());
+        productCache.evict("L-101");
+
+        assertEquals("Keyboard", productCache.findById("L-101", idLoader).get().getName());
+        assertEquals(2, idLoads.get());
+    }
+
+    @Test
+    void findByNameShouldNotReturnRenamedProduct() {
+        ProductCache productCache = new ProductCache(productProperties);
+        assertTrue(productCache.findByName("Laptop", nameLoader, idLoader).isPresent());
+
+        database.put("L-101", Product.builder().id("L-101").name("Keyboard").price(30).build());
+        productCache.evict("L-101");
+
+        assertTrue(productCache.findByName("Laptop", nameLoader, idLoader).isEmpty());
+        assertEquals("Keyboard", productCache.findByName("Keyboard", nameLoader, idLoader).get().getName());
+    }
+
+    @Test
+    void findByNameShouldUseCachedId() {
+        ProductCache productCache = new ProductCache(productProperties);
+
+        productCache.findByName("Laptop", nameLoader, idLoader);
+        productCache.findByName("Laptop", nameLoader, idLoader);
+        productCache.findByName("Laptop", nameLoader, idLoader);
+
+        assertEquals(1, nameLoads.get());
+        assertEquals(1, idLoads.get());
+    }
+
+    @Test
+    void sizeShouldBeBounded() {
+        productProperties.getCache().setMaximumSize(10);
+        ProductCache productCache = new ProductCache(productProperties);
+        for (int i = 0; i < 100; i++) {
+            String id = "P-" + i;
+            database.put(id, Product.builder().id(id).name("Product " + i).build());
+            productCache.findById(id, idLoader);
+        }
+        productCache.cleanUp();
+
+        assertTrue(productCache.size() <= 10);
+        assertTrue(productCache.productStats().evictionCount() >= 90);
+    }
+
+    @Test
+    void disabledCacheShouldAlwaysLoad() {
+        productProperties.getCache().setEnabled(false);
+        ProductCache productCache = new ProductCache(productProperties);
+
+        productCache.findById("L-101", idLoader);
+        productCache.findById("L-101", idLoader);
+        productCache.findByName("Laptop", nameLoader, idLoader);
+        productCache.findByName("Laptop", nameLoader, idLoader);
+
+        assertEquals(2, idLoads.get());
+        assertEquals(2, nameLoads.get());
+    }
+
+    @Test
+    void concurrentLookupsShouldShareOneQuery() throws Exception {
+        productProperties.getCache().setEnabled(false);
+        ProductCache productCache = new ProductCache(productProperties);
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<String, Optional<Product>> slowLoader = id -> {
+            queryStarted.countDown();
+            await(release);
+            return idLoader.apply(id);
+        };
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Optional<Product>>> lookups = new ArrayList<>();
+            lookups.add(executor.submit(() -> productCache.findById("L-101", slowLoader)));
+            queryStarted.await(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 10; i++) {
+                lookups.add(executor.submit(() -> productCache.findById("L-101", slowLoader)));
+            }
+            awaitSharedLoads(productCache, 10);
+            release.countDown();
+
+            for (Future<Optional<Product>> lookup : lookups) {
+                assertEquals("Laptop", lookup.get(5, TimeUnit.SECONDS).get().getName());
+            }
+        }
+        assertEquals(1, idLoads.get());
+    }
+
+    @Test
+    void concurrentLookupsShouldShareTheFailure() throws Exception {
+        ProductCache productCache = new ProductCache(productProperties);
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<String, Optional<Product>> failingLoader = name -> {
+            nameLoads.incrementAndGet();
+            queryStarted.countDown();
+            await(release);
+            throw new IllegalStateException("Mongo is down");
+        };
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Optional<Product>> first = executor.submit(() -> productCache.findByName("Laptop", failingLoader, idLoader));
+            queryStarted.await(5, TimeUnit.SECONDS);
+            Future<Optional<Product>> second = executor.submit(() -> productCache.findByName("Laptop", failingLoader, idLoader));
+            awaitSharedLoads(productCache, 1);
+            release.countDown();
+
+            assertInstanceOf(IllegalStateException.class, assertThrows(Exception.class, first::get).getCause());
+            assertInstanceOf(IllegalStateException.class, assertThrows(Exception.class, second::get).getCause());
+        }
+        assertEquals(1, nameLoads.get());
+        // the failure is not kept
+        assertTrue(productCache.findByName("Laptop", nameLoader, idLoader).isPresent());
+    }
+
+    @Test
+    void lookupAfterEvictShouldNotShareAnOlderQuery() throws Exception {
+        productProperties.getCache().setEnabled(false);
+        ProductCache productCache = new ProductCache(productProperties);
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<String, Optional<Product>> slowLoader = id -> {
+            Optional<Product> product = idLoader.apply(id);
+            queryStarted.countDown();
+            await(release);
+            return product;
+        };
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Optional<Product>> before = executor.submit(() -> productCache.findById("L-101", slowLoader));
+            queryStarted.await(5, TimeUnit.SECONDS);
+            database.put("L-101", Product.builder().id("L-101").name("Keyboard").price(30).build());
+            productCache.evict("L-101");
+
+            assertEquals("Keyboard", productCache.findById("L-101", idLoader).get().getName());
+            release.countDown();
+            assertEquals("Laptop", before.get(5, TimeUnit.SECONDS).get().getName());
+        }
+        assertEquals(2, idLoads.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitSharedLoads(ProductCache productCache, long expected) throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        productCache.bindTo(registry);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            double shared = registry.get("product.cache.shared.loads").functionCounters().stream()
+                    .mapToDouble(FunctionCounter::count).sum();
+            if (shared >= expected) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Lookups did not wait for the running query");
+    }
+}
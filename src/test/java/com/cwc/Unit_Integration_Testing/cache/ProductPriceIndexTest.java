@@ -0,0 +1,236 @@
+package com.cwc.Unit_Integration_Testing.cache;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex.PriceEntry;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductPriceStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductPriceIndexTest {
+    private ProductPriceIndex productPriceIndex;
+
+    @BeforeEach
+    void setUp() {
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getPriceIndex().setEnabled(true);
+        productPriceIndex = new ProductPriceIndex(productProperties);
+        productPriceIndex.put("L-101", 255.99, 0L);
+        productPriceIndex.put("M-1001", 55.99, 0L);
+        productPriceIndex.put("K-1", 55.99, 0L);
+        productPriceIndex.put("D-7", 10, 0L);
+    }
+
+    @Test
+    void findRangeShouldReturnEntriesByPriceAndId() {
+        assertEquals(List.of(new PriceEntry(55.99, "K-1"), new PriceEntry(55.99, "M-1001"), new PriceEntry(255.99, "L-101")),
+                productPriceIndex.findRange(55.99, 255.99, null, false, 10));
+        assertEquals(List.of(new PriceEntry(255.99, "L-101"), new PriceEntry(55.99, "M-1001")),
+                productPriceIndex.findRange(0, 1000, null, true, 2));
+    }
+
+    @Test
+    void findRangeShouldContinueAfterCursor() {
+        assertEquals(List.of(new PriceEntry(55.99, "M-1001"), new PriceEntry(255.99, "L-101")),
+                productPriceIndex.findRange(0, 1000, new PriceEntry(55.99, "K-1"), false, 10));
+        assertEquals(List.of(new PriceEntry(55.99, "K-1"), new PriceEntry(10, "D-7")),
+                productPriceIndex.findRange(0, 1000, new PriceEntry(55.99, "M-1001"), true, 10));
+    }
+
+    @Test
+    void putShouldMoveProductToItsNewPrice() {
+        productPriceIndex.put("D-7", 300, 1L);
+        productPriceIndex.remove("K-1");
+
+        assertEquals(3, productPriceIndex.size());
+        assertEquals(List.of(new PriceEntry(300, "D-7")), productPriceIndex.findRange(256, 1000, null, false, 10));
+        assertTrue(productPriceIndex.findRange(0, 50, null, false, 10).isEmpty());
+    }
+
+    @Test
+    void putShouldIgnoreAnOlderVersion() {
+        productPriceIndex.put("D-7", 300, 2L);
+        productPriceIndex.put("D-7", 20, 1L);
+
+        assertEquals(List.of(new PriceEntry(300, "D-7")), productPriceIndex.findRange(256, 1000, null, false, 10));
+        assertEquals(4, productPriceIndex.priceStats().count());
+        assertEquals(667.97, productPriceIndex.priceStats().sum(), 1e-9);
+    }
+
+    @Test
+    void concurrentPutsShouldKeepTheNewestVersion() throws Exception {
+        int writers = 8;
+        int versions = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int writer = 0; writer < writers; writer++) {
+                List<Long> order = new ArrayList<>(LongStream.rangeClosed(1, versions).boxed().toList());
+                Collections.shuffle(order, new Random(writer));
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // the price of each version is the version, every writer sends them in another order
+                    order.forEach(version -> productPriceIndex.put("D-7", version, version));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(List.of(new PriceEntry(versions, "D-7")), productPriceIndex.findRange(100, 250, null, false, 10));
+        assertEquals(4, productPriceIndex.size());
+        assertEquals(4, productPriceIndex.priceStats().count());
+        assertEquals(367.97 + versions, productPriceIndex.priceStats().sum(), 1e-9);
+    }
+
+    @Test
+    void priceStatsShouldFollowWrites() {
+        assertEquals(new ProductPriceStats(4, 10.0, 255.99, 377.97, List.of(0L, 1L, 0L, 2L, 0L, 1L, 0L, 0L, 0L, 0L)),
+                productPriceIndex.priceStats());
+
+        productPriceIndex.put("D-7", 300, 1L);
+        productPriceIndex.remove("K-1");
+
+        assertEquals(new ProductPriceStats(3, 55.99, 300.0, 611.98, List.of(0L, 0L, 0L, 1L, 0L, 2L, 0L, 0L, 0L, 0L)),
+                productPriceIndex.priceStats());
+
+        productPriceIndex.clear();
+
+        assertEquals(new ProductPriceStats(0, null, null, 0, List.of(0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L)),
+                productPriceIndex.priceStats());
+    }
+
+    @Test
+    void histogramBoundsShouldBeAscending() {
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getPriceIndex().setHistogramBounds(List.of(10.0, 5.0));
+
+        assertThrows(IllegalArgumentException.class, () -> new ProductPriceIndex(productProperties));
+    }
+
+    @Test
+    void loadShouldKeepPricesWrittenMeanwhile() {
+        assertFalse(productPriceIndex.isReady());
+
+        productPriceIndex.load(List.of(new PriceEntry(1, "L-101"), new PriceEntry(20, "N-1")).iterator());
+
+        assertTrue(productPriceIndex.isReady());
+        assertEquals(List.of(new PriceEntry(20, "N-1")), productPriceIndex.findRange(11, 50, null, false, 10));
+        assertEquals(List.of(new PriceEntry(255.99, "L-101")), productPriceIndex.findRange(200, 300, null, false, 10));
+    }
+
+    @Test
+    void loadShouldSkipProductsRemovedMeanwhile() {
+        productPriceIndex.remove("N-1");
+
+        productPriceIndex.load(List.of(new PriceEntry(1, "L-101"), new PriceEntry(20, "N-1")).iterator());
+
+        assertEquals(4, productPriceIndex.size());
+        assertTrue(productPriceIndex.findRange(11, 50, null, false, 10).isEmpty());
+        assertEquals(4, productPriceIndex.priceStats().count());
+        assertEquals(377.97, productPriceIndex.priceStats().sum(), 1e-9);
+
+        // only while loading, afterwards it is a normal product again
+        productPriceIndex.put("N-1", 20, 0L);
+        assertEquals(List.of(new PriceEntry(20, "N-1")), productPriceIndex.findRange(11, 50, null, false, 10));
+    }
+
+    @Test
+    void loadShouldBeIgnoredOnceTheIndexIsReady() {
+        productPriceIndex.load(List.of(new PriceEntry(20, "N-1")).iterator());
+        productPriceIndex.remove("N-1");
+
+        // a slower load that read N-1 before it was deleted
+        productPriceIndex.load(List.of(new PriceEntry(20, "N-1"), new PriceEntry(30, "O-1")).iterator());
+
+        assertTrue(productPriceIndex.findRange(11, 50, null, false, 10).isEmpty());
+        assertEquals(4, productPriceIndex.priceStats().count());
+    }
+
+    @Test
+    void loadShouldBeIgnoredWhileAnotherOneRuns() {
+        Iterator<PriceEntry> slowLoad = new Iterator<>() {
+            private boolean read;
+
+            @Override
+            public boolean hasNext() {
+                return !read;
+            }
+
+            @Override
+            public PriceEntry next() {
+                read = true;
+                productPriceIndex.load(List.of(new PriceEntry(30, "O-1")).iterator());
+                return new PriceEntry(20, "N-1");
+            }
+        };
+
+        productPriceIndex.load(slowLoad);
+
+        assertTrue(productPriceIndex.isReady());
+        assertEquals(List.of(new PriceEntry(20, "N-1")), productPriceIndex.findRange(11, 50, null, false, 10));
+    }
+
+    @Test
+    void priceStatsShouldReuseTheAggregationUntilTheIndexIsReady() {
+        ProductPriceStats aggregated = new ProductPriceStats(1, 20.0, 20.0, 20, List.of(0L, 1L, 0L, 0L, 0L, 0L, 0L, 0L, 0L, 0L));
+        AtomicInteger aggregations = new AtomicInteger();
+        Supplier<ProductPriceStats> aggregation = () -> {
+            aggregations.incrementAndGet();
+            return aggregated;
+        };
+
+        assertEquals(aggregated, productPriceIndex.priceStats(aggregation));
+        assertEquals(aggregated, productPriceIndex.priceStats(aggregation));
+        assertEquals(1, aggregations.get());
+
+        productPriceIndex.load(List.<PriceEntry>of().iterator());
+        assertEquals(productPriceIndex.priceStats(), productPriceIndex.priceStats(aggregation));
+        assertEquals(1, aggregations.get());
+    }
+
+    @Test
+    void priceStatsShouldAggregateEveryTimeWithoutTimeToLive() {
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getPriceIndex().setStatsTimeToLive(Duration.ZERO);
+        ProductPriceIndex disabled = new ProductPriceIndex(productProperties);
+        AtomicInteger aggregations = new AtomicInteger();
+
+        disabled.priceStats(() -> new ProductPriceStats(aggregations.incrementAndGet(), null, null, 0, List.of()));
+        disabled.priceStats(() -> new ProductPriceStats(aggregations.incrementAndGet(), null, null, 0, List.of()));
+
+        assertEquals(2, aggregations.get());
+    }
+
+    @Test
+    void disabledIndexShouldStayEmpty() {
+        ProductPriceIndex disabled = new ProductPriceIndex(new ProductProperties());
+        disabled.put("L-101", 255.99, 0L);
+        disabled.load(List.of(new PriceEntry(1, "N-1")).iterator());
+
+        assertFalse(disabled.isReady());
+        assertEquals(0, disabled.size());
+    }
+}
@@ -0,0 +1,135 @@
+package com.cwc.Unit_Integration_Testing.config;
+
+import com.cwc.Unit_Integration_Testing.UnitIntegrationTestingApplication;
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
+import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+Two instances of the application against one replica set, each with its own product cache and price index.
+MongoDBContainer starts a single node replica set, 4.4 because $currentOp lists idle cursors from 4.2 on.
+ */
+@Testcontainers
+class ProductChangeStreamIntegrationTest {
+
+    @Container
+    static final MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:4.4");
+
+    private static ConfigurableApplicationContext node1;
+    private static ConfigurableApplicationContext node2;
+
+    @BeforeAll
+    static void startNodes() {
+        node1 = startNode();
+        node2 = startNode();
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        node1.close();
+        node2.close();
+    }
+
+    private static ConfigurableApplicationContext startNode() {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(UnitIntegrationTestingApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.data.mongodb.uri=" + mongoDBContainer.getReplicaSetUrl(),
+                        "product.cache.enabled=true",
+                        "product.price-index.enabled=true",
+                        "product.change-stream.enabled=true",
+                        "product.change-stream.retry-delay=200ms")
+                .run();
+        ProductChangeStreamListener listener = context.getBean(ProductChangeStreamListener.class);
+        awaitTrue(listener::isWatching);
+        return context;
+    }
+
+    @Test
+    void updateOnOneNodeShouldRefreshTheOtherNode() throws Exception {
+        ProductService service1 = node1.getBean(ProductService.class);
+        ProductService service2 = node2.getBean(ProductService.class);
+        String id = service1.saveProduct(ProductRequest.builder().name("Laptop").price(1000.99).build()).getId();
+        // cached on node 2
+        assertEquals("Laptop", service2.findProductById(id).getName());
+
+        service1.updateProduct(id, ProductRequest.builder().name("Notebook").price(899.99).build());
+
+        awaitTrue(() -> service2.findProductById(id).getName().equals("Notebook"));
+        awaitTrue(() -> priceRange(service2, 899.99).getItems().size() == 1);
+        assertTrue(priceRange(service2, 1000.99).getItems().isEmpty());
+    }
+
+    @Test
+    void deleteOnOneNodeShouldEvictOnTheOtherNode() throws Exception {
+        ProductService service1 = node1.getBean(ProductService.class);
+        ProductService service2 = node2.getBean(ProductService.class);
+        ProductResponse saved = service2.saveProduct(ProductRequest.builder().name("Mouse").price(10.99).build());
+        service2.findProductById(saved.getId());
+
+        service1.deleteProductById(saved.getId());
+
+        awaitTrue(() -> {
+            try {
+                service2.findProductById(saved.getId());
+                return false;
+            } catch (ProductNotFoundException e) {
+                return true;
+            }
+        });
+    }
+
+    @Test
+    void listenerShouldWatchAgainAfterTheStreamFailed() throws Exception {
+        ProductChangeStreamListener listener = node2.getBean(ProductChangeStreamListener.class);
+        ProductService service1 = node1.getBean(ProductService.class);
+        ProductService service2 = node2.getBean(ProductService.class);
+        String id = service1.saveProduct(ProductRequest.builder().name("Keyboard").price(30).build()).getId();
+        service2.findProductById(id);
+
+        // kill every open change stream cursor, the listeners have to resume from their tokens
+        mongoDBContainer.execInContainer("mongo", "--quiet", "--eval",
+                "db.getSiblingDB('admin').aggregate([{$currentOp: {idleCursors: true}}, "
+                        + "{$match: {'cursor.originatingCommand.pipeline.0.$changeStream': {$exists: true}}}])"
+                        + ".forEach(function(op) { db.getSiblingDB(op.ns.split('.')[0]).runCommand("
+                        + "{killCursors: op.ns.split('.')[1], cursors: [op.cursor.cursorId]}); })");
+        service1.updateProduct(id, ProductRequest.builder().name("Keyboard Pro").price(35).build());
+
+        awaitTrue(() -> service2.findProductById(id).getName().equals("Keyboard Pro"));
+        awaitTrue(listener::isWatching);
+    }
+
+    private static ProductPage priceRange(ProductService productService, double price) {
+        return productService.findProductsByPrice(price, price, false, null, null);
+    }
+
+    private static void awaitTrue(Callable<Boolean> condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                if (condition.call()) {
+                    return;
+                }
+                Thread.sleep(50);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        fail("Condition not met within 20 seconds");
+    }
+}
@@ -0,0 +1,142 @@
+package com.cwc.Unit_Integration_Testing.controller;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+/*
+Runs against the embedded Tomcat, MockMvc does not go through its compression.
+The JDK client does not decompress, so the raw encoding can be checked.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ProductControllerCompressionTest {
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockitoBean
+    private ProductService productService;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    private List<ProductResponse> productResponses;
+
+    @BeforeEach
+    void setUp() {
+        productResponses = IntStream.range(0, 200)
+                .mapToObj(i -> ProductResponse.builder()
+                        .id("P-" + i)
+                        .name("Product " + i)
+                        .description("This is product number " + i + ".")
+                        .price(10 + i)
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void largeListShouldBeGzipped() throws Exception {
+        when(productService.findAllProducts(ProductFields.ALL)).thenReturn(productResponses);
+
+        HttpResponse<InputStream> response = get("/api/v1/product", "gzip");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse(null));
+        assertEquals(productResponses, read(new GZIPInputStream(response.body())));
+    }
+
+    @Test
+    void listShouldNotBeGzippedWithoutAcceptEncoding() throws Exception {
+        when(productService.findAllProducts(ProductFields.ALL)).thenReturn(productResponses);
+
+        HttpResponse<InputStream> response = get("/api/v1/product", "identity");
+
+        assertTrue(response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).isEmpty());
+        assertEquals(productResponses, read(response.body()));
+    }
+
+    @Test
+    void notModifiedListShouldStillWork() throws Exception {
+        when(productService.findAllProducts(ProductFields.ALL)).thenReturn(productResponses);
+        String etag = get("/api/v1/product", "gzip").headers().firstValue(HttpHeaders.ETAG).orElseThrow();
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/product"))
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .build();
+
+        assertTrue(etag.startsWith("W/"));
+        assertEquals(304, httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    void productWithStrongETagShouldNotBeGzipped() throws Exception {
+        ProductResponse product = productResponses.get(1);
+        product.setVersion(2L);
+        when(productService.findProductById("P-1")).thenReturn(product);
+
+        HttpResponse<InputStream> response = get("/api/v1/product/P-1", "gzip");
+
+        assertEquals(302, response.statusCode());
+        assertEquals("\"2\"", response.headers().firstValue(HttpHeaders.ETAG).orElse(null));
+        assertTrue(response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).isEmpty());
+    }
+
+    @Test
+    void streamedListShouldBeGzipped() throws Exception {
+        when(productService.streamAllProductDocuments()).thenAnswer(invocation -> productResponses.stream()
+                .map(product -> new RawBsonDocument(new BsonDocument("_id", new BsonString(product.getId()))
+                        .append("name", new BsonString(product.getName()))
+                        .append("description", new BsonString(product.getDescription()))
+                        .append("price", new BsonDouble(product.getPrice())), new BsonDocumentCodec())));
+
+        HttpResponse<InputStream> response = get("/api/v1/product/stream", "gzip");
+
+        assertEquals("gzip", response.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElse(null));
+        assertTrue(response.headers().firstValue(HttpHeaders.CONTENT_LENGTH).isEmpty());
+        assertEquals(productResponses, read(new GZIPInputStream(response.body())));
+    }
+
+    private HttpResponse<InputStream> get(String path, String acceptEncoding) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding)
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    private List<ProductResponse> read(InputStream body) throws IOException {
+        try (body) {
+            return objectMapper.readValue(body, new TypeReference<>() { });
+        }
+    }
+}
@@ -1,44 +1,83 @@
 package com.cwc.Unit_Integration_Testing.controller;
 
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductAggregates;
+import com.cwc.Unit_Integration_Testing.dto.ProductBatchResult;
+import com.cwc.Unit_Integration_Testing.dto.ProductBatchSummary;
+import com.cwc.Unit_Integration_Testing.dto.ProductDeleteSummary;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductLookupResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductLookupResult;
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
 import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
 import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductSearchPage;
 import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.exception.ProductBadRequestException;
 import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.exception.ProductVersionConflictException;
+import com.cwc.Unit_Integration_Testing.service.ProductBatchService;
 import com.cwc.Unit_Integration_Testing.service.ProductService;
 import com.cwc.Unit_Integration_Testing.util.AppUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletException;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(ProductController.class)
+@EnableConfigurationProperties(ProductProperties.class)
 class ProductControllerUnitTest {
     @Autowired
     private MockMvc mockMvc; // MockMmvc to test controller endpoints.
     @MockitoBean
     private ProductService productService;
+    @MockitoBean
+    private ProductBatchService productBatchService;
     private Product product1;
     private Product product2;
     ProductResponse productResponse;
     private ProductRequest productRequest;
 
     private ObjectMapper objectMapper;
+    private ObjectMapper cborMapper;
 
     private List<ProductResponse> productResponses;
 
@@ -71,15 +110,23 @@ class ProductControllerUnitTest {
         productResponses = List.of(AppUtil.convertToProductResponse(product1),
                 AppUtil.convertToProductResponse(product2));
         objectMapper = new ObjectMapper();
+        cborMapper = Jackson2ObjectMapperBuilder.cbor().build();
     }
 
     @AfterEach
     void tearDown() {
     }
 
+    private static RawBsonDocument document(Product product) {
+        return new RawBsonDocument(new BsonDocument("_id", new BsonString(product.getId()))
+                .append("name", new BsonString(product.getName()))
+                .append("description", new BsonString(product.getDescription()))
+                .append("price", new BsonDouble(product.getPrice())), new BsonDocumentCodec());
+    }
+
     @Test
     void testFindAllProducts_Found() throws Exception {
-        when(productService.findAllProducts()).thenReturn(productResponses);
+        when(productService.findAllProducts(ProductFields.ALL)).thenReturn(productResponses);
 
         mockMvc.perform(get("/api/v1/product"))
                 .andExpect(status().isOk())
@@ -87,11 +134,140 @@ class ProductControllerUnitTest {
     }
     @Test
     void testFindAllProducts_NotFound() throws Exception {
-        when(productService.findAllProducts()).thenThrow(ProductNotFoundException.class);
+        when(productService.findAllProducts(ProductFields.ALL)).thenThrow(ProductNotFoundException.class);
 
         mockMvc.perform(get("/api/v1/product"))
                 .andExpect(status().isNotFound());
     }
+    @Test
+    void testFindProductsByPrice() throws Exception {
+        when(productService.findProductsByPrice(10.0, 100.0, true, null, null, ProductFields.ALL)).thenReturn(ProductPage.builder()
+                .items(List.of(productResponses.get(1)))
+                .nextCursor("55.99_M-1001")
+                .build());
+
+        mockMvc.perform(get("/api/v1/product/price").param("min", "10").param("max", "100").param("sort", "desc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].name").value("Mouse"))
+                .andExpect(jsonPath("$.nextCursor").value("55.99_M-1001"));
+    }
+    @Test
+    void testFindProductsByPrice_BadRequest() throws Exception {
+        when(productService.findProductsByPrice(100.0, 10.0, false, null, null, ProductFields.ALL))
+                .thenThrow(new ProductBadRequestException("Minimum price 100.0 is greater than maximum price 10.0"));
+
+        mockMvc.perform(get("/api/v1/product/price").param("min", "100").param("max", "10"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Minimum price 100.0 is greater than maximum price 10.0"));
+        mockMvc.perform(get("/api/v1/product/price").param("sort", "cheapest"))
+                .andExpect(status().isBadRequest());
+    }
+    @Test
+    void testSearchProducts() throws Exception {
+        when(productService.searchProducts("dell", 0, 20, ProductFields.ALL)).thenReturn(ProductSearchPage.builder()
+                .items(productResponses)
+                .page(0)
+                .nextPage(1)
+                .build());
+
+        mockMvc.perform(get("/api/v1/product/search").param("q", "dell").param("page", "0").param("size", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.nextPage").value(1));
+    }
+    @Test
+    void testSearchProducts_MissingQuery() throws Exception {
+        mockMvc.perform(get("/api/v1/product/search"))
+                .andExpect(status().isBadRequest());
+    }
+    @Test
+    void testAutocompleteProducts() throws Exception {
+        when(productService.autocompleteProducts("Mo", null, ProductFields.ALL)).thenReturn(List.of(productResponses.get(1)));
+
+        mockMvc.perform(get("/api/v1/product/autocomplete").param("prefix", "Mo"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value("Mouse"));
+    }
+    @Test
+    void testFindProductPage() throws Exception {
+        when(productService.findProductPage("L-101", 1, ProductFields.ALL)).thenReturn(ProductPage.builder()
+                .items(List.of(productResponses.get(1)))
+                .nextCursor("M-1001")
+                .build());
+
+        mockMvc.perform(get("/api/v1/product/page").param("cursor", "L-101").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].id").value("M-1001"))
+                .andExpect(jsonPath("$.nextCursor").value("M-1001"));
+    }
+    @Test
+    void testFindProductPage_Fields() throws Exception {
+        when(productService.findProductPage(null, null, ProductFields.parse("id,price"))).thenReturn(ProductPage.builder()
+                .items(productResponses)
+                .nextCursor("M-1001")
+                .build());
+
+        mockMvc.perform(get("/api/v1/product/page").param("fields", "id,price"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].id").value("L-101"))
+                .andExpect(jsonPath("$.items[0].price").value(255.99))
+                .andExpect(jsonPath("$.items[0].name").doesNotExist())
+                .andExpect(jsonPath("$.items[1].description").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor").value("M-1001"));
+    }
+    @Test
+    void testFindProductPage_UnknownField() throws Exception {
+        mockMvc.perform(get("/api/v1/product/page").param("fields", "id,weight"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Bad Request"));
+    }
+
+    @Test
+    void testStreamAllProducts() throws Exception {
+        when(productService.streamAllProductDocuments()).thenReturn(Stream.of(document(product1), document(product2)));
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/product/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value("L-101"))
+                .andExpect(jsonPath("$[1].name").value("Mouse"));
+    }
+
+    @Test
+    void testStreamAllProducts_Cbor() throws Exception {
+        when(productService.streamAllProductDocuments()).thenReturn(Stream.of(document(product1), document(product2)));
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/product/stream").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        byte[] body = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        List<ProductResponse> products = cborMapper.readValue(body, new TypeReference<>() { });
+        assertEquals(productResponses, products);
+    }
+
+    @Test
+    void testStreamAllProducts_Empty() throws Exception {
+        when(productService.streamAllProductDocuments()).thenReturn(Stream.empty());
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/v1/product/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
     @Test
     void testFindProductById_Found() throws Exception {
         when(productService.findProductById("L-101")).thenReturn(productResponse);
@@ -104,6 +280,93 @@ class ProductControllerUnitTest {
                 .andExpect(jsonPath("$.price").value(255.99));
     }
     @Test
+    void testFindProductById_NotModified() throws Exception {
+        productResponse.setVersion(3L);
+        productResponse.setLastModified(Instant.parse("2024-05-01T10:00:00Z"));
+        when(productService.findProductById("L-101")).thenReturn(productResponse);
+
+        mockMvc.perform(get("/api/v1/product/L-101"))
+                .andExpect(status().isFound())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(header().string(HttpHeaders.LAST_MODIFIED, "Wed, 01 May 2024 10:00:00 GMT"))
+                .andExpect(jsonPath("$.version").doesNotExist());
+        mockMvc.perform(get("/api/v1/product/L-101").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/api/v1/product/L-101").header(HttpHeaders.IF_NONE_MATCH, "\"2\""))
+                .andExpect(status().isFound());
+    }
+    @Test
+    void testFindProductById_EtagPerRepresentation() throws Exception {
+        productResponse.setVersion(3L);
+        when(productService.findProductById("L-101")).thenReturn(productResponse);
+
+        mockMvc.perform(get("/api/v1/product/L-101").accept(MediaType.ALL))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT));
+        mockMvc.perform(get("/api/v1/product/L-101").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3-cbor\""));
+        mockMvc.perform(get("/api/v1/product/L-101").header(HttpHeaders.ACCEPT, "application/cbor;q=0.5, application/json"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+        mockMvc.perform(get("/api/v1/product/L-101").param("fields", "name,id"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3-id.name\""));
+        mockMvc.perform(get("/api/v1/product/L-101").param("fields", "id,name").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3-cbor-id.name\""));
+
+        // the JSON tag must not revalidate the CBOR a client asks for now
+        mockMvc.perform(get("/api/v1/product/L-101").accept(MediaType.APPLICATION_CBOR)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isFound());
+        mockMvc.perform(get("/api/v1/product/L-101").accept(MediaType.APPLICATION_CBOR)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3-cbor\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT));
+    }
+    @Test
+    void testFindAllProducts_NotModified() throws Exception {
+        when(productService.findAllProducts(ProductFields.ALL)).thenReturn(productResponses);
+
+        String etag = mockMvc.perform(get("/api/v1/product"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/api/v1/product").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        productResponses.get(0).setPrice(199.99);
+        mockMvc.perform(get("/api/v1/product").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+    @Test
+    void testFindProductById_Cbor() throws Exception {
+        when(productService.findProductById("L-101")).thenReturn(productResponse);
+
+        byte[] body = mockMvc.perform(get("/api/v1/product/L-101").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isFound())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(productResponse, cborMapper.readValue(body, ProductResponse.class));
+    }
+    @Test
+    void testFindProductById_Fields() throws Exception {
+        when(productService.findProductById("L-101")).thenReturn(productResponse);
+
+        mockMvc.perform(get("/api/v1/product/L-101").param("fields", "name"))
+                .andExpect(status().isFound())
+                .andExpect(jsonPath("$.name").value("Laptop"))
+                .andExpect(jsonPath("$.id").doesNotExist())
+                .andExpect(jsonPath("$.price").doesNotExist());
+        byte[] body = mockMvc.perform(get("/api/v1/product/L-101").param("fields", "id,name")
+                        .accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isFound())
+                .andReturn().getResponse().getContentAsByteArray();
+        List<String> fieldNames = new ArrayList<>();
+        cborMapper.readTree(body).fieldNames().forEachRemaining(fieldNames::add);
+        assertEquals(List.of("id", "name"), fieldNames);
+    }
+    @Test
     void testFindProductById_NotFound() throws Exception {
         when(productService.findProductById("L-101")).thenThrow(ProductNotFoundException.class);
 
@@ -111,6 +374,60 @@ class ProductControllerUnitTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void testFindProductsByIds() throws Exception {
+        when(productService.findProductsByIds(List.of("L-101", "X-1"))).thenReturn(ProductLookupResponse.builder()
+                .found(1)
+                .notFound(1)
+                .results(List.of(
+                        ProductLookupResult.builder().id("L-101").status(ProductLookupResult.Status.FOUND)
+                                .product(productResponse).build(),
+                        ProductLookupResult.builder().id("X-1").status(ProductLookupResult.Status.NOT_FOUND).build()))
+                .build());
+
+        mockMvc.perform(get("/api/v1/product/ids").param("ids", "L-101,X-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.found").value(1))
+                .andExpect(jsonPath("$.notFound").value(1))
+                .andExpect(jsonPath("$.results[0].status").value("FOUND"))
+                .andExpect(jsonPath("$.results[0].product.name").value("Laptop"))
+                .andExpect(jsonPath("$.results[1].id").value("X-1"))
+                .andExpect(jsonPath("$.results[1].status").value("NOT_FOUND"));
+    }
+    @Test
+    void testFindProductsByIds_TooMany() throws Exception {
+        when(productService.findProductsByIds(any())).thenThrow(new ProductBadRequestException("At most 500 ids"));
+
+        mockMvc.perform(get("/api/v1/product/ids").param("ids", "L-101,X-1"))
+                .andExpect(status().isBadRequest());
+    }
+    @Test
+    void testFindProductAggregates_OtherIllegalArgumentIsNoBadRequest() {
+        when(productService.findProductAggregates()).thenThrow(new IllegalArgumentException("not the client's fault"));
+
+        assertThrows(ServletException.class, () -> mockMvc.perform(get("/api/v1/product/aggregates")));
+    }
+    @Test
+    void testFindProductAggregates() throws Exception {
+        when(productService.findProductAggregates()).thenReturn(ProductAggregates.builder()
+                .count(2)
+                .minPrice(55.99)
+                .maxPrice(255.99)
+                .meanPrice(155.99)
+                .pricePercentiles(Map.of("p50", 55.99))
+                .priceHistogram(List.of(
+                        ProductAggregates.PriceBucket.builder().to(100.0).count(1).build(),
+                        ProductAggregates.PriceBucket.builder().from(100.0).count(1).build()))
+                .build());
+
+        mockMvc.perform(get("/api/v1/product/aggregates"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(2))
+                .andExpect(jsonPath("$.meanPrice").value(155.99))
+                .andExpect(jsonPath("$.pricePercentiles.p50").value(55.99))
+                .andExpect(jsonPath("$.priceHistogram[1].from").value(100.0))
+                .andExpect(jsonPath("$.priceHistogram[1].count").value(1));
+    }
     @Test
     void testFindProductByName_Found() throws Exception {
         when(productService.findProductByName("Laptop")).thenReturn(productResponse);
@@ -129,6 +446,17 @@ class ProductControllerUnitTest {
         mockMvc.perform(get("/api/v1/product/name/Laptop"))
                 .andExpect(status().isNotFound());
     }
+    @Test
+    void testFindProductById_NotFoundBody() throws Exception {
+        when(productService.findProductById("X-1")).thenThrow(ProductNotFoundException.forId("X-1"));
+
+        mockMvc.perform(get("/api/v1/product/X-1"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.error").value("Product Not Found"))
+                .andExpect(jsonPath("$.message").value("Product with id X-1 not found"))
+                .andExpect(jsonPath("$.status").value("404 NOT_FOUND"))
+                .andExpect(jsonPath("$.timeStamp").isNotEmpty());
+    }
 
     @Test
     void testSaveProduct() throws Exception {
@@ -142,6 +470,81 @@ class ProductControllerUnitTest {
                 .andExpect(jsonPath("$.name").value("Laptop"));
     }
 
+    private void answerSaveProducts(List<ProductRequest> received) {
+        when(productBatchService.saveProducts(any(), any())).thenAnswer(invocation -> {
+            Iterator<ProductRequest> productRequests = invocation.getArgument(0);
+            Consumer<List<ProductBatchResult>> results = invocation.getArgument(1);
+            productRequests.forEachRemaining(productRequest -> {
+                results.accept(List.of(ProductBatchResult.builder().index(received.size())
+                        .id(productRequest.getId()).status(ProductBatchResult.Status.CREATED).build()));
+                received.add(productRequest);
+            });
+            return ProductBatchSummary.builder().created(received.size()).build();
+        });
+    }
+
+    @Test
+    void testSaveProducts_JsonArray() throws Exception {
+        List<ProductRequest> received = new ArrayList<>();
+        answerSaveProducts(received);
+        String body = objectMapper.writeValueAsString(List.of(productRequest, productRequest));
+
+        MvcResult mvcResult = mockMvc.perform(post("/api/v1/product/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results.length()").value(2))
+                .andExpect(jsonPath("$.results[1].index").value(1))
+                .andExpect(jsonPath("$.results[1].status").value("CREATED"))
+                .andExpect(jsonPath("$.created").value(2))
+                .andExpect(jsonPath("$.failed").value(0));
+        assertEquals(productRequest, received.get(1));
+    }
+
+    @Test
+    void testSaveProducts_Cbor() throws Exception {
+        List<ProductRequest> received = new ArrayList<>();
+        answerSaveProducts(received);
+
+        MvcResult mvcResult = mockMvc.perform(post("/api/v1/product/batch")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .accept(MediaType.APPLICATION_CBOR)
+                        .content(cborMapper.writeValueAsBytes(List.of(productRequest, productRequest))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        byte[] body = mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(2, cborMapper.readTree(body).get("created").asInt());
+        assertEquals(2, cborMapper.readTree(body).get("results").size());
+        assertEquals(productRequest, received.get(1));
+    }
+
+    @Test
+    void testSaveProducts_Ndjson() throws Exception {
+        List<ProductRequest> received = new ArrayList<>();
+        answerSaveProducts(received);
+        String body = objectMapper.writeValueAsString(productRequest) + "\n"
+                + "{\"id\":\"M-1001\",\"name\":\"Mouse\",\"price\":55.99}\n";
+
+        MvcResult mvcResult = mockMvc.perform(post("/api/v1/product/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[1].id").value("M-1001"))
+                .andExpect(jsonPath("$.created").value(2));
+        assertEquals("M-1001", received.get(1).getId());
+    }
 
     @Test
     void testUpdateProduct_Found() throws Exception {
@@ -159,7 +562,7 @@ class ProductControllerUnitTest {
         String productRequestJsonString = objectMapper.writeValueAsString(updatedProductRequest);
 
         // Mock the service behavior
-        when(productService.updateProduct("L-101", updatedProductRequest)).thenReturn(updatedProductResponse);
+        when(productService.updateProduct("L-101", updatedProductRequest, null)).thenReturn(updatedProductResponse);
 
         // Perform the request with corrected Content-Type and body
         mockMvc.perform(put("/api/v1/product/update/L-101")
@@ -169,6 +572,54 @@ class ProductControllerUnitTest {
                 .andExpect(jsonPath("$.description").value("This is updated product."));
     }
 
+    @Test
+    void testUpdateProduct_IfMatch() throws Exception {
+        ProductResponse updatedProductResponse = ProductResponse.builder()
+                .id("L-101")
+                .name("Laptop")
+                .price(255.99)
+                .version(4L)
+                .build();
+        when(productService.updateProduct("L-101", productRequest, 3L)).thenReturn(updatedProductResponse);
+
+        mockMvc.perform(put("/api/v1/product/update/L-101")
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(productRequest)))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+    }
+    @Test
+    void testUpdateProduct_IfMatchOfAnotherRepresentation() throws Exception {
+        ProductResponse updatedProductResponse = ProductResponse.builder()
+                .id("L-101")
+                .version(4L)
+                .build();
+        when(productService.updateProduct("L-101", productRequest, 3L)).thenReturn(updatedProductResponse);
+
+        mockMvc.perform(put("/api/v1/product/update/L-101")
+                        .header(HttpHeaders.IF_MATCH, "\"3-cbor-id.name\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(productRequest)))
+                .andExpect(status().isCreated());
+    }
+    @Test
+    void testUpdateProduct_PreconditionFailed() throws Exception {
+        when(productService.updateProduct("L-101", productRequest, 3L))
+                .thenThrow(new ProductVersionConflictException("Product with id L-101 is no longer at version 3"));
+
+        mockMvc.perform(put("/api/v1/product/update/L-101")
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(productRequest)))
+                .andExpect(status().isPreconditionFailed());
+        mockMvc.perform(put("/api/v1/product/update/L-101")
+                        .header(HttpHeaders.IF_MATCH, "W/\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(productRequest)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
 //    @Test
 //    void testDeleteProductById() throws Exception {
 //        doNothing().when(productService.deleteProductById("1"));
@@ -191,4 +642,38 @@ class ProductControllerUnitTest {
         mockMvc.perform(delete("/api/v1/product/all"))
                 .andExpect(status().isNoContent());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testDeleteAllProductsInBatches() throws Exception {
+        when(productService.deleteAllProductsInBatches(any())).thenReturn(ProductDeleteSummary.builder()
+                .deleted(2)
+                .batches(1)
+                .build());
+
+        mockMvc.perform(delete("/api/v1/product/all/batched"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(2))
+                .andExpect(jsonPath("$.batches").value(1));
+    }
+
+    @Test
+    void testDeleteAllProductsInBatchesWithIds() throws Exception {
+        when(productService.deleteAllProductsInBatches(any())).thenAnswer(invocation -> {
+            Consumer<List<String>> deletedIds = invocation.getArgument(0);
+            deletedIds.accept(List.of("L-101", "M-1001"));
+            deletedIds.accept(List.of("N-1"));
+            return ProductDeleteSummary.builder().deleted(3).batches(2).build();
+        });
+
+        MvcResult mvcResult = mockMvc.perform(delete("/api/v1/product/all/batched/ids"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.ids.length()").value(3))
+                .andExpect(jsonPath("$.ids[2]").value("N-1"))
+                .andExpect(jsonPath("$.deleted").value(3))
+                .andExpect(jsonPath("$.batches").value(2));
+    }
+}
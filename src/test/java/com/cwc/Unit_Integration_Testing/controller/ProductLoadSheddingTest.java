@@ -0,0 +1,94 @@
+package com.cwc.Unit_Integration_Testing.controller;
+
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
+import com.cwc.Unit_Integration_Testing.dto.ProductSearchPage;
+import com.cwc.Unit_Integration_Testing.service.ProductBatchService;
+import com.cwc.Unit_Integration_Testing.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// rates low enough that no token comes back while a test runs
+@WebMvcTest(ProductController.class)
+@EnableConfigurationProperties(ProductProperties.class)
+@TestPropertySource(properties = {
+        "product.rate-limit.enabled=true",
+        "product.rate-limit.client-header=X-Api-Key",
+        "product.rate-limit.client.rate=0.01",
+        "product.rate-limit.client.burst=2",
+        "product.rate-limit.global.rate=0.01",
+        "product.rate-limit.global.burst=100",
+        "product.rate-limit.endpoints.findAllProducts.global.rate=0.01",
+        "product.rate-limit.endpoints.findAllProducts.global.burst=1",
+        "product.rate-limit.endpoints.searchProducts.global.rate=0.01",
+        "product.rate-limit.endpoints.searchProducts.global.burst=1",
+})
+class ProductLoadSheddingTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @MockitoBean
+    private ProductService productService;
+    @MockitoBean
+    private ProductBatchService productBatchService;
+
+    @Test
+    void clientOverItsRateShouldGetTooManyRequestsWithRetryAfter() throws Exception {
+        when(productService.findProductPage(isNull(), any(), any(ProductFields.class)))
+                .thenReturn(ProductPage.builder().items(List.of()).build());
+
+        mockMvc.perform(get("/api/v1/product/page").header("X-Api-Key", "a")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/product/page").header("X-Api-Key", "a")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/product/page").header("X-Api-Key", "a"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"))
+                .andExpect(jsonPath("$.error").value("Too Many Requests"));
+        // another client has its own bucket
+        mockMvc.perform(get("/api/v1/product/page").header("X-Api-Key", "b")).andExpect(status().isOk());
+    }
+
+    @Test
+    void endpointShouldBeLimitedSeparately() throws Exception {
+        when(productService.findAllProducts(any(ProductFields.class))).thenReturn(List.of());
+        when(productService.findProductPage(isNull(), any(), any(ProductFields.class)))
+                .thenReturn(ProductPage.builder().items(List.of()).build());
+
+        mockMvc.perform(get("/api/v1/product").header("X-Api-Key", "c")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/product").header("X-Api-Key", "d")).andExpect(status().isTooManyRequests());
+        // the other endpoints are still open
+        mockMvc.perform(get("/api/v1/product/page").header("X-Api-Key", "d")).andExpect(status().isOk());
+    }
+
+    @Test
+    void rejectedRequestShouldGiveBackTheTokensItTook() throws Exception {
+        when(productService.searchProducts(any(), any(), any(), any(ProductFields.class)))
+                .thenReturn(ProductSearchPage.builder().items(List.of()).build());
+        when(productService.findProductPage(isNull(), any(), any(ProductFields.class)))
+                .thenReturn(ProductPage.builder().items(List.of()).build());
+
+        mockMvc.perform(get("/api/v1/product/search").param("q", "dell").header("X-Api-Key", "e"))
+                .andExpect(status().isOk());
+        // passes the client limit, then is over the endpoint limit
+        mockMvc.perform(get("/api/v1/product/search").param("q", "dell").header("X-Api-Key", "e"))
+                .andExpect(status().isTooManyRequests());
+        // so the client still has the second token of its burst
+        mockMvc.perform(get("/api/v1/product/page").header("X-Api-Key", "e")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/product/page").header("X-Api-Key", "e")).andExpect(status().isTooManyRequests());
+    }
+}
@@ -0,0 +1,144 @@
+package com.cwc.Unit_Integration_Testing.controller;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.service.ReactiveProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(ReactiveProductController.class)
+class ReactiveProductControllerUnitTest {
+    @Autowired
+    private WebTestClient webTestClient;
+    @MockitoBean
+    private ReactiveProductService reactiveProductService;
+
+    private ProductResponse laptop;
+    private ProductResponse mouse;
+    private ProductRequest productRequest;
+
+    @BeforeEach
+    void setUp() {
+        laptop = ProductResponse.builder()
+                .id("L-101")
+                .name("Laptop")
+                .description("This is a dell laptop.")
+                .price(255.99)
+                .build();
+        mouse = ProductResponse.builder()
+                .id("M-1001")
+                .name("Mouse")
+                .description("This is wireless mouse.")
+                .price(55.99)
+                .build();
+        productRequest = ProductRequest.builder()
+                .name("Laptop")
+                .description("This is a dell laptop.")
+                .price(255.99)
+                .build();
+    }
+
+    @Test
+    void testFindAllProducts_Found() {
+        when(reactiveProductService.findAllProducts()).thenReturn(Flux.just(laptop, mouse));
+
+        webTestClient.get().uri("/api/v1/product")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].name").isEqualTo("Mouse");
+    }
+
+    @Test
+    void testFindAllProducts_NotFound() {
+        when(reactiveProductService.findAllProducts())
+                .thenReturn(Flux.error(new ProductNotFoundException("There is no product in the database")));
+
+        webTestClient.get().uri("/api/v1/product")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("There is no product in the database");
+    }
+
+    @Test
+    void testStreamAllProducts_Ndjson() {
+        when(reactiveProductService.streamAllProducts()).thenReturn(Flux.just(laptop, mouse));
+
+        webTestClient.get().uri("/api/v1/product/stream")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ProductResponse.class)
+                .hasSize(2)
+                .contains(laptop, mouse);
+    }
+
+    @Test
+    void testFindProductById_Found() {
+        when(reactiveProductService.findProductById("L-101")).thenReturn(Mono.just(laptop));
+
+        webTestClient.get().uri("/api/v1/product/L-101")
+                .exchange()
+                .expectStatus().isFound()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("L-101")
+                .jsonPath("$.price").isEqualTo(255.99);
+    }
+
+    @Test
+    void testFindProductByName_NotFound() {
+        when(reactiveProductService.findProductByName("Laptop"))
+                .thenReturn(Mono.error(new ProductNotFoundException("Product with name Laptop not found")));
+
+        webTestClient.get().uri("/api/v1/product/name/Laptop")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void testSaveProduct() {
+        when(reactiveProductService.saveProduct(any(ProductRequest.class))).thenReturn(Mono.just(laptop));
+
+        webTestClient.post().uri("/api/v1/product")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(productRequest)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Laptop");
+    }
+
+    @Test
+    void testUpdateProduct_NotFound() {
+        when(reactiveProductService.updateProduct("L-101", productRequest))
+                .thenReturn(Mono.error(new ProductNotFoundException("Product with id L-101 not found")));
+
+        webTestClient.put().uri("/api/v1/product/update/L-101")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(productRequest)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void testDeleteProductById() {
+        when(reactiveProductService.deleteProductById("L-101")).thenReturn(Mono.just(laptop));
+
+        webTestClient.delete().uri("/api/v1/product/L-101")
+                .exchange()
+                .expectStatus().isNoContent();
+    }
+}
@@ -0,0 +1,179 @@
+package com.cwc.Unit_Integration_Testing.repository;
+
+import com.cwc.Unit_Integration_Testing.config.ProductIndexInitializer;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+Every query a repository method sends is captured from the Mongo driver and explained again, so a new
+query method that is not backed by an index fails here instead of doing collection scans in production.
+findAll, streamAllDocuments and deleteAll read the whole collection on purpose and are not checked.
+ */
+@SpringBootTest
+@Testcontainers
+class ProductRepositoryQueryPlanIntegrationTest {
+
+    @Container
+    static final MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:4.0.10");
+
+    private static final Set<String> QUERY_COMMANDS = Set.of("find", "findAndModify", "update", "delete", "count");
+
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    @Autowired
+    private ReactiveProductRepository reactiveProductRepository;
+    @Autowired
+    private CommandCapture commandCapture;
+    @Autowired
+    private ProductIndexInitializer productIndexInitializer;
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
+    }
+
+    @TestConfiguration
+    static class CommandCaptureConfig {
+        @Bean
+        CommandCapture commandCapture() {
+            return new CommandCapture();
+        }
+
+        @Bean
+        MongoClientSettingsBuilderCustomizer commandCaptureCustomizer(CommandCapture commandCapture) {
+            return builder -> builder.addCommandListener(commandCapture);
+        }
+    }
+
+    static class CommandCapture implements CommandListener {
+        private final List<BsonDocument> commands = new CopyOnWriteArrayList<>();
+        private volatile boolean recording;
+
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            if (recording && QUERY_COMMANDS.contains(event.getCommandName())) {
+                // the event document is only valid while the listener runs
+                commands.add(event.getCommand().clone());
+            }
+        }
+
+        List<BsonDocument> record(Runnable queries) {
+            commands.clear();
+            recording = true;
+            try {
+                queries.run();
+            } finally {
+                recording = false;
+            }
+            return new ArrayList<>(commands);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        // the application creates them in the background, make sure they exist before explaining
+        productIndexInitializer.createIndexes();
+    }
+
+    @AfterEach
+    void tearDown() {
+        productRepository.deleteAll();
+    }
+
+    @Test
+    void repositoryQueriesShouldUseAnIndex() {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            products.add(Product.builder().name("Product " + i).description("Description " + i).price(i + 1).build());
+        }
+        productRepository.saveAll(products);
+        String id = products.get(0).getId();
+
+        List<BsonDocument> commands = commandCapture.record(() -> {
+            productRepository.findByName("Product 3");
+            productRepository.findById(id);
+            productRepository.existsById(id);
+            productRepository.findAllByOrderByIdAsc(Limit.of(5));
+            productRepository.findPage(id, 5, ProductFields.ALL);
+            // a string id as left by batches before their ids were checked
+            productRepository.findPage("legacy-1", 5, ProductFields.ALL);
+            productRepository.findAndUpdateById(Product.builder().id(id).name("Replaced").price(1).build(), null);
+            productRepository.findAndDeleteById(id);
+            productRepository.searchText("product", 0, 5);
+            productRepository.findByNamePrefix("Product 1", 5);
+            productRepository.findByPriceRange(2, 10, null, null, false, 5);
+            productRepository.findByPriceRange(2, 10, 5.0, id, true, 5);
+            productRepository.findIds(null, 5);
+            productRepository.deleteByIds(productRepository.findIds(id, 5));
+            reactiveProductRepository.findByName("Product 4").block();
+            reactiveProductRepository.findPage(id, 5).collectList().block();
+        });
+
+        assertThat(commands).hasSizeGreaterThanOrEqualTo(16);
+        for (BsonDocument command : commands) {
+            List<String> stages = winningPlanStages(command);
+            assertThat(stages)
+                    .as("plan of %s", command.toJson())
+                    .doesNotContain("COLLSCAN")
+                    .containsAnyOf("IXSCAN", "IDHACK");
+        }
+    }
+
+    private List<String> winningPlanStages(BsonDocument command) {
+        BsonDocument explainable = new BsonDocument();
+        command.forEach((key, value) -> {
+            // session and cluster fields are added by the driver and are not accepted inside explain
+            if (!key.startsWith("$") && !key.equals("lsid") && !key.equals("txnNumber")) {
+                explainable.put(key, value);
+            }
+        });
+        Document explain = mongoTemplate.getDb().runCommand(new BsonDocument("explain", explainable)
+                .append("verbosity", new BsonString("queryPlanner")));
+        Document queryPlanner = explain.get("queryPlanner", Document.class);
+        List<String> stages = new ArrayList<>();
+        collectStages(queryPlanner.get("winningPlan", Document.class), stages);
+        return stages;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectStages(Document plan, List<String> stages) {
+        if (plan == null) {
+            return;
+        }
+        stages.add(plan.getString("stage"));
+        collectStages(plan.get("inputStage", Document.class), stages);
+        List<Document> inputStages = (List<Document>) plan.get("inputStages");
+        if (inputStages != null) {
+            inputStages.forEach(stage -> collectStages(stage, stages));
+        }
+    }
+}
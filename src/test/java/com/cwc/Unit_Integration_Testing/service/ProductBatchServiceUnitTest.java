@@ -0,0 +1,239 @@
+package com.cwc.Unit_Integration_Testing.service;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductCache;
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductBatchResult;
+import com.cwc.Unit_Integration_Testing.dto.ProductBatchSummary;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import jakarta.validation.Validation;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class ProductBatchServiceUnitTest {
+    @Mock
+    ProductRepository productRepository;
+    @Mock
+    ProductWriteBehindBuffer productWriteBehindBuffer;
+
+    ProductBatchService productBatchService;
+    private final List<List<ProductBatchResult>> chunks = new ArrayList<>();
+    private final List<ProductBatchResult> results = new ArrayList<>();
+
+    private static final String MOUSE_ID = "65a000000000000000000002";
+    private static final String KEYBOARD_ID = "65a000000000000000000003";
+
+    private ProductRequest laptop;
+    private ProductRequest mouse;
+    private ProductRequest keyboard;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getBatch().setChunkSize(2);
+        productProperties.getCache().setEnabled(false);
+        productBatchService = new ProductBatchService(productRepository, productProperties,
+                new ProductCache(productProperties), new ProductPriceIndex(productProperties), productWriteBehindBuffer,
+                Validation.buildDefaultValidatorFactory().getValidator());
+
+        laptop = ProductRequest.builder().name("Laptop").description("This is a dell laptop.").price(255.99).build();
+        mouse = ProductRequest.builder().id(MOUSE_ID).name("Mouse").price(55.99).build();
+        keyboard = ProductRequest.builder().id(KEYBOARD_ID).name("Keyboard").price(30).build();
+    }
+
+    private static BulkWriteResult acknowledged(List<BulkWriteUpsert> upserts) {
+        return BulkWriteResult.acknowledged(0, 0, 0, 0, upserts, List.of());
+    }
+
+    private ProductBatchSummary saveProducts(Iterator<ProductRequest> productRequests) {
+        return productBatchService.saveProducts(productRequests, chunk -> {
+            chunks.add(chunk);
+            results.addAll(chunk);
+        });
+    }
+
+    @Test
+    void saveProductsShouldWriteInChunks() {
+        when(productRepository.bulkUpsert(anyList())).thenAnswer(invocation -> {
+            List<Product> products = invocation.getArgument(0);
+            products.stream().filter(p -> p.getId() == null).forEach(p -> p.setId("generated"));
+            return acknowledged(List.of());
+        });
+
+        ProductBatchSummary response = saveProducts(List.of(laptop, mouse, keyboard).iterator());
+
+        assertEquals(1, response.getCreated());
+        assertEquals(2, response.getUpdated());
+        assertEquals(0, response.getFailed());
+        assertEquals("generated", results.get(0).getId());
+        assertEquals(ProductBatchResult.Status.UPDATED, results.get(1).getStatus());
+        verify(productRepository, times(2)).bulkUpsert(anyList());
+    }
+
+    @Test
+    void saveProductsShouldReportUpsertsAsCreated() {
+        when(productRepository.bulkUpsert(anyList()))
+                .thenReturn(acknowledged(List.of(new BulkWriteUpsert(1, new BsonObjectId(new ObjectId(KEYBOARD_ID))))));
+
+        ProductBatchSummary response = saveProducts(List.of(mouse, keyboard).iterator());
+
+        assertEquals(ProductBatchResult.Status.UPDATED, results.get(0).getStatus());
+        assertEquals(ProductBatchResult.Status.CREATED, results.get(1).getStatus());
+        assertEquals(KEYBOARD_ID, results.get(1).getId());
+    }
+
+    @Test
+    void invalidProductsShouldFailWithoutBeingWritten() {
+        ProductRequest invalid = ProductRequest.builder().name("").price(-1).build();
+        when(productRepository.bulkUpsert(anyList())).thenReturn(acknowledged(List.of()));
+
+        ProductBatchSummary response = saveProducts(List.of(invalid, mouse).iterator());
+
+        assertEquals(1, response.getFailed());
+        ProductBatchResult failed = results.get(0);
+        assertEquals(0, failed.getIndex());
+        assertEquals(ProductBatchResult.Status.FAILED, failed.getStatus());
+        assertEquals("Name is mandatory, Price must be positive", failed.getError());
+        verify(productRepository, times(1)).bulkUpsert(argThat(products -> products.size() == 1));
+    }
+
+    @Test
+    void idsThatAreNotObjectIdsShouldFail() {
+        ProductRequest stringId = ProductRequest.builder().id("K-1").name("Keyboard").price(30).build();
+        ProductRequest upperCaseId = ProductRequest.builder().id(MOUSE_ID.toUpperCase()).name("Mouse").price(55.99).build();
+        when(productRepository.bulkUpsert(anyList())).thenAnswer(invocation -> {
+            List<Product> products = invocation.getArgument(0);
+            products.stream().filter(p -> p.getId() == null).forEach(p -> p.setId(new ObjectId().toHexString()));
+            return acknowledged(List.of());
+        });
+
+        ProductBatchSummary response = saveProducts(List.of(laptop, stringId, upperCaseId).iterator());
+
+        assertEquals(1, response.getCreated());
+        assertEquals(1, response.getUpdated());
+        assertEquals(1, response.getFailed());
+        assertTrue(ObjectId.isValid(results.get(0).getId()));
+        assertEquals(ProductBatchResult.Status.FAILED, results.get(1).getStatus());
+        assertEquals("K-1", results.get(1).getId());
+        assertEquals("Id must be an ObjectId of 24 hex digits", results.get(1).getError());
+        // stored as Mongo stores it
+        assertEquals(MOUSE_ID, results.get(2).getId());
+        verify(productRepository, never()).bulkUpsert(argThat(products -> products.stream()
+                .anyMatch(product -> "K-1".equals(product.getId()))));
+    }
+
+    @Test
+    void resultsShouldBePassedOnPerChunkInRequestOrder() {
+        ProductRequest invalid = ProductRequest.builder().name("").price(1).build();
+        when(productRepository.bulkUpsert(anyList())).thenReturn(acknowledged(List.of()));
+
+        ProductBatchSummary response = saveProducts(List.of(mouse, invalid, keyboard, invalid, invalid).iterator());
+
+        assertEquals(2, response.getUpdated());
+        assertEquals(3, response.getFailed());
+        // failures take room in a chunk like products do
+        assertEquals(List.of(2, 2, 1), chunks.stream().map(List::size).toList());
+        assertEquals(List.of(0, 1, 2, 3, 4), results.stream().map(ProductBatchResult::getIndex).toList());
+        verify(productRepository, times(2)).bulkUpsert(argThat(products -> products.size() == 1));
+    }
+
+    @Test
+    void pendingWritesOfReplacedProductsShouldBeDroppedFirst() {
+        when(productWriteBehindBuffer.isEnabled()).thenReturn(true);
+        when(productRepository.bulkUpsert(anyList())).thenReturn(acknowledged(List.of()));
+
+        saveProducts(List.of(laptop, mouse).iterator());
+
+        InOrder inOrder = inOrder(productWriteBehindBuffer, productRepository);
+        inOrder.verify(productWriteBehindBuffer).discard(MOUSE_ID);
+        inOrder.verify(productRepository).bulkUpsert(anyList());
+        verify(productWriteBehindBuffer, times(1)).discard(any());
+    }
+
+    @Test
+    void writtenPricesShouldBeIndexedWithTheirStoredVersion() {
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getPriceIndex().setEnabled(true);
+        ProductPriceIndex priceIndex = new ProductPriceIndex(productProperties);
+        // a later update of the mouse was indexed before the batch got to it
+        priceIndex.put(MOUSE_ID, 70, 5L);
+        productBatchService = new ProductBatchService(productRepository, productProperties,
+                new ProductCache(productProperties), priceIndex, productWriteBehindBuffer,
+                Validation.buildDefaultValidatorFactory().getValidator());
+        when(productRepository.bulkUpsert(anyList())).thenReturn(acknowledged(List.of()));
+        when(productRepository.findAllById(List.of(MOUSE_ID, KEYBOARD_ID), ProductFields.ID)).thenReturn(List.of(
+                Product.builder().id(MOUSE_ID).price(70).version(5L).build(),
+                Product.builder().id(KEYBOARD_ID).price(30).version(2L).build()));
+
+        saveProducts(List.of(mouse, keyboard).iterator());
+
+        assertEquals(List.of(new ProductPriceIndex.PriceEntry(30, KEYBOARD_ID), new ProductPriceIndex.PriceEntry(70, MOUSE_ID)),
+                priceIndex.findRange(0, 1000, null, false, 10));
+    }
+
+    @Test
+    void writeErrorsShouldOnlyFailTheirItem() {
+        BulkWriteError duplicate = new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1);
+        MongoBulkWriteException exception = new MongoBulkWriteException(acknowledged(List.of()),
+                List.of(duplicate), null, new ServerAddress(), Set.of());
+        when(productRepository.bulkUpsert(anyList()))
+                .thenThrow(new org.springframework.data.mongodb.BulkOperationException("bulk failed", exception));
+
+        ProductBatchSummary response = saveProducts(List.of(mouse, keyboard).iterator());
+
+        assertEquals(1, response.getUpdated());
+        assertEquals(1, response.getFailed());
+        assertEquals("duplicate key", results.get(1).getError());
+    }
+
+    @Test
+    void unreadableItemShouldStopTheBatch() {
+        when(productRepository.bulkUpsert(anyList())).thenReturn(acknowledged(List.of()));
+        Iterator<ProductRequest> productRequests = new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public ProductRequest next() {
+                if (next++ == 0) {
+                    return mouse;
+                }
+                throw new IllegalStateException("Unexpected character");
+            }
+        };
+
+        ProductBatchSummary response = saveProducts(productRequests);
+
+        assertEquals(2, results.size());
+        assertEquals(ProductBatchResult.Status.UPDATED, results.get(0).getStatus());
+        assertEquals(ProductBatchResult.Status.FAILED, results.get(1).getStatus());
+    }
+}
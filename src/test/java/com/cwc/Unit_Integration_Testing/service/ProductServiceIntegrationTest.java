@@ -1,20 +1,42 @@
 package com.cwc.Unit_Integration_Testing.service;
 
+import com.cwc.Unit_Integration_Testing.config.ProductIndexInitializer;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductAggregates;
+import com.cwc.Unit_Integration_Testing.dto.ProductBatchResult;
+import com.cwc.Unit_Integration_Testing.dto.ProductBatchSummary;
+import com.cwc.Unit_Integration_Testing.dto.ProductDeleteSummary;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductLookupResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductLookupResult;
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
 import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
 import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductSearchPage;
 import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.exception.ProductVersionConflictException;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -39,6 +61,14 @@ class ProductServiceIntegrationTest {
 
     @Autowired
     private ProductService productService;
+    @Autowired
+    private ProductBatchService productBatchService;
+    @Autowired
+    private ProductIndexInitializer productIndexInitializer;
+    @Autowired
+    private ProductProperties productProperties;
+    @Autowired
+    private MongoTemplate mongoTemplate;
 
     @BeforeAll
     public static void beforeAllSetUp() {
@@ -106,6 +136,79 @@ class ProductServiceIntegrationTest {
         );
     }
 
+    @Test
+    void testFindProductPage() throws ProductNotFoundException {
+        ProductResponse first = productService.saveProduct(productRequest1);
+        ProductResponse second = productService.saveProduct(productRequest2);
+
+        ProductPage firstPage = productService.findProductPage(null, 1);
+        assertThat(firstPage.getItems().size()).isEqualTo(1);
+        assertThat(firstPage.getItems().get(0).getId()).isEqualTo(first.getId());
+        assertThat(firstPage.getNextCursor()).isEqualTo(first.getId());
+
+        ProductPage secondPage = productService.findProductPage(firstPage.getNextCursor(), 1);
+        assertThat(secondPage.getItems().size()).isEqualTo(1);
+        assertThat(secondPage.getItems().get(0).getId()).isEqualTo(second.getId());
+        assertThat(secondPage.getNextCursor()).isNull();
+    }
+
+    @Test
+    void findProductPageShouldContinueFromStringIdsToObjectIds() {
+        insertWithStringId("legacy-1", "Cable");
+        ProductResponse saved = productService.saveProduct(productRequest1);
+
+        ProductPage firstPage = productService.findProductPage(null, 1);
+        assertThat(firstPage.getNextCursor()).isEqualTo("legacy-1");
+
+        ProductPage secondPage = productService.findProductPage(firstPage.getNextCursor(), 1);
+        assertThat(secondPage.getItems().size()).isEqualTo(1);
+        assertThat(secondPage.getItems().get(0).getId()).isEqualTo(saved.getId());
+        assertThat(secondPage.getNextCursor()).isNull();
+    }
+
+    @Test
+    void testFindProductPageWithFields() throws ProductNotFoundException {
+        ProductResponse first = productService.saveProduct(productRequest1);
+        productService.saveProduct(productRequest2);
+
+        ProductPage page = productService.findProductPage(null, 1, ProductFields.parse("id,name"));
+
+        ProductResponse item = page.getItems().get(0);
+        assertThat(item.getId()).isEqualTo(first.getId());
+        assertThat(item.getName()).isEqualTo("Laptop");
+        assertThat(item.getDescription()).isNull();
+        // read for the ETag even when it is not asked for
+        assertThat(item.getVersion()).isEqualTo(0L);
+        assertThat(page.getNextCursor()).isEqualTo(first.getId());
+    }
+
+    @Test
+    void testFindProductAggregates() {
+        productService.saveProduct(productRequest1);
+        productService.saveProduct(productRequest2);
+
+        // without the price index these come from the Mongo aggregation
+        ProductAggregates aggregates = productService.findProductAggregates();
+
+        assertThat(aggregates.getCount()).isEqualTo(2L);
+        assertThat(aggregates.getMinPrice()).isEqualTo(10.99);
+        assertThat(aggregates.getMaxPrice()).isEqualTo(1000.99);
+        assertEquals(505.99, aggregates.getMeanPrice(), 1e-9);
+        assertThat(aggregates.getPriceHistogram().stream().map(ProductAggregates.PriceBucket::getCount).toList())
+                .isEqualTo(List.of(0L, 1L, 0L, 0L, 0L, 0L, 0L, 1L, 0L, 0L));
+    }
+
+    @Test
+    void testStreamAllProducts() {
+        productService.saveProduct(productRequest1);
+        productService.saveProduct(productRequest2);
+
+        try (Stream<RawBsonDocument> products = productService.streamAllProductDocuments()) {
+            assertThat(products.map(document -> document.getString("name").getValue()).collect(Collectors.toList()))
+                    .isEqualTo(List.of("Laptop", "Mouse"));
+        }
+    }
+
     @Test
     void testFindProductById() throws ProductNotFoundException {
         ProductResponse productResponse = productService.saveProduct(productRequest1);
@@ -122,6 +225,23 @@ class ProductServiceIntegrationTest {
                 () -> productService.findProductById("ttt"));
     }
 
+    @Test
+    void testFindProductsByIds() {
+        ProductResponse laptop = productService.saveProduct(productRequest1);
+        ProductResponse mouse = productService.saveProduct(productRequest2);
+
+        ProductLookupResponse lookup = productService.findProductsByIds(List.of(mouse.getId(), "ttt", laptop.getId()));
+
+        assertThat(lookup.getFound()).isEqualTo(2);
+        assertThat(lookup.getNotFound()).isEqualTo(1);
+        assertThat(lookup.getResults().stream().map(ProductLookupResult::getId).toList())
+                .isEqualTo(List.of(mouse.getId(), "ttt", laptop.getId()));
+        assertThat(lookup.getResults().stream().map(ProductLookupResult::getStatus).toList())
+                .isEqualTo(List.of(ProductLookupResult.Status.FOUND, ProductLookupResult.Status.NOT_FOUND,
+                        ProductLookupResult.Status.FOUND));
+        assertThat(lookup.getResults().get(2).getProduct().getName()).isEqualTo("Laptop");
+    }
+
     @Test
     void testFindProductByName() throws ProductNotFoundException {
         ProductResponse productResponse = productService.saveProduct(productRequest1);
@@ -134,6 +254,56 @@ class ProductServiceIntegrationTest {
                 () -> productService.findProductByName("ttt"));
     }
 
+    @Test
+    void testReadsAreNotStaleAfterWrites() throws ProductNotFoundException {
+        ProductResponse saved = productService.saveProduct(productRequest1);
+        String id = saved.getId();
+        assertThat(productService.findProductById(id).getName()).isEqualTo("Laptop");
+        assertThat(productService.findProductByName("Laptop").getId()).isEqualTo(id);
+
+        productService.updateProduct(id, productRequest2);
+        assertThat(productService.findProductById(id).getName()).isEqualTo("Mouse");
+        assertThat(productService.findProductByName("Mouse").getId()).isEqualTo(id);
+        assertThrows(ProductNotFoundException.class,
+                () -> productService.findProductByName("Laptop"));
+
+        productService.deleteProductById(id);
+        assertThrows(ProductNotFoundException.class,
+                () -> productService.findProductById(id));
+        assertThrows(ProductNotFoundException.class,
+                () -> productService.findProductByName("Mouse"));
+    }
+
+    @Test
+    void testSaveProductsInBatch() throws ProductNotFoundException {
+        ProductResponse existing = productService.saveProduct(productRequest1);
+        productService.findProductById(existing.getId());
+        ProductRequest replacement = ProductRequest.builder()
+                .id(existing.getId())
+                .name("Pc")
+                .price(400)
+                .build();
+        ProductRequest withNewId = ProductRequest.builder()
+                .id("65a000000000000000000001")
+                .name("Keyboard")
+                .price(30)
+                .build();
+
+        List<ProductBatchResult> results = new ArrayList<>();
+        ProductBatchSummary response = productBatchService.saveProducts(
+                List.of(productRequest2, replacement, withNewId).iterator(), results::addAll);
+
+        assertThat(response.getCreated()).isEqualTo(2);
+        assertThat(response.getUpdated()).isEqualTo(1);
+        assertThat(response.getFailed()).isEqualTo(0);
+        assertThat(results.get(1).getStatus()).isEqualTo(ProductBatchResult.Status.UPDATED);
+        assertThat(productService.findAllProducts().size()).isEqualTo(3);
+        assertThat(productService.findProductById(existing.getId()).getName()).isEqualTo("Pc");
+        assertThat(productService.findProductById("65a000000000000000000001").getName()).isEqualTo("Keyboard");
+        assertThat(productService.findProductById(results.get(0).getId()).getName())
+                .isEqualTo("Mouse");
+    }
+
     @Test
     void testSaveProduct() {
         ProductResponse productResponse = productService.saveProduct(productRequest1);
@@ -179,6 +349,27 @@ class ProductServiceIntegrationTest {
                 () -> productService.updateProduct("ttt",update));
     }
 
+    @Test
+    void updateProductShouldCheckVersion() throws Exception {
+        ProductResponse saved = productService.saveProduct(productRequest1);
+        assertThat(saved.getVersion()).isEqualTo(0L);
+        assertThat(saved.getLastModified()).isNotNull();
+        ProductRequest update = ProductRequest.builder()
+                .name("Pc")
+                .description(productRequest1.getDescription())
+                .price(400)
+                .build();
+
+        ProductResponse updated = productService.updateProduct(saved.getId(), update, 0L);
+        assertThat(updated.getVersion()).isEqualTo(1L);
+        assertThat(productService.findProductById(saved.getId()).getVersion()).isEqualTo(1L);
+
+        assertThrows(ProductVersionConflictException.class,
+                () -> productService.updateProduct(saved.getId(), update, 0L));
+        assertThrows(ProductNotFoundException.class,
+                () -> productService.updateProduct("ttt", update, 0L));
+    }
+
     @Test
 
     void deleteProductById() throws ProductNotFoundException {
@@ -202,6 +393,102 @@ class ProductServiceIntegrationTest {
                 () -> productService.deleteProductById("ttt"));
     }
 
+    @Test
+    void concurrentDeletesShouldDeleteOnlyOnce() throws Exception {
+        String id = productService.saveProduct(productRequest1).getId();
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> deletes = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                deletes.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        productService.deleteProductById(id);
+                        return true;
+                    } catch (ProductNotFoundException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int deleted = 0;
+            for (Future<Boolean> delete : deletes) {
+                deleted += delete.get() ? 1 : 0;
+            }
+            assertThat(deleted).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void updateRacingDeleteShouldNotRecreateProduct() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 20; round++) {
+                String id = productService.saveProduct(productRequest1).getId();
+                CountDownLatch start = new CountDownLatch(1);
+                Callable<Object> update = () -> {
+                    start.await();
+                    try {
+                        return productService.updateProduct(id, productRequest2);
+                    } catch (ProductNotFoundException e) {
+                        return e;
+                    }
+                };
+                Callable<Object> delete = () -> {
+                    start.await();
+                    return productService.deleteProductById(id);
+                };
+                Future<Object> updated = executor.submit(update);
+                Future<Object> deleted = executor.submit(delete);
+                start.countDown();
+                updated.get();
+                deleted.get();
+
+                assertThrows(ProductNotFoundException.class, () -> productService.findProductById(id));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentUpdatesShouldKeepOneCompleteVersion() throws Exception {
+        String id = productService.saveProduct(productRequest1).getId();
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ProductResponse>> updates = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                ProductRequest update = ProductRequest.builder()
+                        .name("Name " + i)
+                        .description("Description " + i)
+                        .price(i + 1)
+                        .build();
+                updates.add(executor.submit(() -> {
+                    start.await();
+                    return productService.updateProduct(id, update);
+                }));
+            }
+            start.countDown();
+            for (Future<ProductResponse> update : updates) {
+                update.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // whichever update won, its fields must not be mixed with the fields of another one
+        ProductResponse stored = productService.findProductById(id);
+        String suffix = stored.getName().substring("Name ".length());
+        assertThat(stored.getDescription()).isEqualTo("Description " + suffix);
+        assertThat(stored.getPrice()).isEqualTo(Integer.parseInt(suffix) + 1);
+    }
+
     @Test
     void deleteAllProducts() throws ProductNotFoundException {
         assertThrows(ProductNotFoundException.class,
@@ -216,4 +503,97 @@ class ProductServiceIntegrationTest {
         assertThrows(ProductNotFoundException.class,
                 () -> productService.findAllProducts());
     }
-}
\ No newline at end of file
+
+    @Test
+    void deleteAllProductsInBatches() throws ProductNotFoundException {
+        productService.saveProduct(productRequest1);
+        productService.saveProduct(productRequest2);
+        ProductResponse cached = productService.findProductByName(productRequest1.getName());
+        List<String> deletedIds = new ArrayList<>();
+
+        ProductDeleteSummary summary = productService.deleteAllProductsInBatches(deletedIds::addAll);
+
+        assertThat(summary.getDeleted()).isEqualTo(2);
+        assertThat(deletedIds.contains(cached.getId())).isTrue();
+        assertThrows(ProductNotFoundException.class, () -> productService.findAllProducts());
+        assertThrows(ProductNotFoundException.class, () -> productService.findProductById(cached.getId()));
+    }
+
+    @Test
+    void deleteAllProductsInBatchesShouldDeleteStringAndObjectIds() throws ProductNotFoundException {
+        // string ids could be stored by the batch endpoint before it checked them, they sort before ObjectIds
+        insertWithStringId("legacy-1", "Cable");
+        insertWithStringId("legacy-2", "Charger");
+        productService.saveProduct(productRequest1);
+        productService.saveProduct(productRequest2);
+        int chunkSize = productProperties.getBatch().getChunkSize();
+        productProperties.getBatch().setChunkSize(2);
+        try {
+            ProductDeleteSummary summary = productService.deleteAllProductsInBatches(ids -> { });
+
+            assertThat(summary.getDeleted()).isEqualTo(4);
+            assertThat(mongoTemplate.getCollection("products").countDocuments()).isEqualTo(0);
+        } finally {
+            productProperties.getBatch().setChunkSize(chunkSize);
+        }
+    }
+
+    private void insertWithStringId(String id, String name) {
+        mongoTemplate.getCollection("products").insertOne(new Document("_id", id)
+                .append("name", name)
+                .append("price", 5.0)
+                .append("version", 0L));
+    }
+
+    @Test
+    void searchProductsShouldRankNameMatchesFirst() {
+        productService.saveProduct(productRequest1);
+        productService.saveProduct(productRequest2);
+        productService.saveProduct(ProductRequest.builder().name("Dell monitor").description("A monitor.").price(300).build());
+        productIndexInitializer.createIndexes();
+
+        // all three mention dell, only the monitor has it in the name
+        ProductSearchPage page = productService.searchProducts("dell", 0, 2);
+        assertThat(page.getItems().size()).isEqualTo(2);
+        assertThat(page.getItems().get(0).getName()).isEqualTo("Dell monitor");
+        assertThat(page.getNextPage()).isEqualTo(1);
+        assertThat(productService.searchProducts("dell", 1, 2).getItems().size()).isEqualTo(1);
+
+        // words are stemmed
+        ProductSearchPage laptops = productService.searchProducts("laptops", 0, 10);
+        assertThat(laptops.getItems().size()).isEqualTo(1);
+        assertThat(laptops.getItems().get(0).getName()).isEqualTo("Laptop");
+    }
+
+    @Test
+    void autocompleteProductsShouldMatchPrefixLiterally() {
+        productService.saveProduct(productRequest1);
+        productService.saveProduct(ProductRequest.builder().name("Lap.top").price(30).build());
+        productService.saveProduct(ProductRequest.builder().name("C++ Primer").price(30).build());
+
+        assertThat(productService.autocompleteProducts("Lap", 10).size()).isEqualTo(2);
+        assertThat(productService.autocompleteProducts("Lap.", 10).get(0).getName()).isEqualTo("Lap.top");
+        assertThat(productService.autocompleteProducts("C++", 10).get(0).getName()).isEqualTo("C++ Primer");
+        assertThat(productService.autocompleteProducts("lap", 10).isEmpty()).isTrue();
+    }
+
+    @Test
+    void findProductsByPriceShouldPageThroughRange() {
+        productService.saveProduct(productRequest1);
+        productService.saveProduct(productRequest2);
+        productService.saveProduct(ProductRequest.builder().name("Keyboard").price(10.99).build());
+        productService.saveProduct(ProductRequest.builder().name("Monitor").price(300).build());
+
+        ProductPage firstPage = productService.findProductsByPrice(10.0, 500.0, false, null, 2);
+        assertThat(firstPage.getItems().stream().map(ProductResponse::getPrice).collect(Collectors.toList()))
+                .isEqualTo(List.of(10.99, 10.99));
+
+        ProductPage secondPage = productService.findProductsByPrice(10.0, 500.0, false, firstPage.getNextCursor(), 2);
+        assertThat(secondPage.getItems().size()).isEqualTo(1);
+        assertThat(secondPage.getItems().get(0).getName()).isEqualTo("Monitor");
+        assertThat(secondPage.getNextCursor()).isNull();
+
+        ProductPage mostExpensive = productService.findProductsByPrice(null, null, true, null, 1);
+        assertThat(mostExpensive.getItems().get(0).getName()).isEqualTo("Laptop");
+    }
+}
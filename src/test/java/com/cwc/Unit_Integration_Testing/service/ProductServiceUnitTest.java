@@ -1,31 +1,78 @@
 package com.cwc.Unit_Integration_Testing.service;
 
+import com.cwc.Unit_Integration_Testing.cache.ProductCache;
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductAggregates;
+import com.cwc.Unit_Integration_Testing.dto.ProductDeleteSummary;
+import com.cwc.Unit_Integration_Testing.dto.ProductFields;
+import com.cwc.Unit_Integration_Testing.dto.ProductLookupResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductLookupResult;
+import com.cwc.Unit_Integration_Testing.dto.ProductPage;
+import com.cwc.Unit_Integration_Testing.dto.ProductPriceStats;
 import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
 import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.cwc.Unit_Integration_Testing.dto.ProductSearchPage;
 import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.exception.ProductBadRequestException;
 import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.exception.ProductVersionConflictException;
 import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
 import com.cwc.Unit_Integration_Testing.util.AppUtil;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.domain.Limit;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 class ProductServiceUnitTest {
     @Mock
     ProductRepository productRepository;
+    @Spy
+    ProductProperties productProperties = new ProductProperties();
+    @Spy
+    ProductCache productCache = new ProductCache(cacheDisabled());
+    @Spy
+    ProductPriceIndex productPriceIndex = new ProductPriceIndex(new ProductProperties());
+    @Mock
+    ProductWriteBehindBuffer productWriteBehindBuffer;
+    @Spy
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     @InjectMocks
     ProductService productService;
@@ -61,6 +108,28 @@ class ProductServiceUnitTest {
     void tearDown() {
     }
 
+    private static ProductProperties cacheDisabled() {
+        ProductProperties properties = new ProductProperties();
+        properties.getCache().setEnabled(false);
+        return properties;
+    }
+
+    private ProductService serviceWithCache() {
+        return new ProductService(productRepository, productProperties, new ProductCache(new ProductProperties()),
+                productPriceIndex, productWriteBehindBuffer, meterRegistry);
+    }
+
+    private ProductService serviceWith(ProductPriceIndex priceIndex) {
+        return new ProductService(productRepository, productProperties, productCache, priceIndex,
+                productWriteBehindBuffer, meterRegistry);
+    }
+
+    private static ProductPriceIndex priceIndexEnabled() {
+        ProductProperties properties = new ProductProperties();
+        properties.getPriceIndex().setEnabled(true);
+        return new ProductPriceIndex(properties);
+    }
+
     @Test
     void findAllProducts() throws ProductNotFoundException {
         when(productRepository.findAll()).thenReturn(
@@ -74,6 +143,33 @@ class ProductServiceUnitTest {
         verify(productRepository, times(1)).findAll();
     }
     @Test
+    void findAllProductsShouldRecordResultSize() throws ProductNotFoundException {
+        when(productRepository.findAll()).thenReturn(Arrays.asList(product1, product2));
+
+        productService.findAllProducts();
+
+        DistributionSummary resultSize = meterRegistry.get("product.service.result.size")
+                .tag("method", "findAllProducts").summary();
+        assertEquals(1, resultSize.count());
+        assertEquals(2, resultSize.totalAmount());
+    }
+    @Test
+    void serviceCallsShouldBeTimedByOutcome() {
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(productService);
+        proxyFactory.addAspect(new TimedAspect(meterRegistry));
+        ProductService timedService = proxyFactory.getProxy();
+        when(productRepository.findById("L-101")).thenReturn(Optional.of(product1));
+        when(productRepository.findById("M-1001")).thenReturn(Optional.empty());
+
+        assertDoesNotThrow(() -> timedService.findProductById("L-101"));
+        assertThrows(ProductNotFoundException.class, () -> timedService.findProductById("M-1001"));
+
+        assertEquals(1, meterRegistry.get("product.service").tag("method", "findProductById")
+                .tag("exception", "none").timer().count());
+        assertEquals(1, meterRegistry.get("product.service").tag("method", "findProductById")
+                .tag("exception", "ProductNotFoundException").timer().count());
+    }
+    @Test
     void findAllProductsSholdReturnExactList() throws ProductNotFoundException {
         when(productRepository.findAll()).thenReturn(
                 Collections.singletonList(product1));
@@ -119,6 +215,282 @@ class ProductServiceUnitTest {
         verify(productRepository, times(1)).findAll();
 
     }
+    @Test
+    void findProductPageShouldReturnNextCursorWhenMoreProductsExist() {
+        productProperties.getPagination().setDefaultPageSize(1);
+        when(productRepository.findAllByOrderByIdAsc(Limit.of(2))).thenReturn(List.of(product1, product2));
+
+        ProductPage page = productService.findProductPage(null, null);
+
+        assertEquals(1, page.getItems().size());
+        assertEquals("L-101", page.getItems().get(0).getId());
+        assertEquals("L-101", page.getNextCursor());
+    }
+
+    @Test
+    void findProductPageWithFieldsShouldProjectInTheRepository() {
+        ProductFields fields = ProductFields.parse("id,price");
+        Product projected = Product.builder().id("M-1001").price(55.99).build();
+        when(productRepository.findPage("L-101", 3, fields)).thenReturn(List.of(projected));
+
+        ProductPage page = productService.findProductPage("L-101", 2, fields);
+
+        assertEquals("M-1001", page.getItems().get(0).getId());
+        assertNull(page.getItems().get(0).getName());
+        verify(productRepository, never()).findAllByOrderByIdAsc(any());
+    }
+
+    @Test
+    void findProductsByPriceWithFieldsShouldProjectInTheRepository() {
+        ProductFields fields = ProductFields.parse("name");
+        when(productRepository.findByPriceRange(0.0, 100.0, null, null, false, 51, fields))
+                .thenReturn(List.of(Product.builder().id("M-1001").name("Mouse").price(55.99).build()));
+
+        ProductPage page = productService.findProductsByPrice(0.0, 100.0, false, null, null, fields);
+
+        assertEquals("Mouse", page.getItems().get(0).getName());
+        verify(productRepository, never()).findByPriceRange(anyDouble(), anyDouble(), any(), any(), anyBoolean(), anyInt());
+    }
+
+    @Test
+    void findProductPageShouldContinueAfterCursor() {
+        when(productRepository.findPage("L-101", 3, ProductFields.ALL)).thenReturn(List.of(product2));
+
+        ProductPage page = productService.findProductPage("L-101", 2);
+
+        assertEquals(1, page.getItems().size());
+        assertEquals("M-1001", page.getItems().get(0).getId());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void findProductsByPriceShouldQueryMongoWithoutPriceIndex() {
+        Product keyboard = Product.builder().id("K-1").name("Keyboard").price(30).build();
+        when(productRepository.findByPriceRange(10, 300, null, null, false, 3))
+                .thenReturn(List.of(keyboard, product2, product1));
+
+        ProductPage page = productService.findProductsByPrice(10.0, 300.0, false, null, 2);
+
+        assertEquals(2, page.getItems().size());
+        assertEquals("Keyboard", page.getItems().get(0).getName());
+        assertEquals("55.99_M-1001", page.getNextCursor());
+    }
+
+    @Test
+    void findProductsByPriceShouldContinueAfterCursor() {
+        when(productRepository.findByPriceRange(anyDouble(), anyDouble(), any(), any(), anyBoolean(), anyInt()))
+                .thenReturn(List.of());
+
+        ProductPage page = productService.findProductsByPrice(null, null, true, "55.99_M_1001", 1);
+
+        assertNull(page.getNextCursor());
+        verify(productRepository, times(1)).findByPriceRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                55.99, "M_1001", true, 2);
+    }
+
+    @Test
+    void findProductsByPriceShouldRejectInvalidArguments() {
+        assertThrows(ProductBadRequestException.class,
+                () -> productService.findProductsByPrice(100.0, 10.0, false, null, null));
+        assertThrows(ProductBadRequestException.class,
+                () -> productService.findProductsByPrice(null, null, false, "M-1001", null));
+        assertThrows(ProductBadRequestException.class,
+                () -> productService.findProductsByPrice(null, null, false, "cheap_M-1001", null));
+    }
+
+    @Test
+    void findProductsByPriceShouldUsePriceIndexAndCheckProducts() {
+        ProductPriceIndex priceIndex = priceIndexEnabled();
+        priceIndex.load(List.of(new ProductPriceIndex.PriceEntry(55.99, "M-1001"),
+                new ProductPriceIndex.PriceEntry(255.99, "L-101"),
+                new ProductPriceIndex.PriceEntry(30, "K-1")).iterator());
+        // the laptop got more expensive on another node, the keyboard was deleted
+        Product laptop = Product.builder().id("L-101").name("Laptop").price(400).build();
+        when(productRepository.findAllById(List.of("K-1", "M-1001", "L-101"))).thenReturn(List.of(product2, laptop));
+
+        ProductPage page = serviceWith(priceIndex).findProductsByPrice(0.0, 300.0, false, null, 10);
+
+        assertEquals(1, page.getItems().size());
+        assertEquals("Mouse", page.getItems().get(0).getName());
+        assertNull(page.getNextCursor());
+        verify(productRepository, never()).findByPriceRange(anyDouble(), anyDouble(), any(), any(), anyBoolean(), anyInt());
+    }
+
+    @Test
+    void writesShouldUpdatePriceIndex() throws ProductNotFoundException {
+        ProductPriceIndex priceIndex = priceIndexEnabled();
+        ProductService indexedService = serviceWith(priceIndex);
+        when(productRepository.save(any(Product.class))).thenReturn(product1);
+        when(productRepository.findAndUpdateById(any(Product.class), isNull())).thenReturn(Optional.of(product1));
+        when(productRepository.findAndDeleteById("L-101")).thenReturn(Optional.of(product1));
+
+        indexedService.saveProduct(productRequest);
+        assertEquals(List.of(new ProductPriceIndex.PriceEntry(255.99, "L-101")),
+                priceIndex.findRange(0, 1000, null, false, 10));
+
+        indexedService.updateProduct("L-101", ProductRequest.builder().name("Laptop").price(199.99).build());
+        assertEquals(List.of(new ProductPriceIndex.PriceEntry(199.99, "L-101")),
+                priceIndex.findRange(0, 1000, null, false, 10));
+
+        indexedService.deleteProductById("L-101");
+        assertEquals(0, priceIndex.size());
+    }
+
+    @Test
+    void concurrentUpdatesShouldIndexTheLastCommittedPrice() throws Exception {
+        ProductPriceIndex priceIndex = priceIndexEnabled();
+        ProductService indexedService = serviceWith(priceIndex);
+        CountDownLatch firstWritten = new CountDownLatch(1);
+        CountDownLatch secondIndexed = new CountDownLatch(1);
+        when(productRepository.findAndUpdateById(any(Product.class), isNull())).thenAnswer(invocation -> {
+            Product product = invocation.getArgument(0);
+            if (product.getPrice() == 100) {
+                // committed first, but indexed after the update that followed it
+                firstWritten.countDown();
+                secondIndexed.await();
+                return Optional.of(Product.builder().id("L-101").name("Laptop").price(100).version(2L).build());
+            }
+            return Optional.of(Product.builder().id("L-101").name("Laptop").price(200).version(3L).build());
+        });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ProductResponse> first = executor.submit(() -> indexedService.updateProduct("L-101",
+                    ProductRequest.builder().name("Laptop").price(100).build()));
+            assertTrue(firstWritten.await(10, TimeUnit.SECONDS));
+            indexedService.updateProduct("L-101", ProductRequest.builder().name("Laptop").price(200).build());
+            secondIndexed.countDown();
+            first.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(List.of(new ProductPriceIndex.PriceEntry(200, "L-101")),
+                priceIndex.findRange(0, 1000, null, false, 10));
+        assertEquals(200, priceIndex.priceStats().sum(), 1e-9);
+    }
+
+    @Test
+    void findProductAggregatesShouldBeReadFromThePriceIndex() {
+        ProductPriceIndex priceIndex = priceIndexEnabled();
+        priceIndex.load(List.of(new ProductPriceIndex.PriceEntry(5, "D-7"),
+                new ProductPriceIndex.PriceEntry(30, "K-1"),
+                new ProductPriceIndex.PriceEntry(55.99, "M-1001"),
+                new ProductPriceIndex.PriceEntry(255.99, "L-101")).iterator());
+
+        ProductAggregates aggregates = serviceWith(priceIndex).findProductAggregates();
+
+        assertEquals(4, aggregates.getCount());
+        assertEquals(5, aggregates.getMinPrice());
+        assertEquals(255.99, aggregates.getMaxPrice());
+        assertEquals(86.745, aggregates.getMeanPrice(), 1e-9);
+        assertEquals(List.of(1L, 0L, 1L, 1L, 0L, 1L, 0L, 0L, 0L, 0L),
+                aggregates.getPriceHistogram().stream().map(ProductAggregates.PriceBucket::getCount).toList());
+        assertNull(aggregates.getPriceHistogram().get(0).getFrom());
+        assertNull(aggregates.getPriceHistogram().get(9).getTo());
+        // the 99th percentile falls in the 250-500 bucket, which is cut down to the max price
+        double p99 = aggregates.getPricePercentiles().get("p99");
+        assertTrue(p99 >= 250 && p99 <= 255.99, "p99 was " + p99);
+        verify(productRepository, never()).aggregatePrices(any());
+    }
+
+    @Test
+    void findProductAggregatesShouldBeComputedByMongoWithoutPriceIndex() {
+        when(productRepository.aggregatePrices(any())).thenReturn(new ProductPriceStats(0, null, null, 0,
+                Collections.nCopies(10, 0L)));
+
+        ProductAggregates aggregates = productService.findProductAggregates();
+
+        assertEquals(0, aggregates.getCount());
+        assertNull(aggregates.getMeanPrice());
+        assertTrue(aggregates.getPricePercentiles().isEmpty());
+        assertEquals(10, aggregates.getPriceHistogram().size());
+        verify(productWriteBehindBuffer).flush();
+    }
+
+    @Test
+    void findProductAggregatesShouldReuseTheMongoResult() {
+        when(productRepository.aggregatePrices(any())).thenReturn(new ProductPriceStats(0, null, null, 0,
+                Collections.nCopies(10, 0L)));
+
+        productService.findProductAggregates();
+        productService.findProductAggregates();
+
+        verify(productRepository, times(1)).aggregatePrices(any());
+    }
+
+    @Test
+    void findProductAggregatesShouldNotCountProductsDeletedWhileTheIndexLoads() throws ProductNotFoundException {
+        ProductPriceIndex priceIndex = priceIndexEnabled();
+        when(productRepository.findAndDeleteById("K-1")).thenReturn(Optional.of(Product.builder().id("K-1").price(30).build()));
+        ProductService indexedService = serviceWith(priceIndex);
+
+        // the loader read K-1 before it was deleted
+        indexedService.deleteProductById("K-1");
+        priceIndex.load(List.of(new ProductPriceIndex.PriceEntry(5, "D-7"),
+                new ProductPriceIndex.PriceEntry(30, "K-1"),
+                new ProductPriceIndex.PriceEntry(55.99, "M-1001")).iterator());
+
+        ProductAggregates aggregates = indexedService.findProductAggregates();
+        assertEquals(2, aggregates.getCount());
+        assertEquals(30.495, aggregates.getMeanPrice(), 1e-9);
+        assertEquals(List.of(1L, 0L, 0L, 1L, 0L, 0L, 0L, 0L, 0L, 0L),
+                aggregates.getPriceHistogram().stream().map(ProductAggregates.PriceBucket::getCount).toList());
+    }
+
+    @Test
+    void searchProductsShouldReturnNextPageWhenMoreMatchesExist() {
+        when(productRepository.searchText("dell", 2, 3)).thenReturn(List.of(product1, product2, product1));
+
+        ProductSearchPage page = productService.searchProducts("dell", 1, 2);
+
+        assertEquals(2, page.getItems().size());
+        assertEquals("L-101", page.getItems().get(0).getId());
+        assertEquals(1, page.getPage());
+        assertEquals(2, page.getNextPage());
+    }
+
+    @Test
+    void searchProductsShouldNotQueryForBlankText() {
+        ProductSearchPage page = productService.searchProducts(" ", null, null);
+
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getNextPage());
+        verify(productRepository, never()).searchText(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void autocompleteProductsShouldUseDefaultAndMaximumSize() {
+        productProperties.getPagination().setMaxPageSize(20);
+        when(productRepository.findByNamePrefix(eq("La"), anyInt())).thenReturn(List.of(product1));
+
+        assertEquals("Laptop", productService.autocompleteProducts("La", null).get(0).getName());
+        productService.autocompleteProducts("La", 1_000);
+
+        verify(productRepository, times(1)).findByNamePrefix("La", 10);
+        verify(productRepository, times(1)).findByNamePrefix("La", 20);
+    }
+
+    @Test
+    void findProductPageShouldCapPageSize() {
+        productProperties.getPagination().setMaxPageSize(10);
+        when(productRepository.findAllByOrderByIdAsc(any(Limit.class))).thenReturn(List.of());
+
+        productService.findProductPage(null, 10_000);
+
+        verify(productRepository, times(1)).findAllByOrderByIdAsc(Limit.of(11));
+    }
+
+    @Test
+    void streamAllProductDocuments() {
+        RawBsonDocument document = new RawBsonDocument(new BsonDocument("_id", new BsonString("L-101")), new BsonDocumentCodec());
+        when(productRepository.streamAllDocuments()).thenReturn(Stream.of(document));
+
+        List<RawBsonDocument> documents = productService.streamAllProductDocuments().toList();
+
+        assertEquals(List.of(document), documents);
+    }
+
     @Test
     void findProductById() throws ProductNotFoundException {
         when(productRepository.findById("M-1001")).thenReturn(Optional.of(product2));
@@ -136,6 +508,71 @@ class ProductServiceUnitTest {
         assertThrows(ProductNotFoundException.class,()-> productService.findProductById("M-1003"));
     }
 
+    @Test
+    void productNotFoundExceptionShouldHaveNoStackTrace() {
+        when(productRepository.findByName("Tablet")).thenReturn(Optional.empty());
+
+        ProductNotFoundException e = assertThrows(ProductNotFoundException.class,
+                () -> productService.findProductByName("Tablet"));
+
+        assertEquals("Product with name Tablet not found", e.getMessage());
+        assertEquals(0, e.getStackTrace().length);
+    }
+
+    @Test
+    void findProductByIdShouldBeServedFromCache() throws ProductNotFoundException {
+        ProductService cachingService = serviceWithCache();
+        when(productRepository.findById("M-1001")).thenReturn(Optional.of(product2));
+
+        cachingService.findProductById("M-1001");
+        ProductResponse productResponse = cachingService.findProductById("M-1001");
+
+        assertEquals("Mouse", productResponse.getName());
+        verify(productRepository, times(1)).findById("M-1001");
+    }
+
+    @Test
+    void cachedReadsShouldNotBeStaleAfterUpdate() throws ProductNotFoundException {
+        ProductService cachingService = serviceWithCache();
+        Product updatedProduct = Product.builder()
+                .id("L-101")
+                .name("Keyboard")
+                .description("This is a keyboard.")
+                .price(300.99)
+                .build();
+        when(productRepository.findById("L-101")).thenReturn(Optional.of(product1));
+        when(productRepository.findByName("Laptop")).thenReturn(Optional.of(product1));
+        assertEquals("Laptop", cachingService.findProductById("L-101").getName());
+        assertEquals("L-101", cachingService.findProductByName("Laptop").getId());
+
+        when(productRepository.findAndUpdateById(any(Product.class), isNull())).thenReturn(Optional.of(updatedProduct));
+        when(productRepository.findById("L-101")).thenReturn(Optional.of(updatedProduct));
+        when(productRepository.findByName("Laptop")).thenReturn(Optional.empty());
+        when(productRepository.findByName("Keyboard")).thenReturn(Optional.of(updatedProduct));
+        cachingService.updateProduct("L-101", ProductRequest.builder()
+                .name("Keyboard")
+                .description("This is a keyboard.")
+                .price(300.99)
+                .build());
+
+        assertEquals("Keyboard", cachingService.findProductById("L-101").getName());
+        assertEquals(300.99, cachingService.findProductByName("Keyboard").getPrice());
+        assertThrows(ProductNotFoundException.class, () -> cachingService.findProductByName("Laptop"));
+    }
+
+    @Test
+    void cachedReadsShouldNotBeStaleAfterDelete() throws ProductNotFoundException {
+        ProductService cachingService = serviceWithCache();
+        when(productRepository.findById("L-101")).thenReturn(Optional.of(product1));
+        when(productRepository.findAndDeleteById("L-101")).thenReturn(Optional.of(product1));
+        cachingService.findProductById("L-101");
+
+        cachingService.deleteProductById("L-101");
+        when(productRepository.findById("L-101")).thenReturn(Optional.empty());
+
+        assertThrows(ProductNotFoundException.class, () -> cachingService.findProductById("L-101"));
+    }
+
     @Test
     void findProductByName() throws ProductNotFoundException {
         when(productRepository.findByName("Laptop")).thenReturn(Optional.of(product1));
@@ -174,6 +611,79 @@ class ProductServiceUnitTest {
 
     }
 
+    @Test
+    void saveProductShouldBeWrittenBehindAndReadBack() throws ProductNotFoundException {
+        when(productWriteBehindBuffer.isEnabled()).thenReturn(true);
+        ArgumentCaptor<Product> written = ArgumentCaptor.forClass(Product.class);
+
+        ProductResponse saved = productService.saveProduct(productRequest);
+
+        verify(productWriteBehindBuffer).insert(written.capture());
+        verify(productRepository, never()).save(any(Product.class));
+        assertNotNull(saved.getId());
+        assertEquals(saved.getId(), written.getValue().getId());
+
+        when(productWriteBehindBuffer.findPending(saved.getId())).thenReturn(Optional.of(written.getValue()));
+        assertEquals(productRequest.getName(), productService.findProductById(saved.getId()).getName());
+        verify(productRepository, never()).findById(any());
+    }
+
+    @Test
+    void findAllProductsShouldFlushPendingWritesFirst() throws ProductNotFoundException {
+        when(productRepository.findAll()).thenReturn(List.of(product1));
+
+        productService.findAllProducts();
+
+        InOrder inOrder = inOrder(productWriteBehindBuffer, productRepository);
+        inOrder.verify(productWriteBehindBuffer).flush();
+        inOrder.verify(productRepository).findAll();
+    }
+
+    @Test
+    void findProductsByIdsShouldKeepRequestOrderAndMarkMissingIds() {
+        when(productRepository.findAllById(any())).thenReturn(List.of(product2, product1));
+
+        ProductLookupResponse lookup = productService.findProductsByIds(List.of("L-101", "X-1", "M-1001", "L-101"));
+
+        assertEquals(3, lookup.getFound());
+        assertEquals(1, lookup.getNotFound());
+        assertEquals(List.of("L-101", "X-1", "M-1001", "L-101"),
+                lookup.getResults().stream().map(ProductLookupResult::getId).toList());
+        assertEquals(ProductLookupResult.Status.NOT_FOUND, lookup.getResults().get(1).getStatus());
+        assertNull(lookup.getResults().get(1).getProduct());
+        assertEquals("Mouse", lookup.getResults().get(2).getProduct().getName());
+        // one query, each id once
+        verify(productRepository, times(1)).findAllById(List.of("L-101", "X-1", "M-1001"));
+        verify(productRepository, never()).findById(any());
+    }
+
+    @Test
+    void findProductsByIdsShouldOnlyQueryProductsThatAreNotCached() throws ProductNotFoundException {
+        ProductService cachingService = serviceWithCache();
+        when(productRepository.findById("L-101")).thenReturn(Optional.of(product1));
+        when(productWriteBehindBuffer.findPending("P-1")).thenReturn(Optional.of(
+                Product.builder().id("P-1").name("Pending").price(1).build()));
+        when(productRepository.findAllById(any())).thenReturn(List.of(product2));
+        cachingService.findProductById("L-101");
+
+        ProductLookupResponse lookup = cachingService.findProductsByIds(List.of("L-101", "M-1001", "P-1"));
+
+        assertEquals(3, lookup.getFound());
+        verify(productRepository, times(1)).findAllById(List.of("M-1001"));
+        // now cached as well
+        cachingService.findProductsByIds(List.of("L-101", "M-1001"));
+        verify(productRepository, times(1)).findAllById(any());
+    }
+
+    @Test
+    void findProductsByIdsShouldLimitTheNumberOfIds() {
+        productProperties.getBatch().setMaxLookupIds(2);
+
+        assertThrows(ProductBadRequestException.class,
+                () -> productService.findProductsByIds(List.of("L-101", "M-1001", "K-1")));
+        verifyNoInteractions(productRepository);
+    }
+
     @Test
     void updateProduct() throws ProductNotFoundException {
         Product updatedProduct = Product.builder()
@@ -187,8 +697,7 @@ class ProductServiceUnitTest {
                 .description("This is a keyboard.")
                 .price(300.99)
                 .build();
-        when(productRepository.existsById("L-101")).thenReturn(true);
-        when(productRepository.save(any(Product.class))).thenReturn(updatedProduct);
+        when(productRepository.findAndUpdateById(any(Product.class), isNull())).thenReturn(Optional.of(updatedProduct));
         ProductResponse productResponse = productService.updateProduct("L-101", productRqst);
 
         assertNotNull(productResponse);
@@ -199,31 +708,63 @@ class ProductServiceUnitTest {
                 () -> assertTrue(productResponse.getName().startsWith("K")),
                 () -> assertTrue(productResponse.getId().startsWith("L"))
         );
+        verify(productRepository, times(1)).findAndUpdateById(updatedProduct, null);
+        verify(productRepository, never()).existsById(any());
+        verify(productRepository, never()).save(any(Product.class));
     }
 
     @Test
     void updateProductShouldThroughProductNodFoundException() throws ProductNotFoundException {
 
-        when(productRepository.existsById("L-101")).thenReturn(false);
+        when(productRepository.findAndUpdateById(any(Product.class), isNull())).thenReturn(Optional.empty());
         assertThrows(ProductNotFoundException.class,
                 () -> productService.updateProduct("L-101", productRequest));
     }
+
+    @Test
+    void updateProductWithExpectedVersionShouldReturnNewVersion() throws Exception {
+        Product written = Product.builder().id("L-101").name("Laptop").price(255.99).version(4L).build();
+        when(productRepository.findAndUpdateById(any(Product.class), eq(3L))).thenReturn(Optional.of(written));
+
+        ProductResponse productResponse = productService.updateProduct("L-101", productRequest, 3L);
+
+        assertEquals(4L, productResponse.getVersion());
+        verify(productRepository, never()).existsById(any());
+    }
+
+    @Test
+    void updateProductWithStaleVersionShouldThrowProductVersionConflictException() {
+        when(productRepository.findAndUpdateById(any(Product.class), eq(3L))).thenReturn(Optional.empty());
+        when(productRepository.existsById("L-101")).thenReturn(true);
+
+        assertThrows(ProductVersionConflictException.class,
+                () -> productService.updateProduct("L-101", productRequest, 3L));
+    }
+
+    @Test
+    void updateProductWithExpectedVersionShouldThrowProductNotFoundExceptionWhenMissing() {
+        when(productRepository.findAndUpdateById(any(Product.class), eq(3L))).thenReturn(Optional.empty());
+        when(productRepository.existsById("L-101")).thenReturn(false);
+
+        assertThrows(ProductNotFoundException.class,
+                () -> productService.updateProduct("L-101", productRequest, 3L));
+    }
     @Test
     void deleteProductByIdThatReturnsVoid() throws ProductNotFoundException {
-        when(productRepository.findById("1")).thenReturn(Optional.of(product1));
-        // Arrange mock the delete behavior.
-        doNothing().when(productRepository).deleteById("1");
+        when(productRepository.findAndDeleteById("1")).thenReturn(Optional.of(product1));
 
         // Act call the service method
-        productService.deleteProductById("1");
+        ProductResponse productResponse = productService.deleteProductById("1");
 
-        verify(productRepository, times(1)).deleteById("1");
-        verify(productRepository, times(1)).findById("1");
+        assertEquals(product1.getName(), productResponse.getName());
+        verify(productRepository, times(1)).findAndDeleteById("1");
+        verify(productRepository, never()).findById("1");
+        verify(productRepository, never()).deleteById("1");
     }
     @Test
     void deletByIdShouldThrougProductNotFoundException() throws ProductNotFoundException
     {
-        when(productRepository.findById("tt")).thenReturn(Optional.empty());
+        when(productRepository.findAndDeleteById("tt")).thenReturn(Optional.empty());
         assertThrows(ProductNotFoundException.class,
                 () -> productService.deleteProductById("tt"));
     }
@@ -243,6 +784,34 @@ class ProductServiceUnitTest {
         verify(productRepository, times(1)).deleteAll();
     }
     @Test
+    void deleteAllProductsInBatchesShouldDeleteOneBatchAtATime() {
+        productProperties.getBatch().setChunkSize(2);
+        when(productRepository.findIds(null, 2)).thenReturn(List.of("A-1", "B-2"));
+        when(productRepository.findIds("B-2", 2)).thenReturn(List.of("C-3"));
+        when(productRepository.findIds("C-3", 2)).thenReturn(List.of());
+        when(productRepository.deleteByIds(List.of("A-1", "B-2"))).thenReturn(2L);
+        when(productRepository.deleteByIds(List.of("C-3"))).thenReturn(1L);
+        List<List<String>> deletedIds = new ArrayList<>();
+
+        ProductDeleteSummary summary = productService.deleteAllProductsInBatches(deletedIds::add);
+
+        assertEquals(3, summary.getDeleted());
+        assertEquals(2, summary.getBatches());
+        assertEquals(List.of(List.of("A-1", "B-2"), List.of("C-3")), deletedIds);
+        verify(productRepository, never()).findAll();
+        verify(productCache, times(1)).evict("C-3");
+    }
+    @Test
+    void deleteAllProductsInBatchesOnEmptyCollection() {
+        when(productRepository.findIds(any(), anyInt())).thenReturn(List.of());
+
+        ProductDeleteSummary summary = productService.deleteAllProductsInBatches(ids -> fail());
+
+        assertEquals(0, summary.getDeleted());
+        assertEquals(0, summary.getBatches());
+        verify(productRepository, never()).deleteByIds(any());
+    }
+    @Test
     void deleteAllProductsShouldThrougException() throws ProductNotFoundException {
         when(productRepository.findAll()).thenReturn(List.of());
         assertThrows(ProductNotFoundException.class,
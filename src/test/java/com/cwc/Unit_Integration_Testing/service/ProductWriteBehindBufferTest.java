@@ -0,0 +1,223 @@
+package com.cwc.Unit_Integration_Testing.service;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductCache;
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ProductWriteBehindBufferTest {
+    @Mock
+    ProductRepository productRepository;
+
+    @TempDir
+    Path tempDir;
+
+    private ProductProperties productProperties;
+    private ProductWriteBehindBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        productProperties = new ProductProperties();
+        productProperties.getCache().setEnabled(false);
+        productProperties.getWriteBehind().setEnabled(true);
+        // only the explicit flushes of the tests write, unless a batch is full
+        productProperties.getWriteBehind().setFlushInterval(Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    private ProductWriteBehindBuffer startBuffer() {
+        ProductWriteBehindBuffer started = new ProductWriteBehindBuffer(productProperties, productRepository,
+                new ProductCache(productProperties), new ProductPriceIndex(productProperties),
+                Jackson2ObjectMapperBuilder.json().build());
+        started.start();
+        return started;
+    }
+
+    private static Product product(String id, String name, double price) {
+        return Product.builder().id(id).name(name).price(price).build();
+    }
+
+    /** The updates of each flush. */
+    @SuppressWarnings("unchecked")
+    private List<List<Product>> flushedBatches(int times) {
+        ArgumentCaptor<List<Product>> batches = ArgumentCaptor.forClass(List.class);
+        verify(productRepository, times(times)).bulkInsertAndUpdate(eq(List.of()), batches.capture());
+        return batches.getAllValues();
+    }
+
+    @Test
+    void repeatedWritesOfOneProductShouldBeFlushedOnce() {
+        buffer = startBuffer();
+
+        buffer.update(product("L-101", "Laptop", 255.99));
+        buffer.update(product("L-101", "Laptop", 199.99));
+        buffer.update(product("M-1001", "Mouse", 55.99));
+
+        assertEquals(199.99, buffer.findPending("L-101").get().getPrice());
+        assertEquals("M-1001", buffer.findPendingByName("Mouse").get().getId());
+        verifyNoInteractions(productRepository);
+
+        buffer.flush();
+
+        List<Product> batch = flushedBatches(1).get(0);
+        assertEquals(2, batch.size());
+        assertTrue(batch.contains(product("L-101", "Laptop", 199.99)));
+        assertEquals(0, buffer.size());
+        assertTrue(buffer.findPending("L-101").isEmpty());
+    }
+
+    @Test
+    void fullBatchShouldBeFlushedWithoutWaitingForTheInterval() {
+        productProperties.getBatch().setChunkSize(2);
+        buffer = startBuffer();
+
+        buffer.update(product("L-101", "Laptop", 255.99));
+        buffer.update(product("M-1001", "Mouse", 55.99));
+
+        verify(productRepository, timeout(5000)).bulkInsertAndUpdate(anyList(), anyList());
+    }
+
+    @Test
+    void fullBufferShouldMakeTheWriterWriteItself() {
+        productProperties.getWriteBehind().setCapacity(1);
+        productProperties.getWriteBehind().setOfferTimeout(Duration.ofMillis(10));
+        buffer = startBuffer();
+
+        buffer.update(product("L-101", "Laptop", 255.99));
+        // same id, takes no room
+        buffer.update(product("L-101", "Laptop", 199.99));
+        buffer.update(product("M-1001", "Mouse", 55.99));
+
+        assertEquals(List.of(product("M-1001", "Mouse", 55.99)), flushedBatches(1).get(0));
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    void updateOfAPendingInsertShouldBeFlushedAsTheInsert() {
+        buffer = startBuffer();
+
+        buffer.insert(product("L-101", "Laptop", 255.99));
+        buffer.update(product("L-101", "Laptop", 199.99));
+        buffer.flush();
+
+        verify(productRepository).bulkInsertAndUpdate(List.of(product("L-101", "Laptop", 199.99)), List.of());
+    }
+
+    @Test
+    void discardDuringAFlushShouldWaitForTheFlush() throws Exception {
+        buffer = startBuffer();
+        buffer.insert(product("L-101", "Laptop", 255.99));
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch acknowledged = new CountDownLatch(1);
+        when(productRepository.bulkInsertAndUpdate(anyList(), anyList())).thenAnswer(invocation -> {
+            flushing.countDown();
+            acknowledged.await();
+            return null;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> flush = executor.submit(() -> buffer.flush());
+            assertTrue(flushing.await(5, TimeUnit.SECONDS));
+
+            Future<Optional<Product>> discard = executor.submit(() -> buffer.discard("L-101"));
+            // the delete that follows must not run before the insert is in Mongo
+            assertThrows(TimeoutException.class, () -> discard.get(200, TimeUnit.MILLISECONDS));
+
+            acknowledged.countDown();
+            flush.get(5, TimeUnit.SECONDS);
+            assertTrue(discard.get(5, TimeUnit.SECONDS).isEmpty());
+            assertEquals(0, buffer.size());
+        } finally {
+            acknowledged.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void discardedWriteShouldNotBeFlushed() {
+        buffer = startBuffer();
+        buffer.update(product("L-101", "Laptop", 255.99));
+
+        assertTrue(buffer.discard("L-101").isPresent());
+        buffer.flush();
+
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void failedFlushShouldKeepTheWritesPending() {
+        buffer = startBuffer();
+        buffer.update(product("L-101", "Laptop", 255.99));
+        when(productRepository.bulkInsertAndUpdate(anyList(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(null);
+
+        assertThrows(DataAccessResourceFailureException.class, () -> buffer.flush());
+        assertEquals(1, buffer.size());
+
+        buffer.flush();
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void closeShouldFlushPendingWrites() {
+        buffer = startBuffer();
+        buffer.update(product("L-101", "Laptop", 255.99));
+
+        buffer.close();
+
+        assertEquals(List.of(product("L-101", "Laptop", 255.99)), flushedBatches(1).get(0));
+    }
+
+    @Test
+    void journalShouldBeReplayedAfterACrash() throws Exception {
+        Path journal = tempDir.resolve("write-behind.journal");
+        productProperties.getWriteBehind().setJournal(journal);
+        ProductWriteBehindBuffer crashed = startBuffer();
+        crashed.update(product("L-101", "Laptop", 255.99));
+        crashed.update(product("M-1001", "Mouse", 55.99));
+        crashed.update(product("L-101", "Laptop", 199.99));
+        crashed.discard("M-1001");
+        // no close(), the instance died with the writes pending
+
+        buffer = startBuffer();
+
+        assertEquals(1, buffer.size());
+        assertEquals(199.99, buffer.findPending("L-101").get().getPrice());
+        buffer.flush();
+        assertEquals(List.of(product("L-101", "Laptop", 199.99)), flushedBatches(1).get(0));
+        assertEquals(0, Files.size(journal));
+    }
+}
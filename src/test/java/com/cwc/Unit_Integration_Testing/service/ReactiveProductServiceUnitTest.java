@@ -0,0 +1,122 @@
+package com.cwc.Unit_Integration_Testing.service;
+
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.dto.ProductRequest;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.repository.ReactiveProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ReactiveProductServiceUnitTest {
+    @Mock
+    ReactiveProductRepository reactiveProductRepository;
+    @Spy
+    ProductProperties productProperties = new ProductProperties();
+
+    @InjectMocks
+    ReactiveProductService reactiveProductService;
+
+    private Product product1;
+    private Product product2;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        product1 = Product.builder()
+                .id("L-101")
+                .name("Laptop")
+                .description("This is a dell laptop.")
+                .price(255.99)
+                .build();
+        product2 = Product.builder()
+                .id("M-1001")
+                .name("Mouse")
+                .description("This is wireless mouse.")
+                .price(55.99)
+                .build();
+    }
+
+    @Test
+    void findAllProducts() {
+        when(reactiveProductRepository.findAll()).thenReturn(Flux.just(product1, product2));
+
+        StepVerifier.create(reactiveProductService.findAllProducts())
+                .expectNextMatches(p -> p.getId().equals("L-101"))
+                .expectNextMatches(p -> p.getId().equals("M-1001"))
+                .verifyComplete();
+    }
+
+    @Test
+    void findAllProductsShouldFailWhenEmpty() {
+        when(reactiveProductRepository.findAll()).thenReturn(Flux.empty());
+
+        StepVerifier.create(reactiveProductService.findAllProducts())
+                .verifyError(ProductNotFoundException.class);
+    }
+
+    @Test
+    void findAllProductsShouldOnlyRequestWhatIsConsumed() {
+        AtomicLong requested = new AtomicLong();
+        when(reactiveProductRepository.findAll()).thenReturn(Flux.range(0, 1000)
+                .map(i -> Product.builder().id("P-" + i).name("Product " + i).build())
+                .doOnRequest(requested::addAndGet));
+
+        StepVerifier.create(reactiveProductService.findAllProducts(), 3)
+                .expectNextCount(3)
+                .thenCancel()
+                .verify();
+
+        assertEquals(3, requested.get());
+    }
+
+    @Test
+    void findProductPage() {
+        when(reactiveProductRepository.findPage("A", 2))
+                .thenReturn(Flux.just(product1, product2));
+
+        StepVerifier.create(reactiveProductService.findProductPage("A", 1))
+                .expectNextMatches(page -> page.getItems().size() == 1 && "L-101".equals(page.getNextCursor()))
+                .verifyComplete();
+    }
+
+    @Test
+    void findProductByIdShouldFailWhenMissing() {
+        when(reactiveProductRepository.findById("tt")).thenReturn(Mono.empty());
+
+        StepVerifier.create(reactiveProductService.findProductById("tt"))
+                .verifyError(ProductNotFoundException.class);
+    }
+
+    @Test
+    void updateProduct() {
+        when(reactiveProductRepository.findAndUpdateById(any(Product.class)))
+                .thenReturn(Mono.just(Product.builder().id("L-101").name("Keyboard").price(30).version(1L).build()));
+        ProductRequest update = ProductRequest.builder().name("Keyboard").price(30).build();
+
+        StepVerifier.create(reactiveProductService.updateProduct("L-101", update))
+                .expectNextMatches(p -> p.getId().equals("L-101") && p.getName().equals("Keyboard"))
+                .verifyComplete();
+    }
+
+    @Test
+    void deleteProductByIdShouldFailWhenMissing() {
+        when(reactiveProductRepository.findAndDeleteById("tt")).thenReturn(Mono.empty());
+
+        StepVerifier.create(reactiveProductService.deleteProductById("tt"))
+                .verifyError(ProductNotFoundException.class);
+    }
+}
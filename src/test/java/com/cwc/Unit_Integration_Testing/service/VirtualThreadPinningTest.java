@@ -0,0 +1,100 @@
+package com.cwc.Unit_Integration_Testing.service;
+
+import com.cwc.Unit_Integration_Testing.cache.ProductCache;
+import com.cwc.Unit_Integration_Testing.cache.ProductPriceIndex;
+import com.cwc.Unit_Integration_Testing.config.ProductProperties;
+import com.cwc.Unit_Integration_Testing.entity.Product;
+import com.cwc.Unit_Integration_Testing.exception.ProductGlobalExceptionHandler;
+import com.cwc.Unit_Integration_Testing.exception.ProductNotFoundException;
+import com.cwc.Unit_Integration_Testing.repository.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+With spring.threads.virtual.enabled requests run on virtual threads. A virtual thread that blocks while it
+holds a monitor (synchronized) pins its carrier thread, and with enough of them the whole server stalls.
+The repository stand-in blocks like a Mongo call does, and JFR reports every pinned park.
+ */
+class VirtualThreadPinningTest {
+
+    private static ProductRepository blockingRepository() {
+        Product product = Product.builder().id("L-101").name("Laptop").price(255.99).build();
+        return (ProductRepository) Proxy.newProxyInstance(ProductRepository.class.getClassLoader(),
+                new Class<?>[]{ProductRepository.class}, (proxy, method, args) -> {
+                    Thread.sleep(2);
+                    return switch (method.getName()) {
+                        case "findById", "findByName" -> "L-101".equals(args[0]) || "Laptop".equals(args[0])
+                                ? Optional.of(product) : Optional.empty();
+                        case "findAndUpdateById", "findAndDeleteById" -> Optional.of(product);
+                        case "save" -> args[0];
+                        case "toString" -> "blockingRepository";
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    };
+                });
+    }
+
+    @Test
+    void serviceCallsShouldNotPinCarrierThreads() throws Exception {
+        ProductProperties productProperties = new ProductProperties();
+        productProperties.getCache().setTimeToLive(Duration.ofMillis(1));
+        ProductRepository productRepository = blockingRepository();
+        ProductCache productCache = new ProductCache(productProperties);
+        ProductPriceIndex productPriceIndex = new ProductPriceIndex(productProperties);
+        ProductService productService = new ProductService(productRepository, productProperties, productCache,
+                productPriceIndex, new ProductWriteBehindBuffer(productProperties, productRepository, productCache,
+                productPriceIndex, new ObjectMapper()), new SimpleMeterRegistry());
+        ProductGlobalExceptionHandler exceptionHandler = new ProductGlobalExceptionHandler();
+
+        List<RecordedEvent> pinned = new CopyOnWriteArrayList<>();
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent("jdk.VirtualThreadPinned", pinned::add);
+            recording.startAsync();
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> calls = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    int call = i;
+                    calls.add(executor.submit(() -> {
+                        productService.findProductById("L-101");
+                        productService.findProductByName("Laptop");
+                        try {
+                            productService.findProductById("missing-" + (call % 10));
+                        } catch (ProductNotFoundException e) {
+                            exceptionHandler.handleProductNotFoundException(e);
+                        }
+                        productService.deleteProductById("L-101");
+                        return null;
+                    }));
+                }
+                for (Future<?> call : calls) {
+                    call.get();
+                }
+            }
+            // events are delivered asynchronously, flush what was recorded so far
+            recording.stop();
+        }
+
+        assertThat(pinned)
+                .as("pinned virtual threads: %s", pinned.stream()
+                        .map(event -> event.getStackTrace() == null ? "?" : event.getStackTrace().getFrames().toString())
+                        .limit(1)
+                        .toList())
+                .isEmpty();
+    }
+}
@@ -0,0 +1,57 @@
+package com.cwc.Unit_Integration_Testing.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimitTest {
+    private static final long THRESHOLD = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void requestsBeyondTheLimitShouldBeRejected() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, THRESHOLD, 0.5);
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+
+        limit.release();
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    void fastRequestsShouldRaiseTheLimitUpToTheMaximum() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 3, THRESHOLD, 0.5);
+
+        for (int i = 0; i < 5; i++) {
+            limit.tryAcquire();
+            limit.tryAcquire();
+            limit.release(THRESHOLD / 10, System.nanoTime());
+            limit.release(THRESHOLD / 10, System.nanoTime());
+        }
+
+        assertEquals(3, limit.getLimit());
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    void slowRequestsShouldLowerTheLimitOncePerThreshold() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1, 10, THRESHOLD, 0.5);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 4; i++) {
+            limit.tryAcquire();
+        }
+        limit.release(2 * THRESHOLD, now);
+        limit.release(2 * THRESHOLD, now);
+        assertEquals(4, limit.getLimit());
+
+        limit.release(2 * THRESHOLD, now + THRESHOLD);
+        assertEquals(2, limit.getLimit());
+
+        limit.release(2 * THRESHOLD, now + 10 * THRESHOLD);
+        assertEquals(1, limit.getLimit());
+    }
+}
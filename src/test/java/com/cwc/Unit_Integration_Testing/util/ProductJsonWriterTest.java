@@ -0,0 +1,88 @@
+package com.cwc.Unit_Integration_Testing.util;
+
+import com.cwc.Unit_Integration_Testing.dto.ProductResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProductJsonWriterTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ProductJsonWriter productJsonWriter = new ProductJsonWriter();
+
+    private static RawBsonDocument raw(BsonDocument document) {
+        return new RawBsonDocument(document, new BsonDocumentCodec());
+    }
+
+    private String write(RawBsonDocument... documents) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.writeStartArray();
+            for (RawBsonDocument document : documents) {
+                productJsonWriter.write(document, generator);
+            }
+            generator.writeEndArray();
+        }
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writeShouldMatchProductResponseJson() throws IOException {
+        ObjectId id = new ObjectId();
+        RawBsonDocument document = raw(new BsonDocument("_id", new BsonObjectId(id))
+                .append("name", new BsonString("Laptop"))
+                .append("description", new BsonString("This is a dell laptop."))
+                .append("price", new BsonDouble(255.99))
+                .append("_class", new BsonString("com.cwc.Unit_Integration_Testing.entity.Product")));
+        ProductResponse productResponse = ProductResponse.builder()
+                .id(id.toHexString())
+                .name("Laptop")
+                .description("This is a dell laptop.")
+                .price(255.99)
+                .build();
+
+        assertEquals("[" + objectMapper.writeValueAsString(productResponse) + "]", write(document));
+    }
+
+    @Test
+    void writeShouldEscapeStringsAndWriteNullForMissingFields() throws IOException {
+        RawBsonDocument document = raw(new BsonDocument("_id", new BsonString("L-101"))
+                .append("name", new BsonString("Café \"Deluxe\"\n☕"))
+                .append("price", new BsonInt32(400)));
+        ProductResponse productResponse = ProductResponse.builder()
+                .id("L-101")
+                .name("Café \"Deluxe\"\n☕")
+                .price(400)
+                .build();
+
+        assertEquals("[" + objectMapper.writeValueAsString(productResponse) + "]", write(document));
+    }
+
+    @Test
+    void writeShouldSkipUnknownFieldsAndKeepFieldOrder() throws IOException {
+        RawBsonDocument document = raw(new BsonDocument("tags", new BsonArray())
+                .append("price", new BsonDouble(55.99))
+                .append("nested", new BsonDocument("name", new BsonString("not this one")))
+                .append("description", new BsonString("This is wireless mouse."))
+                .append("name", new BsonString("Mouse"))
+                .append("_id", new BsonString("M-1001")));
+
+        assertEquals("[{\"id\":\"M-1001\",\"name\":\"Mouse\",\"description\":\"This is wireless mouse.\",\"price\":55.99},"
+                        + "{\"id\":\"M-1001\",\"name\":\"Mouse\",\"description\":\"This is wireless mouse.\",\"price\":55.99}]",
+                write(document, document));
+    }
+}